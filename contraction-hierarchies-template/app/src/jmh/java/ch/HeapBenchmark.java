@@ -0,0 +1,145 @@
+package ch;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares one-to-one Dijkstra on the CSR graph with the old PriorityQueue&lt;PQElem&gt;
+ * lazy-deletion queue against the indexed heap (binary and 4-ary).
+ * Uses the graph given by -PjmhGraph=denmark.graph, or a synthetic grid otherwise.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HeapBenchmark {
+
+    private static final int PAIRS = 64;
+
+    @Param({"2", "4"})
+    public int arity;
+
+    private CsrGraph graph;
+    private int[] sources;
+    private int[] targets;
+    private int[] dist;
+    private IndexedMinHeap heap;
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException {
+        String path = System.getProperty("ch.bench.graph", "");
+        if (!path.isEmpty() && !Files.exists(Path.of(path))) {
+            throw new IllegalStateException("Benchmark graph not found: " + path);
+        }
+        graph = path.isEmpty() ? grid(400) : Main.readOriginalCsr(Path.of(path));
+        Random random = new Random(3145);
+        sources = new int[PAIRS];
+        targets = new int[PAIRS];
+        for (int i = 0; i < PAIRS; i++) {
+            sources[i] = random.nextInt(graph.vertexCount());
+            targets[i] = random.nextInt(graph.vertexCount());
+        }
+        dist = new int[graph.vertexCount()];
+        heap = new IndexedMinHeap(graph.vertexCount(), arity);
+    }
+
+    @Benchmark
+    public int priorityQueuePQElem() {
+        int i = next++ & (PAIRS - 1);
+        return lazyDeletionDijkstra(sources[i], targets[i]);
+    }
+
+    @Benchmark
+    public int indexedHeap() {
+        int i = next++ & (PAIRS - 1);
+        return indexedHeapDijkstra(sources[i], targets[i]);
+    }
+
+    // The search loop as it was before the indexed heap: one PQElem per push, stale entries skipped on poll.
+    private int lazyDeletionDijkstra(int s, int t) {
+        Arrays.fill(dist, Integer.MAX_VALUE);
+        boolean[] visited = new boolean[graph.vertexCount()];
+        PriorityQueue<PQElem> pq = new PriorityQueue<>();
+        pq.add(new PQElem(0, s));
+        dist[s] = 0;
+        while (!pq.isEmpty() && pq.peek().v != t) {
+            PQElem elem = pq.poll();
+            int u = (int) elem.v;
+            if (visited[u]) {
+                continue;
+            }
+            visited[u] = true;
+            for (int a = graph.outOffsets[u], end = graph.outOffsets[u + 1]; a < end; a++) {
+                int v = graph.outTargets[a];
+                int newDist = elem.key + graph.outWeights[a];
+                if (newDist < dist[v]) {
+                    pq.add(new PQElem(newDist, v));
+                    dist[v] = newDist;
+                }
+            }
+        }
+        return dist[t];
+    }
+
+    private int indexedHeapDijkstra(int s, int t) {
+        Arrays.fill(dist, Integer.MAX_VALUE);
+        heap.clear();
+        heap.push(s, 0);
+        dist[s] = 0;
+        while (!heap.isEmpty() && heap.peek() != t) {
+            int du = heap.peekKey();
+            int u = heap.poll();
+            for (int a = graph.outOffsets[u], end = graph.outOffsets[u + 1]; a < end; a++) {
+                int v = graph.outTargets[a];
+                int newDist = du + graph.outWeights[a];
+                if (newDist < dist[v]) {
+                    heap.push(v, newDist);
+                    dist[v] = newDist;
+                }
+            }
+        }
+        return dist[t];
+    }
+
+    private static CsrGraph grid(int side) {
+        CsrGraph.Builder builder = new CsrGraph.Builder(side * side, 4 * side * side);
+        Random random = new Random(42);
+        for (int y = 0; y < side; y++) {
+            for (int x = 0; x < side; x++) {
+                builder.addVertex((long) y * side + x, x, y);
+            }
+        }
+        for (int y = 0; y < side; y++) {
+            for (int x = 0; x < side; x++) {
+                long id = (long) y * side + x;
+                if (x + 1 < side) {
+                    builder.addUndirectedEdge(id, id + 1, 1 + random.nextInt(100));
+                }
+                if (y + 1 < side) {
+                    builder.addUndirectedEdge(id, id + side, 1 + random.nextInt(100));
+                }
+            }
+        }
+        return builder.build();
+    }
+}
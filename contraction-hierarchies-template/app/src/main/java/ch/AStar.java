@@ -0,0 +1,135 @@
+package ch;
+
+/**
+ * Goal-directed searches on an unpreprocessed {@link CsrGraph} with a {@link LowerBound}
+ * as potential: {@link GeoBound} for plain A*, {@link Landmarks} for ALT.
+ *
+ * The unidirectional search orders vertices by d(s, v) + bound(v, t). The bidirectional
+ * search uses the average potential p(v) = (bound(v, t) - bound(s, v)) / 2 forward and
+ * -p(v) backward, which keeps both sides consistent with each other. Keys are doubled
+ * to stay integral: 2 d(s, v) + 2 p(v) forward and 2 d(v, t) - 2 p(v) backward. It can
+ * stop once the two smallest keys add up to twice the best distance found.
+ */
+public final class AStar {
+    private AStar() {
+    }
+
+    public static Result<Integer> shortestPath(CsrGraph g, long s, long t, LowerBound bound) {
+        return shortestPath(g, s, t, bound, SearchWorkspace.forThread(g.vertexCount()));
+    }
+
+    public static Result<Integer> shortestPath(CsrGraph g, long s, long t, LowerBound bound, SearchWorkspace ws) {
+        long start = System.nanoTime();
+        int source = g.indexOf(s);
+        int target = g.indexOf(t);
+        if (source < 0 || target < 0) {
+            return new Result<>(System.nanoTime() - start, 0, -1);
+        }
+        int distance = distance(g, source, target, bound.forQuery(source, target), ws);
+        return new Result<>(System.nanoTime() - start, ws.relaxed, distance);
+    }
+
+    public static Result<Integer> bidirectional(CsrGraph g, long s, long t, LowerBound bound) {
+        return bidirectional(g, s, t, bound, SearchWorkspace.forThread(g.vertexCount()));
+    }
+
+    public static Result<Integer> bidirectional(CsrGraph g, long s, long t, LowerBound bound, SearchWorkspace ws) {
+        long start = System.nanoTime();
+        int source = g.indexOf(s);
+        int target = g.indexOf(t);
+        if (source < 0 || target < 0) {
+            return new Result<>(System.nanoTime() - start, 0, -1);
+        }
+        int distance = bidirectionalDistance(g, source, target, bound.forQuery(source, target), ws);
+        return new Result<>(System.nanoTime() - start, ws.relaxed, distance);
+    }
+
+    /**
+     * Unidirectional A* between dense indices. Returns -1 if t is unreachable; the number
+     * of relaxed arcs is left in ws.relaxed.
+     */
+    static int distance(CsrGraph g, int s, int t, LowerBound bound, SearchWorkspace ws) {
+        ws.reset();
+        IndexedMinHeap pq = ws.forwardHeap;
+        int relaxed = 0;
+
+        ws.setForward(s, 0, -1);
+        pq.push(s, bound.lowerBound(s, t));
+        while (!pq.isEmpty() && pq.peek() != t) {
+            int u = pq.poll();
+            int du = ws.forward(u);
+            for (int a = g.outOffsets[u], end = g.outOffsets[u + 1]; a < end; a++) {
+                relaxed++;
+                int v = g.outTargets[a];
+                int newDist = du + g.outWeights[a];
+                if (newDist < ws.forward(v)) {
+                    ws.setForward(v, newDist, a);
+                    pq.push(v, newDist + bound.lowerBound(v, t));
+                }
+            }
+        }
+        ws.relaxed = relaxed;
+        int dist = ws.forward(t);
+        return dist == SearchWorkspace.INF ? -1 : dist;
+    }
+
+    /**
+     * Bidirectional A* with average potentials between dense indices. Returns -1 if there
+     * is no path; the number of relaxed arcs is left in ws.relaxed.
+     */
+    static int bidirectionalDistance(CsrGraph g, int s, int t, LowerBound bound, SearchWorkspace ws) {
+        ws.reset();
+        if (s == t) {
+            return 0;
+        }
+        IndexedMinHeap ql = ws.forwardHeap;
+        IndexedMinHeap qr = ws.backwardHeap;
+        int best = Integer.MAX_VALUE;
+        int relaxed = 0;
+
+        ws.setForward(s, 0, -1);
+        ql.push(s, potential(bound, s, s, t));
+        ws.setBackward(t, 0, -1);
+        qr.push(t, -potential(bound, t, s, t));
+
+        while (!ql.isEmpty() && !qr.isEmpty()) {
+            int minForward = ql.peekKey();
+            int minBackward = qr.peekKey();
+            if (best != Integer.MAX_VALUE && (long) minForward + minBackward >= 2L * best) {
+                break;
+            }
+            boolean forward = minForward <= minBackward;
+            IndexedMinHeap pq = forward ? ql : qr;
+            int u = pq.poll();
+            int du = ws.distance(forward, u);
+
+            int[] offsets = forward ? g.outOffsets : g.inOffsets;
+            int[] heads = forward ? g.outTargets : g.inSources;
+            int[] weights = forward ? g.outWeights : g.inWeights;
+            for (int a = offsets[u], end = offsets[u + 1]; a < end; a++) {
+                int v = heads[a];
+                int newDist = du + weights[a];
+                if (newDist >= best) {
+                    continue;
+                }
+                relaxed++;
+                if (newDist < ws.distance(forward, v)) {
+                    ws.set(forward, v, newDist, a);
+                    int p = potential(bound, v, s, t);
+                    pq.push(v, 2 * newDist + (forward ? p : -p));
+                    int other = ws.distance(!forward, v);
+                    if (other != SearchWorkspace.INF) {
+                        best = Math.min(best, newDist + other);
+                    }
+                }
+            }
+        }
+        ws.relaxed = relaxed;
+        return best == Integer.MAX_VALUE ? -1 : best;
+    }
+
+    // Twice the forward average potential of v.
+    private static int potential(LowerBound bound, int v, int s, int t) {
+        return bound.lowerBound(v, t) - bound.lowerBound(s, v);
+    }
+}
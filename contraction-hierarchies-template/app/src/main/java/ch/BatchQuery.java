@@ -0,0 +1,111 @@
+package ch;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Runs many (source, target) queries against one loaded graph and writes one CSV row
+ * per pair: source,target,distance,time_ns,relaxed, with the header and CRLF line
+ * endings Python's csv module produces in dijkstra_analysis.py. Pairs are read in
+ * blocks; with more than one thread a block is answered in parallel and its rows are
+ * still written in input order.
+ */
+public final class BatchQuery {
+    static final String HEADER = "source,target,distance,time_ns,relaxed";
+    private static final int BLOCK = 4096;
+
+    /** One point-to-point query; must be safe to call from several threads. */
+    public interface PairQuery {
+        Result<Integer> run(long source, long target);
+    }
+
+    private final PairQuery query;
+    private final int threads;
+
+    public BatchQuery(PairQuery query, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Thread count must be positive, got " + threads);
+        }
+        this.query = query;
+        this.threads = threads;
+    }
+
+    /**
+     * Reads "source target" or "source,target" lines until end of input and returns the
+     * number of pairs answered. Blank lines, '#' comments and a leading header are skipped.
+     */
+    public long run(BufferedReader in, Writer out) throws IOException {
+        ForkJoinPool pool = threads > 1 ? new ForkJoinPool(threads) : null;
+        long[] sources = new long[BLOCK];
+        long[] targets = new long[BLOCK];
+        long[] rows = new long[3 * BLOCK]; // distance, time, relaxed per pair
+        long total = 0;
+        try {
+            out.write(HEADER);
+            out.write("\r\n");
+            int lineNumber = 0;
+            String line;
+            int size = 0;
+            while ((line = in.readLine()) != null) {
+                lineNumber++;
+                String trimmed = line.trim();
+                if (trimmed.isEmpty() || trimmed.startsWith("#")
+                        || (lineNumber == 1 && !Character.isDigit(trimmed.charAt(0)) && trimmed.charAt(0) != '-')) {
+                    continue;
+                }
+                String[] parts = trimmed.split("[\\s,]+");
+                if (parts.length < 2) {
+                    throw new IllegalStateException("Expected '<source> <target>' on line " + lineNumber);
+                }
+                try {
+                    sources[size] = Long.parseLong(parts[0]);
+                    targets[size] = Long.parseLong(parts[1]);
+                } catch (NumberFormatException ex) {
+                    throw new IllegalStateException("Malformed vertex id on line " + lineNumber, ex);
+                }
+                if (++size == BLOCK) {
+                    answer(pool, sources, targets, rows, size, out);
+                    total += size;
+                    size = 0;
+                }
+            }
+            answer(pool, sources, targets, rows, size, out);
+            total += size;
+            out.flush();
+            return total;
+        } finally {
+            if (pool != null) {
+                pool.shutdown();
+            }
+        }
+    }
+
+    private void answer(ForkJoinPool pool, long[] sources, long[] targets, long[] rows, int size, Writer out)
+            throws IOException {
+        if (pool == null) {
+            for (int i = 0; i < size; i++) {
+                solve(sources, targets, rows, i);
+            }
+        } else {
+            pool.submit(() -> IntStream.range(0, size).parallel().forEach(i -> solve(sources, targets, rows, i))).join();
+        }
+        StringBuilder row = new StringBuilder(64);
+        for (int i = 0; i < size; i++) {
+            row.setLength(0);
+            row.append(sources[i]).append(',').append(targets[i]).append(',')
+                    .append(rows[3 * i]).append(',').append(rows[3 * i + 1]).append(',')
+                    .append(rows[3 * i + 2]).append("\r\n");
+            out.append(row);
+        }
+    }
+
+    private void solve(long[] sources, long[] targets, long[] rows, int i) {
+        Result<Integer> result = query.run(sources[i], targets[i]);
+        rows[3 * i] = result.result;
+        rows[3 * i + 1] = result.time;
+        rows[3 * i + 2] = result.relaxed;
+    }
+}
@@ -1,11 +1,5 @@
 package ch;
 
-import java.util.HashMap;
-import java.util.List;
-import java.util.PriorityQueue;
-
-import ch.Graph.Edge;
-
 /**
  * Bidirectional Dijkstra for Contraction Hierarchies
  * Forward expands outgoing arcs (upward in rank).
@@ -13,142 +7,102 @@ import ch.Graph.Edge;
  */
 public class BidirectionalDijkstra {
 
-    // --- Debug knobs ---
-    // Set to true to print a running trace. Keep small limits or it gets very chatty.
-    private static final boolean DEBUG = false;
-    // How many node expansions to print per side (forward+backward combined)
-    private static final int DEBUG_EXPANSION_LIMIT = 10;  // set 0 to disable prints
-    // How many skipped-neighbor reasons to print
-    private static final int DEBUG_SKIP_LIMIT = 10;
-
+    /**
+     * Unranked bidirectional search on the CSR snapshot of g; see {@link Graph#csr()}.
+     */
     public static Result<Integer> shortestPath(Graph g, long s, long t) {
+        return shortestPath(g.csr(), s, t);
+    }
+
+    public static Result<Integer> shortestPath(CsrGraph g, long s, long t) {
         return shortestPath(g, s, t, null);
     }
 
-    public static Result<Integer> shortestPath(Graph g, long s, long t, java.util.Map<Long, Integer> ranks) {
+    public static Result<Integer> shortestPath(CsrGraph g, long s, long t, int[] ranks) {
+        return shortestPath(g, s, t, ranks, SearchWorkspace.forThread(g.vertexCount()));
+    }
+
+    /**
+     * Bidirectional search on the CSR layout. Forward scans the out-arcs, backward the in-arcs;
+     * with ranks given, only arcs leading to higher ranked vertices are relaxed.
+     */
+    public static Result<Integer> shortestPath(CsrGraph g, long s, long t, int[] ranks, SearchWorkspace ws) {
         long start = System.nanoTime();
-        if (s == t) {
-            return new Result<>(System.nanoTime() - start, 0, 0);
+        int source = g.indexOf(s);
+        int target = g.indexOf(t);
+        if (source < 0 || target < 0) {
+            return new Result<>(System.nanoTime() - start, 0, -1);
         }
+        int best = distance(g, source, target, ranks, ws);
+        long end = System.nanoTime();
+        return new Result<>(end - start, ws.relaxed, best);
+    }
 
-        PriorityQueue<PQElem> ql = new PriorityQueue<>(); // forward
-        PriorityQueue<PQElem> qr = new PriorityQueue<>(); // backward
-
-        HashMap<Long, Integer> dl = new HashMap<>(); // forward distances
-        HashMap<Long, Integer> dr = new HashMap<>(); // backward distances
+    /**
+     * Allocation-free core of the CSR search between dense indices. Returns -1 if there is
+     * no path; the number of relaxed arcs is left in ws.relaxed.
+     */
+    static int distance(CsrGraph g, int source, int target, int[] ranks, SearchWorkspace ws) {
+        ws.reset();
+        if (source == target) {
+            return 0;
+        }
+        IndexedMinHeap ql = ws.forwardHeap; // forward
+        IndexedMinHeap qr = ws.backwardHeap; // backward
 
         int best = Integer.MAX_VALUE;
         int relaxed = 0;
 
-        dl.put(s, 0); ql.add(new PQElem(0, s));
-        dr.put(t, 0); qr.add(new PQElem(0, t));
-
-        // Debug counters
-        int dbgExpandPrinted = 0;
-        int dbgSkipPrinted = 0;
+        ws.setForward(source, 0, -1); ql.push(source, 0);
+        ws.setBackward(target, 0, -1); qr.push(target, 0);
 
         while (!ql.isEmpty() || !qr.isEmpty()) {
-            int minForward  = ql.isEmpty() ? Integer.MAX_VALUE : ql.peek().key;
-            int minBackward = qr.isEmpty() ? Integer.MAX_VALUE : qr.peek().key;
-
+            int minForward  = ql.isEmpty() ? Integer.MAX_VALUE : ql.peekKey();
+            int minBackward = qr.isEmpty() ? Integer.MAX_VALUE : qr.peekKey();
             if (Math.min(minForward, minBackward) >= best) {
-                if (DEBUG && DEBUG_EXPANSION_LIMIT > 0) {
-                    System.out.printf("STOP: minQueueKey=%d best=%d%n", Math.min(minForward, minBackward), best);
-                }
                 break;
             }
 
             boolean forward = minForward <= minBackward;
-            PriorityQueue<PQElem> pq = forward ? ql : qr;
-            HashMap<Long, Integer> dist = forward ? dl : dr;
+            IndexedMinHeap pq = forward ? ql : qr;
 
-            PQElem cur = pq.poll();
-            long u = cur.v;
-            int du = cur.key;
-
-            int recorded = dist.getOrDefault(u, Integer.MAX_VALUE);
-            if (du > recorded) continue;
+            int du = pq.peekKey();
+            int u = pq.poll();
 
             // Meet update if other side has reached u
-            if (forward && dr.containsKey(u)) best = Math.min(best, du + dr.get(u));
-            if (!forward && dl.containsKey(u)) best = Math.min(best, du + dl.get(u));
+            int otherU = ws.distance(!forward, u);
+            if (otherU != SearchWorkspace.INF) best = Math.min(best, du + otherU);
 
             // Use outgoing for forward, incoming for backward
-            List<Edge> neighbours = forward ? g.getNeighbours(u) : g.getIncoming(u);
-            if (neighbours == null || neighbours.isEmpty()) {
-                if (DEBUG && DEBUG_EXPANSION_LIMIT > 0 && dbgExpandPrinted < DEBUG_EXPANSION_LIMIT) {
-                    System.out.printf("[%s] u=%d du=%d rankU=%s deg(out)=%d deg(in)=%d  -> no neighbours%n",
-                            forward ? "FWD" : "BWD",
-                            u, du,
-                            (ranks == null ? "null" : String.valueOf(ranks.get(u))),
-                            g.getNeighbours(u) == null ? 0 : g.getNeighbours(u).size(),
-                            g.getIncoming(u) == null ? 0 : g.getIncoming(u).size());
-                    dbgExpandPrinted++;
-                }
-                continue;
-            }
-
-            Integer rankU = (ranks == null) ? null : ranks.get(u);
-
-            if (DEBUG && DEBUG_EXPANSION_LIMIT > 0 && dbgExpandPrinted < DEBUG_EXPANSION_LIMIT) {
-                System.out.printf("[%s] u=%d du=%d rankU=%s deg(out)=%d deg(in)=%d%n",
-                        forward ? "FWD" : "BWD",
-                        u, du,
-                        (ranks == null ? "null" : String.valueOf(rankU)),
-                        g.getNeighbours(u) == null ? 0 : g.getNeighbours(u).size(),
-                        g.getIncoming(u) == null ? 0 : g.getIncoming(u).size());
-                dbgExpandPrinted++;
-            }
-
-            for (Edge e : neighbours) {
-                long v = e.to; // NOTE: on backward step, incoming list stores (v -> u), so e.to is predecessor
-                int newDist = du + e.weight;
-
+            int[] offsets = forward ? g.outOffsets : g.inOffsets;
+            int[] heads = forward ? g.outTargets : g.inSources;
+            int[] weights = forward ? g.outWeights : g.inWeights;
+            int rankU = ranks == null ? 0 : ranks[u];
+
+            for (int a = offsets[u], end = offsets[u + 1]; a < end; a++) {
+                int v = heads[a];
+                int newDist = du + weights[a];
                 if (newDist >= best) {
-                    if (DEBUG && DEBUG_SKIP_LIMIT > 0 && dbgSkipPrinted < DEBUG_SKIP_LIMIT) {
-                        System.out.printf("  skip@bound u=%d -> v=%d newDist=%d >= best=%d%n",
-                                u, v, newDist, best);
-                        dbgSkipPrinted++;
-                    }
                     continue;
                 }
-
-                // Rank gating: apply ONLY if both ranks are known
-                if (ranks != null) {
-                    Integer rankV = ranks.get(v);
-                    if (rankU != null && rankV != null) {
-                        // Upward in BOTH directions (forward on G, backward on G^R)
-                        if (rankV <= rankU) {
-                            if (DEBUG && DEBUG_SKIP_LIMIT > 0 && dbgSkipPrinted < DEBUG_SKIP_LIMIT) {
-                                System.out.printf("  skip@rank u=%d(r=%d) -> v=%d(r=%d) dir=%s need rankV>rankU%n",
-                                        u, rankU, v, rankV, forward ? "up-FWD" : "up-BWD");
-                                dbgSkipPrinted++;
-                            }
-                            continue;
-                        }
-                    }
-                    // If one of the ranks is missing, do not gate on rank.
+                // Upward in BOTH directions (forward on G, backward on G^R)
+                if (ranks != null && ranks[v] <= rankU) {
+                    continue;
                 }
 
                 relaxed++;
-                int old = dist.getOrDefault(v, Integer.MAX_VALUE);
-                if (newDist < old) {
-                    dist.put(v, newDist);
-                    pq.add(new PQElem(newDist, v));
+                if (newDist < ws.distance(forward, v)) {
+                    ws.set(forward, v, newDist, a);
+                    pq.push(v, newDist);
 
                     // Meet update via v
-                    if (forward && dr.containsKey(v)) best = Math.min(best, newDist + dr.get(v));
-                    if (!forward && dl.containsKey(v)) best = Math.min(best, newDist + dl.get(v));
+                    int otherV = ws.distance(!forward, v);
+                    if (otherV != SearchWorkspace.INF) best = Math.min(best, newDist + otherV);
                 }
             }
         }
 
-        if (best == Integer.MAX_VALUE) best = -1;
-        long end = System.nanoTime();
-
-        if (DEBUG) {
-            System.out.printf("distance=%d relaxed=%d time(ns)=%d%n", best, relaxed, (end - start));
-        }
-        return new Result<>(end - start, relaxed, best);
+        ws.relaxed = relaxed;
+        return best == Integer.MAX_VALUE ? -1 : best;
     }
 }
@@ -0,0 +1,369 @@
+package ch;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Customizable contraction hierarchy. Preprocessing is split in three phases so that new
+ * weights on the same road network only repeat the last one:
+ * <ol>
+ *   <li>a metric-independent order ({@link NestedDissection}),</li>
+ *   <li>the topology: contracting the vertices in that order without witness searches
+ *       gives a chordal supergraph of the input, whose edges are built once here,</li>
+ *   <li>customization ({@link #customize}): the weights of both directions of every edge,
+ *       from an arc weight array, in one pass over the lower triangles of the edges.</li>
+ * </ol>
+ * The result of a customization is an ordinary {@link ChGraph}, so the CH query, distance
+ * tables, PHAST, path unpacking and the binary format all work on it unchanged.
+ *
+ * Vertices are numbered by rank here. Edge e = {u, w} with u below w is stored at u; its
+ * upward weight is the arc u -> w, its downward weight the arc w -> u.
+ */
+public final class Cch {
+    /** Weight of a closed arc; an edge with this weight in a direction has no arc in it. */
+    public static final int CLOSED = Integer.MAX_VALUE;
+
+    private final CsrGraph g;
+    private final int n;
+    private final int[] vertexAt; // rank -> dense index of g
+
+    private final int[] upOffsets;   // edges {u, w} with u < w, stored at u
+    private final int[] upHeads;     // w, ascending per u
+    private final int[] downOffsets; // the same edges, stored at w
+    private final int[] downTails;   // u, ascending per w
+    private final int[] downEdges;   // edge id, i.e. the position in upHeads
+    private final int[] arcEdge;     // per arc of g: 2 * edge + (0 upward, 1 downward), -1 for loops
+    private final int[][] levels;    // vertices whose lower neighbours are all in earlier levels
+
+    Cch(CsrGraph g, int[] rank) {
+        this.g = g;
+        this.n = g.vertexCount();
+        if (rank.length != n) {
+            throw new IllegalArgumentException("Order has " + rank.length + " ranks for " + n + " vertices");
+        }
+        this.vertexAt = new int[n];
+        Arrays.fill(vertexAt, -1);
+        for (int v = 0; v < n; v++) {
+            if (rank[v] < 0 || rank[v] >= n || vertexAt[rank[v]] >= 0) {
+                throw new IllegalArgumentException("Order is not a permutation at vertex " + g.idOf(v));
+            }
+            vertexAt[rank[v]] = v;
+        }
+
+        // Eliminating u makes its higher neighbours a clique; adding them all to the lowest of
+        // them is enough, because that vertex passes them on when it is eliminated in turn.
+        int[][] up = new int[n][];
+        for (int u = 0; u < n; u++) {
+            up[u] = higherNeighbours(vertexAt[u], rank);
+        }
+        for (int u = 0; u < n; u++) {
+            int[] higher = up[u];
+            if (higher.length > 1) {
+                int parent = higher[0];
+                up[parent] = union(up[parent], higher, 1);
+            }
+        }
+
+        this.upOffsets = new int[n + 1];
+        for (int u = 0; u < n; u++) {
+            upOffsets[u + 1] = Math.addExact(upOffsets[u], up[u].length);
+        }
+        this.upHeads = new int[upOffsets[n]];
+        this.downOffsets = new int[n + 1];
+        for (int u = 0; u < n; u++) {
+            System.arraycopy(up[u], 0, upHeads, upOffsets[u], up[u].length);
+            for (int w : up[u]) {
+                downOffsets[w + 1]++;
+            }
+            up[u] = null;
+        }
+        for (int w = 0; w < n; w++) {
+            downOffsets[w + 1] += downOffsets[w];
+        }
+        this.downTails = new int[upHeads.length];
+        this.downEdges = new int[upHeads.length];
+        int[] next = Arrays.copyOf(downOffsets, n);
+        for (int u = 0; u < n; u++) {
+            for (int e = upOffsets[u]; e < upOffsets[u + 1]; e++) {
+                int slot = next[upHeads[e]]++;
+                downTails[slot] = u;
+                downEdges[slot] = e;
+            }
+        }
+
+        this.arcEdge = new int[g.arcCount()];
+        for (int v = 0; v < n; v++) {
+            for (int a = g.outOffsets[v]; a < g.outOffsets[v + 1]; a++) {
+                int from = rank[v];
+                int to = rank[g.outTargets[a]];
+                if (from == to) {
+                    arcEdge[a] = -1;
+                    continue;
+                }
+                int lower = Math.min(from, to);
+                int e = Arrays.binarySearch(upHeads, upOffsets[lower], upOffsets[lower + 1], Math.max(from, to));
+                arcEdge[a] = 2 * e + (from < to ? 0 : 1);
+            }
+        }
+        this.levels = levels();
+    }
+
+    /**
+     * Orders g by nested dissection and builds the topology; both run on threads workers
+     * where they can.
+     */
+    public static Cch build(CsrGraph g, int threads) {
+        return new Cch(g, NestedDissection.order(g, threads));
+    }
+
+    /** Edges of the chordal supergraph, each carrying one weight per direction. */
+    public int edgeCount() {
+        return upHeads.length;
+    }
+
+    /** Rounds of the parallel customization. */
+    public int levelCount() {
+        return levels.length;
+    }
+
+    /**
+     * Search graph for a new metric: weights[a] is the weight of arc a of the graph this
+     * hierarchy was built for, in its CSR order (outWeights), or {@link #CLOSED}.
+     * Vertices whose lower neighbours are done are customized together on threads workers.
+     */
+    public ChGraph customize(int[] weights, int threads) {
+        if (weights.length != arcEdge.length) {
+            throw new IllegalArgumentException("Expected " + arcEdge.length + " arc weights, got " + weights.length);
+        }
+        if (threads < 1) {
+            throw new IllegalArgumentException("Thread count must be positive, got " + threads);
+        }
+        int m = upHeads.length;
+        int[] upWeight = new int[m];
+        int[] downWeight = new int[m];
+        int[] upVia = new int[m];
+        int[] downVia = new int[m];
+        Arrays.fill(upWeight, CLOSED);
+        Arrays.fill(downWeight, CLOSED);
+        Arrays.fill(upVia, -1);
+        Arrays.fill(downVia, -1);
+        for (int a = 0; a < weights.length; a++) {
+            int w = weights[a];
+            if (w < 0) {
+                throw new IllegalArgumentException("Negative weight " + w + " on arc " + a);
+            }
+            if (arcEdge[a] < 0 || w == CLOSED) {
+                continue;
+            }
+            int e = arcEdge[a] >> 1;
+            int[] target = (arcEdge[a] & 1) == 0 ? upWeight : downWeight;
+            target[e] = Math.min(target[e], w);
+        }
+
+        Weights metric = new Weights(upWeight, downWeight, upVia, downVia);
+        if (threads == 1) {
+            int[] slot = newSlots();
+            for (int[] level : levels) {
+                for (int u : level) {
+                    metric.relaxTriangles(u, slot);
+                }
+            }
+        } else {
+            ThreadLocal<int[]> slots = ThreadLocal.withInitial(this::newSlots);
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                for (int[] level : levels) {
+                    pool.submit(() -> Arrays.stream(level).parallel()
+                            .forEach(u -> metric.relaxTriangles(u, slots.get()))).join();
+                }
+            } finally {
+                pool.shutdown();
+            }
+        }
+        return metric.toSearchGraph();
+    }
+
+    private int[] newSlots() {
+        int[] slot = new int[n];
+        Arrays.fill(slot, -1);
+        return slot;
+    }
+
+    // Weights of both directions of every edge, with the middle vertex of the triangle that gave them.
+    private final class Weights {
+        final int[] up;
+        final int[] down;
+        final int[] upVia;
+        final int[] downVia;
+
+        Weights(int[] up, int[] down, int[] upVia, int[] downVia) {
+            this.up = up;
+            this.down = down;
+            this.upVia = upVia;
+            this.downVia = downVia;
+        }
+
+        /**
+         * Final weights of the edges at u: every lower neighbour v that is also adjacent to
+         * a higher neighbour w gives the paths u -> v -> w and w -> v -> u. Only u's own edges
+         * are written, and the edges at v are final because v is in an earlier level.
+         * slot is all -1 on entry and on return.
+         */
+        void relaxTriangles(int u, int[] slot) {
+            for (int e = upOffsets[u]; e < upOffsets[u + 1]; e++) {
+                slot[upHeads[e]] = e;
+            }
+            for (int d = downOffsets[u]; d < downOffsets[u + 1]; d++) {
+                int v = downTails[d];
+                int lower = downEdges[d];
+                int toV = down[lower];  // u -> v
+                int fromV = up[lower];  // v -> u
+                if (toV == CLOSED && fromV == CLOSED) {
+                    continue;
+                }
+                // v's edges after {v, u} lead to vertices above u, which chordality makes u's neighbours
+                for (int f = lower + 1; f < upOffsets[v + 1]; f++) {
+                    int e = slot[upHeads[f]];
+                    if (toV != CLOSED && up[f] != CLOSED && (long) toV + up[f] < up[e]) {
+                        up[e] = toV + up[f];
+                        upVia[e] = v;
+                    }
+                    if (fromV != CLOSED && down[f] != CLOSED && (long) down[f] + fromV < down[e]) {
+                        down[e] = down[f] + fromV;
+                        downVia[e] = v;
+                    }
+                }
+            }
+            for (int e = upOffsets[u]; e < upOffsets[u + 1]; e++) {
+                slot[upHeads[e]] = -1;
+            }
+        }
+
+        // The open directions of every edge as the upward arcs of a ChGraph numbered by rank.
+        ChGraph toSearchGraph() {
+            int[] forwardOffsets = new int[n + 1];
+            int[] backwardOffsets = new int[n + 1];
+            for (int u = 0; u < n; u++) {
+                int forward = 0;
+                int backward = 0;
+                for (int e = upOffsets[u]; e < upOffsets[u + 1]; e++) {
+                    forward += up[e] != CLOSED ? 1 : 0;
+                    backward += down[e] != CLOSED ? 1 : 0;
+                }
+                forwardOffsets[u + 1] = forwardOffsets[u] + forward;
+                backwardOffsets[u + 1] = backwardOffsets[u] + backward;
+            }
+            int[] forwardHeads = new int[forwardOffsets[n]];
+            int[] forwardWeights = new int[forwardHeads.length];
+            int[] forwardVia = new int[forwardHeads.length];
+            int[] backwardHeads = new int[backwardOffsets[n]];
+            int[] backwardWeights = new int[backwardHeads.length];
+            int[] backwardVia = new int[backwardHeads.length];
+            int forward = 0;
+            int backward = 0;
+            for (int u = 0; u < n; u++) {
+                for (int e = upOffsets[u]; e < upOffsets[u + 1]; e++) {
+                    if (up[e] != CLOSED) {
+                        forwardHeads[forward] = upHeads[e];
+                        forwardWeights[forward] = up[e];
+                        forwardVia[forward++] = upVia[e];
+                    }
+                    if (down[e] != CLOSED) {
+                        backwardHeads[backward] = upHeads[e];
+                        backwardWeights[backward] = down[e];
+                        backwardVia[backward++] = downVia[e];
+                    }
+                }
+            }
+
+            long[] ids = new long[n];
+            float[] xs = new float[n];
+            float[] ys = new float[n];
+            int[] ranks = new int[n];
+            for (int r = 0; r < n; r++) {
+                ids[r] = g.idOf(vertexAt[r]);
+                xs[r] = g.xs[vertexAt[r]];
+                ys[r] = g.ys[vertexAt[r]];
+                ranks[r] = r;
+            }
+            return ChGraph.of(LongBuffer.wrap(ids), FloatBuffer.wrap(xs), FloatBuffer.wrap(ys), IntBuffer.wrap(ranks),
+                    IntBuffer.wrap(forwardOffsets), IntBuffer.wrap(forwardHeads),
+                    IntBuffer.wrap(forwardWeights), IntBuffer.wrap(forwardVia),
+                    IntBuffer.wrap(backwardOffsets), IntBuffer.wrap(backwardHeads),
+                    IntBuffer.wrap(backwardWeights), IntBuffer.wrap(backwardVia));
+        }
+    }
+
+    // Neighbours of dense vertex v in either direction with a higher rank, as sorted distinct ranks.
+    private int[] higherNeighbours(int v, int[] rank) {
+        int[] result = new int[g.outDegree(v) + g.inDegree(v)];
+        int count = 0;
+        for (int a = g.outOffsets[v]; a < g.outOffsets[v + 1]; a++) {
+            if (rank[g.outTargets[a]] > rank[v]) {
+                result[count++] = rank[g.outTargets[a]];
+            }
+        }
+        for (int a = g.inOffsets[v]; a < g.inOffsets[v + 1]; a++) {
+            if (rank[g.inSources[a]] > rank[v]) {
+                result[count++] = rank[g.inSources[a]];
+            }
+        }
+        Arrays.sort(result, 0, count);
+        int distinct = 0;
+        for (int i = 0; i < count; i++) {
+            if (distinct == 0 || result[distinct - 1] != result[i]) {
+                result[distinct++] = result[i];
+            }
+        }
+        return Arrays.copyOf(result, distinct);
+    }
+
+    // Sorted union of a and b[from..].
+    private static int[] union(int[] a, int[] b, int from) {
+        int[] result = new int[a.length + b.length - from];
+        int i = 0;
+        int j = from;
+        int count = 0;
+        while (i < a.length || j < b.length) {
+            int next;
+            if (j == b.length || (i < a.length && a[i] < b[j])) {
+                next = a[i++];
+            } else if (i == a.length || b[j] < a[i]) {
+                next = b[j++];
+            } else {
+                next = a[i++];
+                j++;
+            }
+            result[count++] = next;
+        }
+        return count == result.length ? result : Arrays.copyOf(result, count);
+    }
+
+    // Level of a vertex: one above its highest lower neighbour, 0 without any.
+    private int[][] levels() {
+        int[] level = new int[n];
+        int levelCount = 0;
+        for (int u = 0; u < n; u++) {
+            for (int d = downOffsets[u]; d < downOffsets[u + 1]; d++) {
+                level[u] = Math.max(level[u], level[downTails[d]] + 1);
+            }
+            levelCount = Math.max(levelCount, level[u] + 1);
+        }
+        int[] sizes = new int[levelCount];
+        for (int u = 0; u < n; u++) {
+            sizes[level[u]]++;
+        }
+        int[][] result = new int[levelCount][];
+        for (int l = 0; l < levelCount; l++) {
+            result[l] = new int[sizes[l]];
+            sizes[l] = 0;
+        }
+        for (int u = 0; u < n; u++) {
+            result[level[u]][sizes[level[u]]++] = u;
+        }
+        return result;
+    }
+}
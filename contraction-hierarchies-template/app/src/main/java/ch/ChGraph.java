@@ -0,0 +1,398 @@
+package ch;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Search graph of a contraction hierarchy: for every vertex only the arcs that lead
+ * upward in rank are kept, once for the forward search (u -> v, rank v > rank u, stored
+ * at u) and once for the backward search (v -> u, rank v > rank u, stored at u).
+ * Vertices are numbered in rank order, so queries need no rank checks and the
+ * densely visited top of the hierarchy is contiguous in memory. A partially contracted
+ * hierarchy leaves its core uncontracted at one shared top rank; see {@link #coreStart()}.
+ * The arrays are buffers so the same graph can live on the heap or be served straight
+ * from a memory-mapped binary file written by {@link #write(Path)}.
+ *
+ * Binary layout (little endian, every section 8-byte aligned):
+ * header (magic, version, n, forward arcs, backward arcs), ids long[n], x float[n],
+ * y float[n], ranks int[n], forward offsets int[n+1], heads, weights, via int[mf],
+ * backward offsets int[n+1], heads, weights, via int[mb].
+ */
+public final class ChGraph {
+    static final long MAGIC = 0x3148505247484331L; // "1CHGRPH1" read as a little-endian long
+    static final int VERSION = 1;
+    private static final int HEADER_BYTES = 32;
+
+    final int n;
+    final VertexIndex index;
+    final LongBuffer ids;
+    final FloatBuffer xs;
+    final FloatBuffer ys;
+    final IntBuffer ranks;
+
+    final IntBuffer forwardOffsets;
+    final IntBuffer forwardHeads;
+    final IntBuffer forwardWeights;
+    final IntBuffer forwardVia;
+
+    final IntBuffer backwardOffsets;
+    final IntBuffer backwardHeads; // tail of the original arc, i.e. the higher ranked vertex
+    final IntBuffer backwardWeights;
+    final IntBuffer backwardVia;
+
+    private ChGraph(LongBuffer ids, FloatBuffer xs, FloatBuffer ys, IntBuffer ranks,
+                    IntBuffer forwardOffsets, IntBuffer forwardHeads, IntBuffer forwardWeights, IntBuffer forwardVia,
+                    IntBuffer backwardOffsets, IntBuffer backwardHeads, IntBuffer backwardWeights, IntBuffer backwardVia) {
+        this.n = ranks.limit();
+        this.ids = ids;
+        this.xs = xs;
+        this.ys = ys;
+        this.ranks = ranks;
+        this.forwardOffsets = forwardOffsets;
+        this.forwardHeads = forwardHeads;
+        this.forwardWeights = forwardWeights;
+        this.forwardVia = forwardVia;
+        this.backwardOffsets = backwardOffsets;
+        this.backwardHeads = backwardHeads;
+        this.backwardWeights = backwardWeights;
+        this.backwardVia = backwardVia;
+        this.index = new VertexIndex(n);
+        for (int v = 0; v < n; v++) {
+            index.add(ids.get(v));
+        }
+    }
+
+    /**
+     * Search graph from arrays that already follow the layout above: vertices numbered by
+     * rank, upward arcs at their tail, downward arcs at their head.
+     */
+    static ChGraph of(LongBuffer ids, FloatBuffer xs, FloatBuffer ys, IntBuffer ranks,
+                      IntBuffer forwardOffsets, IntBuffer forwardHeads, IntBuffer forwardWeights, IntBuffer forwardVia,
+                      IntBuffer backwardOffsets, IntBuffer backwardHeads, IntBuffer backwardWeights, IntBuffer backwardVia) {
+        return new ChGraph(ids, xs, ys, ranks, forwardOffsets, forwardHeads, forwardWeights, forwardVia,
+                backwardOffsets, backwardHeads, backwardWeights, backwardVia);
+    }
+
+    /**
+     * Splits an augmented graph (original arcs plus shortcuts) into upward forward and backward arcs.
+     * ranks is indexed by the dense indices of g. Vertices are renumbered by rank (ties by
+     * original index), so the upper levels that every query visits sit next to each other.
+     * Arcs between vertices of equal rank, i.e. within an uncontracted core, are kept in
+     * both directions: at the tail for the forward search and at the head for the backward one.
+     */
+    public static ChGraph fromAugmented(CsrGraph g, int[] ranks) {
+        int n = g.vertexCount();
+        int[] order = byRank(ranks, n);    // new index -> index in g
+        int[] renamed = new int[n];        // index in g -> new index
+        for (int v = 0; v < n; v++) {
+            renamed[order[v]] = v;
+        }
+
+        int[] forwardOffsets = new int[n + 1];
+        int[] backwardOffsets = new int[n + 1];
+        for (int u = 0; u < n; u++) {
+            for (int a = g.outOffsets[u]; a < g.outOffsets[u + 1]; a++) {
+                int v = g.outTargets[a];
+                if (ranks[v] >= ranks[u] && u != v) {
+                    forwardOffsets[renamed[u] + 1]++;
+                }
+                if (ranks[u] >= ranks[v] && u != v) {
+                    backwardOffsets[renamed[v] + 1]++;
+                }
+            }
+        }
+        for (int u = 0; u < n; u++) {
+            forwardOffsets[u + 1] += forwardOffsets[u];
+            backwardOffsets[u + 1] += backwardOffsets[u];
+        }
+
+        int[] forwardHeads = new int[forwardOffsets[n]];
+        int[] forwardWeights = new int[forwardHeads.length];
+        int[] forwardVia = new int[forwardHeads.length];
+        int[] backwardHeads = new int[backwardOffsets[n]];
+        int[] backwardWeights = new int[backwardHeads.length];
+        int[] backwardVia = new int[backwardHeads.length];
+        int[] nextForward = forwardOffsets.clone();
+        int[] nextBackward = backwardOffsets.clone();
+        for (int newU = 0; newU < n; newU++) {
+            // Walk the tails in new order so every vertex's arcs keep g's relative order
+            int u = order[newU];
+            for (int a = g.outOffsets[u]; a < g.outOffsets[u + 1]; a++) {
+                int v = g.outTargets[a];
+                int via = g.outVia[a] < 0 ? -1 : renamed[g.outVia[a]];
+                if (u == v) {
+                    continue;
+                }
+                if (ranks[v] >= ranks[u]) {
+                    int slot = nextForward[newU]++;
+                    forwardHeads[slot] = renamed[v];
+                    forwardWeights[slot] = g.outWeights[a];
+                    forwardVia[slot] = via;
+                }
+                if (ranks[u] >= ranks[v]) {
+                    int slot = nextBackward[renamed[v]]++;
+                    backwardHeads[slot] = newU;
+                    backwardWeights[slot] = g.outWeights[a];
+                    backwardVia[slot] = via;
+                }
+            }
+        }
+
+        long[] ids = new long[n];
+        float[] xs = new float[n];
+        float[] ys = new float[n];
+        int[] newRanks = new int[n];
+        for (int v = 0; v < n; v++) {
+            ids[v] = g.idOf(order[v]);
+            xs[v] = g.xs[order[v]];
+            ys[v] = g.ys[order[v]];
+            newRanks[v] = ranks[order[v]];
+        }
+        return new ChGraph(LongBuffer.wrap(ids), FloatBuffer.wrap(xs), FloatBuffer.wrap(ys),
+                IntBuffer.wrap(newRanks),
+                IntBuffer.wrap(forwardOffsets), IntBuffer.wrap(forwardHeads),
+                IntBuffer.wrap(forwardWeights), IntBuffer.wrap(forwardVia),
+                IntBuffer.wrap(backwardOffsets), IntBuffer.wrap(backwardHeads),
+                IntBuffer.wrap(backwardWeights), IntBuffer.wrap(backwardVia));
+    }
+
+    // Indices 0..n-1 sorted by rank, ties by index; a counting sort when ranks are 0..n-1.
+    private static int[] byRank(int[] ranks, int n) {
+        int[] slot = new int[n];
+        Arrays.fill(slot, -1);
+        boolean permutation = true;
+        for (int v = 0; v < n && permutation; v++) {
+            int r = ranks[v];
+            permutation = r >= 0 && r < n && slot[r] < 0;
+            if (permutation) {
+                slot[r] = v;
+            }
+        }
+        if (permutation) {
+            return slot;
+        }
+        int[] order = new int[n];
+        long[] keyed = new long[n];
+        for (int v = 0; v < n; v++) {
+            keyed[v] = ((long) ranks[v] << 32) | v;
+        }
+        Arrays.sort(keyed);
+        for (int i = 0; i < n; i++) {
+            order[i] = (int) keyed[i];
+        }
+        return order;
+    }
+
+    public int vertexCount() {
+        return n;
+    }
+
+    public int forwardArcCount() {
+        return forwardHeads.limit();
+    }
+
+    public int backwardArcCount() {
+        return backwardHeads.limit();
+    }
+
+    public int indexOf(long id) {
+        return index.indexOf(id);
+    }
+
+    public long idOf(int v) {
+        return ids.get(v);
+    }
+
+    public int rank(int v) {
+        return ranks.get(v);
+    }
+
+    /**
+     * First vertex of the core: the vertices sharing the top rank, which fill the indices
+     * from here to n - 1. A fully contracted hierarchy has a core of one vertex.
+     */
+    public int coreStart() {
+        if (n == 0) {
+            return 0;
+        }
+        int top = ranks.get(n - 1);
+        int lo = 0;
+        int hi = n - 1;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (ranks.get(mid) < top) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * The core as a graph of its own, with the same ids and coordinates; core vertex v
+     * has dense index v - {@link #coreStart()}. Its arcs are the forward arcs between
+     * core vertices, without middle vertices.
+     */
+    public CsrGraph core() {
+        int start = coreStart();
+        CsrGraph.Builder builder = new CsrGraph.Builder(n - start, forwardOffsets.get(n) - forwardOffsets.get(start));
+        for (int v = start; v < n; v++) {
+            builder.addVertex(ids.get(v), xs.get(v), ys.get(v));
+        }
+        for (int u = start; u < n; u++) {
+            for (int a = forwardOffsets.get(u), end = forwardOffsets.get(u + 1); a < end; a++) {
+                builder.addArc(u - start, forwardHeads.get(a) - start, forwardWeights.get(a), -1);
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * True if the file starts with the binary CH magic number.
+     */
+    public static boolean isBinary(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES) {
+                return false;
+            }
+            ByteBuffer header = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+            channel.read(header, 0);
+            return header.getLong(0) == MAGIC;
+        }
+    }
+
+    /**
+     * Maps a file written by {@link #write(Path)}; arcs, ranks and coordinates are read
+     * from the mapping on demand, only the id lookup table is built on the heap.
+     */
+    public static ChGraph map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES) {
+                throw new IOException("Not a binary CH graph: " + path);
+            }
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            if (header.getLong(0) != MAGIC) {
+                throw new IOException("Not a binary CH graph: " + path);
+            }
+            int version = header.getInt(8);
+            if (version != VERSION) {
+                throw new IOException("Unsupported CH graph version " + version + " in " + path);
+            }
+            int n = header.getInt(12);
+            int forwardArcs = header.getInt(16);
+            int backwardArcs = header.getInt(20);
+
+            Sections sections = new Sections(channel, HEADER_BYTES);
+            LongBuffer ids = sections.next(8L * n).asLongBuffer();
+            FloatBuffer xs = sections.next(4L * n).asFloatBuffer();
+            FloatBuffer ys = sections.next(4L * n).asFloatBuffer();
+            IntBuffer ranks = sections.next(4L * n).asIntBuffer();
+            IntBuffer forwardOffsets = sections.next(4L * (n + 1)).asIntBuffer();
+            IntBuffer forwardHeads = sections.next(4L * forwardArcs).asIntBuffer();
+            IntBuffer forwardWeights = sections.next(4L * forwardArcs).asIntBuffer();
+            IntBuffer forwardVia = sections.next(4L * forwardArcs).asIntBuffer();
+            IntBuffer backwardOffsets = sections.next(4L * (n + 1)).asIntBuffer();
+            IntBuffer backwardHeads = sections.next(4L * backwardArcs).asIntBuffer();
+            IntBuffer backwardWeights = sections.next(4L * backwardArcs).asIntBuffer();
+            IntBuffer backwardVia = sections.next(4L * backwardArcs).asIntBuffer();
+            return new ChGraph(ids, xs, ys, ranks,
+                    forwardOffsets, forwardHeads, forwardWeights, forwardVia,
+                    backwardOffsets, backwardHeads, backwardWeights, backwardVia);
+        }
+    }
+
+    /**
+     * Writes the versioned binary format read by {@link #map(Path)}.
+     */
+    public void write(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putLong(MAGIC).putInt(VERSION).putInt(n)
+                    .putInt(forwardArcCount()).putInt(backwardArcCount()).putLong(0L);
+            for (int v = 0; v < n; v++) {
+                buffer = ensureRoom(channel, buffer, 8).putLong(ids.get(v));
+            }
+            buffer = writeFloats(channel, buffer, xs);
+            buffer = writeFloats(channel, buffer, ys);
+            buffer = writeInts(channel, buffer, ranks);
+            buffer = writeInts(channel, buffer, forwardOffsets);
+            buffer = writeInts(channel, buffer, forwardHeads);
+            buffer = writeInts(channel, buffer, forwardWeights);
+            buffer = writeInts(channel, buffer, forwardVia);
+            buffer = writeInts(channel, buffer, backwardOffsets);
+            buffer = writeInts(channel, buffer, backwardHeads);
+            buffer = writeInts(channel, buffer, backwardWeights);
+            buffer = writeInts(channel, buffer, backwardVia);
+            flush(channel, buffer);
+        }
+    }
+
+    private static ByteBuffer writeInts(FileChannel channel, ByteBuffer buffer, IntBuffer values) throws IOException {
+        for (int i = 0, size = values.limit(); i < size; i++) {
+            buffer = ensureRoom(channel, buffer, 4).putInt(values.get(i));
+        }
+        return pad(channel, buffer);
+    }
+
+    private static ByteBuffer writeFloats(FileChannel channel, ByteBuffer buffer, FloatBuffer values) throws IOException {
+        for (int i = 0, size = values.limit(); i < size; i++) {
+            buffer = ensureRoom(channel, buffer, 4).putFloat(values.get(i));
+        }
+        return pad(channel, buffer);
+    }
+
+    // Sections start on 8-byte boundaries; the buffer is flushed in multiples of 8 so its position tracks the file's.
+    private static ByteBuffer pad(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while ((buffer.position() & 7) != 0) {
+            buffer = ensureRoom(channel, buffer, 1).put((byte) 0);
+        }
+        return buffer;
+    }
+
+    private static ByteBuffer ensureRoom(FileChannel channel, ByteBuffer buffer, int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            flush(channel, buffer);
+        }
+        return buffer;
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    // Maps consecutive 8-byte aligned sections of the file, one mapping per array.
+    private static final class Sections {
+        private final FileChannel channel;
+        private long offset;
+
+        Sections(FileChannel channel, long offset) {
+            this.channel = channel;
+            this.offset = offset;
+        }
+
+        ByteBuffer next(long bytes) throws IOException {
+            if (offset + bytes > channel.size()) {
+                throw new IOException("Truncated CH graph file");
+            }
+            ByteBuffer section = channel.map(FileChannel.MapMode.READ_ONLY, offset, bytes)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            offset += (bytes + 7) & ~7L;
+            return section;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package ch;
+
+import java.nio.IntBuffer;
+
+/**
+ * Bidirectional CH query on a {@link ChGraph}. Both searches only see upward arcs,
+ * so no rank checks are needed while relaxing.
+ *
+ * With stall-on-demand a settled vertex u is not expanded if a higher vertex w that
+ * the same search already reached proves u's distance suboptimal through the
+ * downward arc w -> u. Stalling is on by default; -Dch.stallOnDemand=false turns it off.
+ */
+public class ChQuery {
+    static final boolean STALL_ON_DEMAND = !"false".equalsIgnoreCase(System.getProperty("ch.stallOnDemand"));
+
+    public static Result<Integer> shortestPath(ChGraph g, long s, long t) {
+        return shortestPath(g, s, t, SearchWorkspace.forThread(g.vertexCount()));
+    }
+
+    public static Result<Integer> shortestPath(ChGraph g, long s, long t, SearchWorkspace ws) {
+        return shortestPath(g, s, t, ws, STALL_ON_DEMAND);
+    }
+
+    public static Result<Integer> shortestPath(ChGraph g, long s, long t, SearchWorkspace ws, boolean stallOnDemand) {
+        long start = System.nanoTime();
+        int source = g.indexOf(s);
+        int target = g.indexOf(t);
+        if (source < 0 || target < 0) {
+            return new Result<>(System.nanoTime() - start, 0, -1);
+        }
+        int best = distance(g, source, target, ws, stallOnDemand);
+        long end = System.nanoTime();
+        return new Result<>(end - start, ws.relaxed, best);
+    }
+
+    /**
+     * Allocation-free core between dense indices. Returns -1 if there is no path;
+     * the number of relaxed arcs is left in ws.relaxed.
+     */
+    static int distance(ChGraph g, int source, int target, SearchWorkspace ws) {
+        return distance(g, source, target, ws, STALL_ON_DEMAND);
+    }
+
+    static int distance(ChGraph g, int source, int target, SearchWorkspace ws, boolean stallOnDemand) {
+        ws.reset();
+        if (source == target) {
+            ws.meeting = source;
+            return 0;
+        }
+        IndexedMinHeap ql = ws.forwardHeap; // forward
+        IndexedMinHeap qr = ws.backwardHeap; // backward
+
+        int best = Integer.MAX_VALUE;
+        int meeting = -1;
+        int relaxed = 0;
+
+        ws.setForward(source, 0, -1); ql.push(source, 0);
+        ws.setBackward(target, 0, -1); qr.push(target, 0);
+
+        while (!ql.isEmpty() || !qr.isEmpty()) {
+            int minForward  = ql.isEmpty() ? Integer.MAX_VALUE : ql.peekKey();
+            int minBackward = qr.isEmpty() ? Integer.MAX_VALUE : qr.peekKey();
+            if (Math.min(minForward, minBackward) >= best) {
+                break;
+            }
+
+            boolean forward = minForward <= minBackward;
+            IndexedMinHeap pq = forward ? ql : qr;
+
+            int du = pq.peekKey();
+            int u = pq.poll();
+
+            // Meet update if other side has reached u
+            int otherU = ws.distance(!forward, u);
+            if (otherU != SearchWorkspace.INF && du + otherU < best) {
+                best = du + otherU;
+                meeting = u;
+            }
+
+            if (stallOnDemand && isStalled(g, ws, forward, u, du)) {
+                continue;
+            }
+
+            IntBuffer offsets = forward ? g.forwardOffsets : g.backwardOffsets;
+            IntBuffer heads = forward ? g.forwardHeads : g.backwardHeads;
+            IntBuffer weights = forward ? g.forwardWeights : g.backwardWeights;
+
+            for (int a = offsets.get(u), end = offsets.get(u + 1); a < end; a++) {
+                int newDist = du + weights.get(a);
+                if (newDist >= best) {
+                    continue;
+                }
+                int v = heads.get(a);
+
+                relaxed++;
+                if (newDist < ws.distance(forward, v)) {
+                    ws.set(forward, v, newDist, a);
+                    pq.push(v, newDist);
+
+                    // Meet update via v
+                    int otherV = ws.distance(!forward, v);
+                    if (otherV != SearchWorkspace.INF && newDist + otherV < best) {
+                        best = newDist + otherV;
+                        meeting = v;
+                    }
+                }
+            }
+        }
+
+        ws.relaxed = relaxed;
+        ws.meeting = meeting;
+        return best == Integer.MAX_VALUE ? -1 : best;
+    }
+
+    /**
+     * Like {@link #shortestPath(ChGraph, long, long)} but also fills Result.path with the
+     * original vertex ids of the route, shortcuts expanded by unpacker. The time covers
+     * search and unpacking.
+     */
+    public static Result<Integer> route(ChGraph g, long s, long t, PathUnpacker unpacker) {
+        SearchWorkspace ws = SearchWorkspace.forThread(g.vertexCount());
+        long start = System.nanoTime();
+        int source = g.indexOf(s);
+        int target = g.indexOf(t);
+        if (source < 0 || target < 0) {
+            return new Result<>(System.nanoTime() - start, 0, -1);
+        }
+        int best = distance(g, source, target, ws, STALL_ON_DEMAND);
+        long[] path = best < 0 ? null : unpacker.unpack(ws, source, target);
+        long end = System.nanoTime();
+        Result<Integer> result = new Result<>(end - start, ws.relaxed, best);
+        result.path = path;
+        return result;
+    }
+
+    /**
+     * Distances from every source to every target as a flat row-major matrix, from one
+     * upward search per source and per target; see {@link DistanceTable}. Source and
+     * target searches run on all available processors.
+     */
+    public static int[] distanceTable(ChGraph g, long[] sources, long[] targets) {
+        return new DistanceTable(g, Runtime.getRuntime().availableProcessors()).compute(sources, targets);
+    }
+
+    // The arcs entering u from above are the upward arcs of the opposite search.
+    static boolean isStalled(ChGraph g, SearchWorkspace ws, boolean forward, int u, int du) {
+        IntBuffer offsets = forward ? g.backwardOffsets : g.forwardOffsets;
+        IntBuffer heads = forward ? g.backwardHeads : g.forwardHeads;
+        IntBuffer weights = forward ? g.backwardWeights : g.forwardWeights;
+        for (int a = offsets.get(u), end = offsets.get(u + 1); a < end; a++) {
+            int dw = ws.distance(forward, heads.get(a));
+            if (dw != SearchWorkspace.INF && dw + weights.get(a) < du) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,808 @@
+package ch;
+
+import java.util.Arrays;
+
+/**
+ * Working graph for CH preprocessing over the dense vertex index of the input graph.
+ * Out- and in-arcs live in primitive per-vertex blocks with a little slack; a block that
+ * runs full is moved to the end of its pool with twice the capacity, and the pool is
+ * compacted once more than half of it is abandoned blocks. Compared with a copy of
+ * {@link Graph}, no Edge objects exist and the in-arcs only mirror tail, weight and
+ * original-arc count.
+ */
+final class ContractionGraph {
+    static final int MAX_WITNESS_HOPS = 4; // avoid extremely long detours creating cross-country shortcuts
+    private static final int UNREACHED = Integer.MAX_VALUE;
+    private static final int SLACK = 2;
+    private static final int NO_CHANGE = 0;
+    private static final int IMPROVED = 1;
+    private static final int CREATED = 2;
+
+    private final VertexIndex index;
+    private final boolean[] present; // vertex of the input graph that is not contracted yet
+    private int presentCount;
+    private final Blocks out; // head, weight, original arcs
+    private final Blocks in;  // tail, weight, original arcs
+    private final WitnessWorkspace witness = new WitnessWorkspace();
+    private int witnessHopLimit = MAX_WITNESS_HOPS;
+    private int witnessSettleLimit = Integer.MAX_VALUE;
+    // Adjacency version per vertex, raised whenever an arc at the vertex changes; see Simulation.
+    private final int[] version;
+    private long modifications;
+
+    ContractionGraph(Graph graph) {
+        this(graph.vertexIndex(), degrees(graph, true), degrees(graph, false));
+        // Adjacency lists in Graph.forEachArc order
+        graph.forEachArc((from, to, weight) -> {
+            int u = index.indexOf(from);
+            int w = index.indexOf(to);
+            out.append(u, w, weight, 1);
+            in.append(w, u, weight, 1);
+        });
+        for (long id : graph.getVertexIds()) {
+            present[index.indexOf(id)] = true;
+            presentCount++;
+        }
+    }
+
+    /**
+     * Rebuilds a working graph from the remaining out-arcs of a {@link PreprocessCheckpoint}.
+     */
+    ContractionGraph(VertexIndex index, PreprocessCheckpoint checkpoint) {
+        this(index, outDegrees(checkpoint.arcOffsets), inDegrees(index.size(), checkpoint.arcHeads));
+        for (int u = 0; u < index.size(); u++) {
+            for (int a = checkpoint.arcOffsets[u]; a < checkpoint.arcOffsets[u + 1]; a++) {
+                int w = checkpoint.arcHeads[a];
+                out.append(u, w, checkpoint.arcWeights[a], checkpoint.arcOriginals[a]);
+                in.append(w, u, checkpoint.arcWeights[a], checkpoint.arcOriginals[a]);
+            }
+            if (checkpoint.present[u]) {
+                present[u] = true;
+                presentCount++;
+            }
+        }
+    }
+
+    private ContractionGraph(VertexIndex index, int[] outDegree, int[] inDegree) {
+        this.index = index;
+        this.present = new boolean[index.size()];
+        this.version = new int[index.size()];
+        this.out = new Blocks(outDegree);
+        this.in = new Blocks(inDegree);
+    }
+
+    private static int[] degrees(Graph graph, boolean outgoing) {
+        VertexIndex index = graph.vertexIndex();
+        int[] degree = new int[index.size()];
+        graph.forEachArc((from, to, weight) -> degree[index.indexOf(outgoing ? from : to)]++);
+        return degree;
+    }
+
+    private static int[] outDegrees(int[] offsets) {
+        int[] degree = new int[offsets.length - 1];
+        for (int v = 0; v < degree.length; v++) {
+            degree[v] = offsets[v + 1] - offsets[v];
+        }
+        return degree;
+    }
+
+    private static int[] inDegrees(int n, int[] heads) {
+        int[] degree = new int[n];
+        for (int head : heads) {
+            degree[head]++;
+        }
+        return degree;
+    }
+
+    VertexIndex vertexIndex() {
+        return index;
+    }
+
+    boolean isPresent(int v) {
+        return present[v];
+    }
+
+    int presentCount() {
+        return presentCount;
+    }
+
+    /**
+     * Dense indices of the vertices not contracted yet, ascending.
+     */
+    int[] presentVertices() {
+        int[] vertices = new int[presentCount];
+        int count = 0;
+        for (int v = 0; v < present.length; v++) {
+            if (present[v]) {
+                vertices[count++] = v;
+            }
+        }
+        return vertices;
+    }
+
+    int outDegree(int v) {
+        return out.size[v];
+    }
+
+    int outHead(int v, int i) {
+        return out.first[out.start[v] + i];
+    }
+
+    int inDegree(int v) {
+        return in.size[v];
+    }
+
+    int inTail(int v, int i) {
+        return in.first[in.start[v] + i];
+    }
+
+    /**
+     * The out-arcs of all vertices in CSR form over the dense index, in adjacency order:
+     * {offsets, heads, weights, original-arc counts}. The in-arcs mirror them.
+     */
+    int[][] outArcs() {
+        int n = index.size();
+        int[] offsets = new int[n + 1];
+        for (int v = 0; v < n; v++) {
+            offsets[v + 1] = offsets[v] + out.size[v];
+        }
+        int[] heads = new int[offsets[n]];
+        int[] weights = new int[offsets[n]];
+        int[] originals = new int[offsets[n]];
+        for (int v = 0; v < n; v++) {
+            System.arraycopy(out.first, out.start[v], heads, offsets[v], out.size[v]);
+            System.arraycopy(out.second, out.start[v], weights, offsets[v], out.size[v]);
+            System.arraycopy(out.third, out.start[v], originals, offsets[v], out.size[v]);
+        }
+        return new int[][] {offsets, heads, weights, originals};
+    }
+
+    /**
+     * Arc slots in use and allocated over both pools, for memory reporting.
+     */
+    long arcSlots() {
+        return (long) out.end + in.end;
+    }
+
+    /**
+     * Bounds every witness search: at most hopLimit arcs per witness path (default
+     * MAX_WITNESS_HOPS) and at most settleLimit settled vertices per search (default
+     * unbounded). Tighter limits find fewer witnesses, so contraction is faster but adds
+     * more shortcuts; the hierarchy stays correct either way.
+     */
+    void setWitnessLimits(int hopLimit, int settleLimit) {
+        if (hopLimit < 1 || settleLimit < 1) {
+            throw new IllegalArgumentException("Witness limits must be positive, got hops=" + hopLimit + " settled=" + settleLimit);
+        }
+        this.witnessHopLimit = hopLimit;
+        this.witnessSettleLimit = settleLimit;
+    }
+
+    /**
+     * Legacy edge difference estimate: neighbour pairs over the out-arcs without a direct
+     * arc of at most their combined weight, minus the distinct neighbours.
+     */
+    int getEdgeDifference(int v) {
+        int degree = out.size[v];
+        if (degree == 0) {
+            return 0;
+        }
+        int[] neighbours = new int[degree];
+        int[] weights = new int[degree];
+        int count = 0;
+        for (int a = out.start[v], end = a + degree; a < end; a++) {
+            int w = out.first[a];
+            if (w == v) {
+                continue;
+            }
+            int i = 0;
+            while (i < count && neighbours[i] != w) {
+                i++;
+            }
+            if (i == count) {
+                neighbours[count] = w;
+                weights[count++] = out.second[a];
+            } else if (out.second[a] < weights[i]) {
+                weights[i] = out.second[a];
+            }
+        }
+
+        int shortcuts = 0;
+        for (int i = 0; i < count; i++) {
+            for (int j = i + 1; j < count; j++) {
+                long shortcutWeight = (long) weights[i] + (long) weights[j];
+                int bestExisting = Math.min(getWeight(neighbours[i], neighbours[j]), getWeight(neighbours[j], neighbours[i]));
+                if (bestExisting == Integer.MAX_VALUE || (long) bestExisting > shortcutWeight) {
+                    shortcuts++;
+                }
+            }
+        }
+        return shortcuts - count;
+    }
+
+    /**
+     * Contracts v: one witness search per predecessor u decides every successor at once,
+     * then u's shortcuts are inserted. Created and improved shortcuts are added to sink
+     * (may be null); returns the number of arcs created.
+     */
+    int contract(int v, ShortcutBuffer sink) {
+        int maxOut = maxOutWeight(v);
+        int created = 0;
+        ShortcutList needed = new ShortcutList();
+        for (int p = 0; p < in.size[v]; p++) {
+            int a = in.start[v] + p;
+            int u = in.first[a];
+            int weightUV = in.second[a];
+            int originalUV = in.third[a];
+            if (u == v) {
+                continue;
+            }
+            search(u, -1, v, (int) Math.min(Integer.MAX_VALUE, (long) weightUV + maxOut), witness, null);
+            needed.clear();
+            for (int b = out.start[v], end = b + out.size[v]; b < end; b++) {
+                int w = out.first[b];
+                if (w == v || w == u) {
+                    continue;
+                }
+                long shortcutWeight = (long) weightUV + (long) out.second[b];
+                if (shortcutWeight > Integer.MAX_VALUE || witness.dist[w] <= shortcutWeight) {
+                    continue; // witness path, possibly the direct arc u -> w
+                }
+                needed.add(u, w, (int) shortcutWeight, originalUV + out.third[b]);
+            }
+            witness.reset();
+            created += apply(v, needed, sink);
+        }
+        removeVertex(v);
+        return created;
+    }
+
+    /**
+     * Simulated contraction of v without changing the graph, as in {@link #contract} but with
+     * the witness searches of all predecessors run before any shortcut is inserted. Witness
+     * paths may not use any vertex set in blocked (may be null), which keeps the result valid
+     * when the blocked vertices are contracted in the same round. Safe to call from several
+     * threads as long as nobody modifies the graph and each thread has its own workspace.
+     */
+    Simulation simulateContraction(int v, WitnessWorkspace ws, boolean[] blocked) {
+        Simulation simulation = new Simulation(v, modifications);
+        simulation.watch(v, version);
+        for (Blocks blocks : new Blocks[] {out, in}) {
+            for (int a = blocks.start[v], end = a + blocks.size[v]; a < end; a++) {
+                simulation.removedArcs++;
+                simulation.removedOriginalArcs += blocks.third[a];
+            }
+        }
+        if (out.size[v] == 0 || in.size[v] == 0) {
+            simulation.trim();
+            return simulation;
+        }
+
+        int maxOut = maxOutWeight(v);
+        for (int a = in.start[v], inEnd = a + in.size[v]; a < inEnd; a++) {
+            int u = in.first[a];
+            if (u == v) {
+                continue;
+            }
+            int weightUV = in.second[a];
+            search(u, -1, v, (int) Math.min(Integer.MAX_VALUE, (long) weightUV + maxOut), ws, blocked);
+            for (int i = 0; i < ws.settledCount; i++) {
+                simulation.watch(ws.settled[i], version);
+            }
+            for (int b = out.start[v], end = b + out.size[v]; b < end; b++) {
+                int w = out.first[b];
+                if (w == v || w == u) {
+                    continue;
+                }
+                long shortcutWeight = (long) weightUV + (long) out.second[b];
+                if (shortcutWeight > Integer.MAX_VALUE || ws.dist[w] <= shortcutWeight) {
+                    continue;
+                }
+                int originalArcs = in.third[a] + out.third[b];
+                simulation.shortcuts.add(u, w, (int) shortcutWeight, originalArcs);
+                if (getWeight(u, w) == Integer.MAX_VALUE) {
+                    simulation.addedArcs++;
+                }
+                simulation.addedOriginalArcs += originalArcs;
+            }
+            ws.reset();
+        }
+        simulation.trim();
+        return simulation;
+    }
+
+    /**
+     * Contracts v with the shortcuts of an earlier simulation when it is still current,
+     * otherwise simulates again first. Returns the number of arcs created.
+     */
+    int contract(int v, Simulation simulation, WitnessWorkspace ws, ShortcutBuffer sink) {
+        if (simulation == null || simulation.vertex != v || !isCurrent(simulation)) {
+            simulation = simulateContraction(v, ws, null);
+        }
+        return contractPlanned(v, simulation, sink);
+    }
+
+    /**
+     * Removes v and inserts the shortcuts of a simulation without checking whether it is current.
+     */
+    int contractPlanned(int v, Simulation simulation, ShortcutBuffer sink) {
+        int created = apply(v, simulation.shortcuts, sink);
+        removeVertex(v);
+        return created;
+    }
+
+    /**
+     * True if no arc the simulation's witness searches scanned has changed since, so
+     * simulating again would give the same result.
+     */
+    boolean isCurrent(Simulation simulation) {
+        if (simulation.modifications == modifications) {
+            return true;
+        }
+        if (simulation.watched == null) {
+            return false;
+        }
+        long sum = 0;
+        for (int i = 0; i < simulation.watchedCount; i++) {
+            sum += version[simulation.watched[i]];
+        }
+        return sum == simulation.versionSum;
+    }
+
+    private int apply(int v, ShortcutList shortcuts, ShortcutBuffer sink) {
+        int created = 0;
+        for (int i = 0; i < shortcuts.size; i++) {
+            int from = shortcuts.from[i];
+            int to = shortcuts.to[i];
+            int weight = shortcuts.weight[i];
+            int state = insertOrImproveShortcut(from, to, weight, shortcuts.originalArcs[i]);
+            if (state == NO_CHANGE) {
+                continue;
+            }
+            if (state == CREATED) {
+                created++;
+            }
+            if (sink != null) {
+                sink.add(from, to, weight, index.idOf(v));
+            }
+        }
+        return created;
+    }
+
+    private int maxOutWeight(int v) {
+        int maxOut = 0;
+        for (int b = out.start[v], end = b + out.size[v]; b < end; b++) {
+            if (out.first[b] != v) {
+                maxOut = Math.max(maxOut, out.second[b]);
+            }
+        }
+        return maxOut;
+    }
+
+    // Lightest arc from -> to, or Integer.MAX_VALUE.
+    private int getWeight(int from, int to) {
+        int best = Integer.MAX_VALUE;
+        for (int a = out.start[from], end = a + out.size[from]; a < end; a++) {
+            if (out.first[a] == to && out.second[a] < best) {
+                best = out.second[a];
+            }
+        }
+        return best;
+    }
+
+    // Hop-limited Dijkstra from s avoiding forbidden and blocked; stops early when t (if >= 0) is settled.
+    private boolean search(int s, int t, int forbidden, int limit, WitnessWorkspace ws, boolean[] blocked) {
+        ws.ensureCapacity(index.size());
+        IndexedMinHeap pq = ws.heap;
+        int[] distances = ws.dist;
+        int[] hops = ws.hops;
+        ws.touch(s, 0, 0);
+        pq.push(s, 0);
+
+        while (!pq.isEmpty()) {
+            int distance = pq.peekKey();
+            int u = pq.poll();
+            if (distance > limit) {
+                break;
+            }
+            if (u == t) {
+                return true;
+            }
+            if (ws.settledCount >= witnessSettleLimit) {
+                break;
+            }
+            ws.settle(u);
+
+            int nextHops = hops[u] + 1;
+            if (nextHops > witnessHopLimit) {
+                continue;
+            }
+            for (int a = out.start[u], end = a + out.size[u]; a < end; a++) {
+                int next = out.first[a];
+                if (next == forbidden || (blocked != null && blocked[next])) {
+                    continue;
+                }
+                int newDist = distance + out.second[a];
+                if (newDist > limit) {
+                    continue;
+                }
+                if (distances[next] == UNREACHED) {
+                    ws.touch(next, newDist, nextHops);
+                    pq.push(next, newDist);
+                } else if (newDist < distances[next]) {
+                    distances[next] = newDist;
+                    hops[next] = nextHops;
+                    pq.push(next, newDist);
+                }
+            }
+        }
+        return false;
+    }
+
+    // Keeps one arc per head: later arcs to the same head that are not lighter are dropped.
+    private int insertOrImproveShortcut(int from, int to, int weight, int originalArcs) {
+        int best = -1;
+        int i = 0;
+        while (i < out.size[from]) {
+            int a = out.start[from] + i;
+            if (out.first[a] != to) {
+                i++;
+                continue;
+            }
+            if (best < 0 || out.second[a] < out.second[out.start[from] + best]) {
+                best = i;
+                i++;
+            } else {
+                int droppedWeight = out.second[a];
+                out.removeAt(from, i);
+                in.removeFirst(to, from, droppedWeight);
+                bump(from);
+                bump(to);
+            }
+        }
+
+        if (best >= 0) {
+            int a = out.start[from] + best;
+            if (out.second[a] <= weight) {
+                return NO_CHANGE;
+            }
+            out.second[a] = weight;
+            out.third[a] = originalArcs;
+            updateIncoming(from, to, weight, originalArcs);
+            bump(from);
+            bump(to);
+            return IMPROVED;
+        }
+
+        out.append(from, to, weight, originalArcs);
+        in.append(to, from, weight, originalArcs);
+        bump(from);
+        bump(to);
+        return CREATED;
+    }
+
+    // First in-arc from source at target takes the new weight, later ones are dropped.
+    private void updateIncoming(int source, int target, int weight, int originalArcs) {
+        boolean updated = false;
+        int i = 0;
+        while (i < in.size[target]) {
+            int a = in.start[target] + i;
+            if (in.first[a] != source) {
+                i++;
+            } else if (!updated) {
+                in.second[a] = weight;
+                in.third[a] = originalArcs;
+                updated = true;
+                i++;
+            } else {
+                in.removeAt(target, i);
+            }
+        }
+        if (!updated) {
+            in.append(target, source, weight, originalArcs);
+        }
+    }
+
+    private void removeVertex(int v) {
+        for (int p = 0; p < in.size[v]; p++) {
+            int u = in.first[in.start[v] + p];
+            if (out.removeAll(u, v) > 0) {
+                bump(u);
+            }
+        }
+        in.clear(v);
+        for (int p = 0; p < out.size[v]; p++) {
+            int w = out.first[out.start[v] + p];
+            in.removeAll(w, v);
+            bump(w);
+        }
+        out.clear(v);
+        bump(v);
+        if (present[v]) {
+            present[v] = false;
+            presentCount--;
+        }
+        out.compactIfSparse();
+        in.compactIfSparse();
+    }
+
+    private void bump(int v) {
+        version[v]++;
+        modifications++;
+    }
+
+    /**
+     * Per-vertex blocks of (first, second, third) int triples in three parallel pools.
+     */
+    private static final class Blocks {
+        final int[] start;
+        final int[] size;
+        final int[] capacity;
+        int[] first;
+        int[] second;
+        int[] third;
+        int end;       // first unused pool slot
+        int abandoned; // slots of blocks that were moved or cleared
+
+        Blocks(int[] degree) {
+            int n = degree.length;
+            start = new int[n];
+            size = new int[n];
+            capacity = new int[n];
+            long total = 0;
+            for (int v = 0; v < n; v++) {
+                start[v] = (int) total;
+                capacity[v] = degree[v] == 0 ? 0 : degree[v] + SLACK;
+                total += capacity[v];
+            }
+            if (total > Integer.MAX_VALUE - 8) {
+                throw new IllegalStateException("Too many arcs for the contraction graph: " + total);
+            }
+            end = (int) total;
+            first = new int[Math.max(16, end)];
+            second = new int[first.length];
+            third = new int[first.length];
+        }
+
+        void append(int v, int a, int b, int c) {
+            if (size[v] == capacity[v]) {
+                relocate(v, Math.max(4, capacity[v] * 2));
+            }
+            int slot = start[v] + size[v]++;
+            first[slot] = a;
+            second[slot] = b;
+            third[slot] = c;
+        }
+
+        // Removes the entry at position i of v's block, keeping the order of the rest.
+        void removeAt(int v, int i) {
+            int slot = start[v] + i;
+            int tail = size[v] - i - 1;
+            System.arraycopy(first, slot + 1, first, slot, tail);
+            System.arraycopy(second, slot + 1, second, slot, tail);
+            System.arraycopy(third, slot + 1, third, slot, tail);
+            size[v]--;
+        }
+
+        int removeAll(int v, int a) {
+            int kept = 0;
+            int base = start[v];
+            for (int i = 0; i < size[v]; i++) {
+                int slot = base + i;
+                if (first[slot] == a) {
+                    continue;
+                }
+                first[base + kept] = first[slot];
+                second[base + kept] = second[slot];
+                third[base + kept] = third[slot];
+                kept++;
+            }
+            int removed = size[v] - kept;
+            size[v] = kept;
+            return removed;
+        }
+
+        void removeFirst(int v, int a, int b) {
+            for (int i = 0; i < size[v]; i++) {
+                int slot = start[v] + i;
+                if (first[slot] == a && second[slot] == b) {
+                    removeAt(v, i);
+                    return;
+                }
+            }
+        }
+
+        void clear(int v) {
+            abandoned += capacity[v];
+            size[v] = 0;
+            capacity[v] = 0;
+        }
+
+        private void relocate(int v, int newCapacity) {
+            if ((long) end + newCapacity > first.length) {
+                grow((long) end + newCapacity);
+            }
+            System.arraycopy(first, start[v], first, end, size[v]);
+            System.arraycopy(second, start[v], second, end, size[v]);
+            System.arraycopy(third, start[v], third, end, size[v]);
+            abandoned += capacity[v];
+            start[v] = end;
+            capacity[v] = newCapacity;
+            end += newCapacity;
+        }
+
+        private void grow(long required) {
+            long length = Math.max(required, first.length + (first.length >> 1));
+            if (length > Integer.MAX_VALUE - 8) {
+                throw new IllegalStateException("Contraction graph pool exceeds " + (Integer.MAX_VALUE - 8) + " slots");
+            }
+            first = Arrays.copyOf(first, (int) length);
+            second = Arrays.copyOf(second, (int) length);
+            third = Arrays.copyOf(third, (int) length);
+        }
+
+        // Rewrites the pool without abandoned blocks once they make up more than half of it.
+        void compactIfSparse() {
+            if (abandoned <= end / 2) {
+                return;
+            }
+            int total = 0;
+            for (int v = 0; v < start.length; v++) {
+                total += size[v] == 0 ? 0 : size[v] + SLACK;
+            }
+            int[] newFirst = new int[Math.max(16, total)];
+            int[] newSecond = new int[newFirst.length];
+            int[] newThird = new int[newFirst.length];
+            int next = 0;
+            for (int v = 0; v < start.length; v++) {
+                System.arraycopy(first, start[v], newFirst, next, size[v]);
+                System.arraycopy(second, start[v], newSecond, next, size[v]);
+                System.arraycopy(third, start[v], newThird, next, size[v]);
+                start[v] = next;
+                capacity[v] = size[v] == 0 ? 0 : size[v] + SLACK;
+                next += capacity[v];
+            }
+            first = newFirst;
+            second = newSecond;
+            third = newThird;
+            end = next;
+            abandoned = 0;
+        }
+    }
+
+    /**
+     * Reusable witness-search state over the dense vertex index; only touched entries are
+     * reset between searches. One workspace must not be shared between threads.
+     */
+    static final class WitnessWorkspace {
+        final IndexedMinHeap heap = new IndexedMinHeap(16);
+        int[] dist = new int[0];
+        int[] hops = new int[0];
+        int[] settled = new int[16];
+        int settledCount;
+        private int[] touched = new int[16];
+        private int touchedCount;
+
+        void ensureCapacity(int n) {
+            if (dist.length >= n) {
+                return;
+            }
+            int capacity = Math.max(n, dist.length * 2);
+            int old = dist.length;
+            dist = Arrays.copyOf(dist, capacity);
+            hops = Arrays.copyOf(hops, capacity);
+            Arrays.fill(dist, old, capacity, UNREACHED);
+            heap.ensureCapacity(capacity);
+        }
+
+        void touch(int v, int distance, int hopCount) {
+            if (touchedCount == touched.length) {
+                touched = Arrays.copyOf(touched, touchedCount * 2);
+            }
+            touched[touchedCount++] = v;
+            dist[v] = distance;
+            hops[v] = hopCount;
+        }
+
+        void settle(int v) {
+            if (settledCount == settled.length) {
+                settled = Arrays.copyOf(settled, settledCount * 2);
+            }
+            settled[settledCount++] = v;
+        }
+
+        void reset() {
+            for (int i = 0; i < touchedCount; i++) {
+                dist[touched[i]] = UNREACHED;
+            }
+            touchedCount = 0;
+            settledCount = 0;
+            heap.clear();
+        }
+    }
+
+    /**
+     * Shortcuts as parallel int arrays: tail, head, weight, original-arc count.
+     */
+    static final class ShortcutList {
+        int[] from = new int[4];
+        int[] to = new int[4];
+        int[] weight = new int[4];
+        int[] originalArcs = new int[4];
+        int size;
+
+        void add(int tail, int head, int arcWeight, int arcs) {
+            if (size == from.length) {
+                int grown = size * 2;
+                from = Arrays.copyOf(from, grown);
+                to = Arrays.copyOf(to, grown);
+                weight = Arrays.copyOf(weight, grown);
+                originalArcs = Arrays.copyOf(originalArcs, grown);
+            }
+            from[size] = tail;
+            to[size] = head;
+            weight[size] = arcWeight;
+            originalArcs[size] = arcs;
+            size++;
+        }
+
+        void clear() {
+            size = 0;
+        }
+    }
+
+    /**
+     * Result of {@link #simulateContraction}. It remembers the vertices whose arcs the witness
+     * searches scanned together with the sum of their versions; versions only grow, so an
+     * equal sum later means none of them changed. Large search spaces are not remembered,
+     * and such a simulation is only current until the next change to the graph.
+     */
+    static final class Simulation {
+        private static final int WATCH_LIMIT = 512;
+
+        final int vertex;
+        final ShortcutList shortcuts = new ShortcutList();
+        int addedArcs;
+        int removedArcs;
+        int addedOriginalArcs;
+        int removedOriginalArcs;
+        private final long modifications;
+        private int[] watched = new int[16];
+        private int watchedCount;
+        private long versionSum;
+
+        Simulation(int vertex, long modifications) {
+            this.vertex = vertex;
+            this.modifications = modifications;
+        }
+
+        int edgeDifference() {
+            return addedArcs - removedArcs;
+        }
+
+        int originalArcDifference() {
+            return addedOriginalArcs - removedOriginalArcs;
+        }
+
+        private void trim() {
+            if (watched != null) {
+                watched = Arrays.copyOf(watched, watchedCount);
+            }
+        }
+
+        private void watch(int v, int[] version) {
+            if (watched == null) {
+                return;
+            }
+            if (watchedCount == WATCH_LIMIT) {
+                watched = null;
+                return;
+            }
+            if (watchedCount == watched.length) {
+                watched = Arrays.copyOf(watched, watchedCount * 2);
+            }
+            watched[watchedCount++] = v;
+            versionSum += version[v];
+        }
+    }
+}
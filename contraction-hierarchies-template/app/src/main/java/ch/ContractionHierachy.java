@@ -1,155 +1,545 @@
 package ch;
 
-import java.io.BufferedWriter;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
+import java.io.UncheckedIOException;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.Comparator;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.PriorityQueue;
 import java.util.Set;
-import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 public class ContractionHierachy {
 
     private final Graph originalGraph;
-    private final Graph workingGraph;
+    private final ContractionGraph workingGraph;
     private final List<Long> contractionOrder;
-    private final Map<Long, Integer> rank;
-    private final Map<Long, Integer> shortcutsPerVertex;
-    private final Map<Long, Integer> priorityAtContraction;
-    private final Map<ShortcutKey, Graph.Shortcut> shortcuts;
+    // Per-vertex bookkeeping, indexed by the original graph's dense vertex index
+    private final int[] rank;
+    private final int[] shortcutsPerVertex;
+    private final int[] priorityAtContraction;
+    private final VertexIndex index;
+    private int rankedCount;
+    private final ShortcutBuffer shortcuts;
+    private final NodePriority priority; // null: legacy edge difference
+    private final int[] deletedNeighbours;
+    private final int[] depth;
+    private final int[] neighbourStamp; // dedupes in- and out-neighbours in noteContracted
+    private final ContractionGraph.WitnessWorkspace witness = new ContractionGraph.WitnessWorkspace();
+    private final ContractionGraph.Simulation[] simulations; // last simulated contraction per vertex (sequential, weighted priority)
+    private final LongAdder simulationsRun = new LongAdder();
+    private final LongAdder priorityReuses = new LongAdder();
+    private long contractionReuses;
+    private final PreprocessOptions.PriorityUpdate update;
+    private final int fullUpdateInterval;
+    private final int updateThreads;
+    private final UpdateCounters counters = new UpdateCounters();
+    private final PreprocessCheckpoint.Writer checkpoints; // null: no checkpoints
+    private final int checkpointInterval;
+    private final int coreSize; // vertices left uncontracted, 0 for a full hierarchy
+
+    private static final int UNSET = -1;
 
-    private static final class QueueEntry implements Comparable<QueueEntry> {
-        final long vertex;
-        final int priority;
-
-        QueueEntry(long vertex, int priority) {
-            this.vertex = vertex;
-            this.priority = priority;
-        }
-
-        @Override
-        public int compareTo(QueueEntry other) {
-            int cmp = Integer.compare(this.priority, other.priority);
-            if (cmp != 0) {
-                return cmp;
-            }
-            return Long.compare(this.vertex, other.vertex);
-        }
+    public ContractionHierachy(Graph graph) {
+        this(graph, new PreprocessOptions());
     }
 
-    public ContractionHierachy(Graph graph) {
+    public ContractionHierachy(Graph graph, PreprocessOptions options) {
         if (graph == null) {
             throw new IllegalArgumentException("Graph must not be null");
         }
         this.originalGraph = graph;
-        this.workingGraph = graph.copy();
-        System.out.println("Debug flag: Size of workingGraph:" + workingGraph.getVertexIds().size());
+        this.index = graph.vertexIndex();
+        PreprocessCheckpoint resumed = readCheckpoint(options.resumeFrom());
+        this.workingGraph = resumed == null ? new ContractionGraph(graph) : new ContractionGraph(index, resumed);
+        this.workingGraph.setWitnessLimits(options.witnessHops(), options.witnessSettled());
+        System.out.println("Debug flag: Size of workingGraph:" + workingGraph.presentCount());
         this.contractionOrder = new ArrayList<>();
-        this.rank = new HashMap<>();
-        this.shortcutsPerVertex = new HashMap<>();
-        this.priorityAtContraction = new HashMap<>();
-        this.shortcuts = new HashMap<>();
-        preprocess();
+        this.shortcuts = new ShortcutBuffer(index);
+        if (resumed == null) {
+            this.rank = new int[index.size()];
+            Arrays.fill(rank, UNSET);
+            this.shortcutsPerVertex = new int[index.size()];
+            this.priorityAtContraction = new int[index.size()];
+            this.deletedNeighbours = new int[index.size()];
+            this.depth = new int[index.size()];
+        } else {
+            this.rank = resumed.rank;
+            this.shortcutsPerVertex = resumed.shortcutsPerVertex;
+            this.priorityAtContraction = resumed.priorityAtContraction;
+            this.deletedNeighbours = resumed.deletedNeighbours;
+            this.depth = resumed.depth;
+            for (int vi : resumed.order) {
+                contractionOrder.add(index.idOf(vi));
+            }
+            this.rankedCount = resumed.contracted();
+            for (int i = 0; i < resumed.shortcutFrom.length; i++) {
+                shortcuts.add(resumed.shortcutFrom[i], resumed.shortcutTo[i], resumed.shortcutWeight[i], resumed.shortcutVia[i]);
+            }
+            System.out.printf("CH preprocessing: resuming from %s with %,d of %,d vertices contracted%n",
+                    options.resumeFrom(), rankedCount, rankedCount + workingGraph.presentCount());
+        }
+        this.priority = options.priority();
+        this.neighbourStamp = new int[index.size()];
+        this.update = options.priorityUpdate();
+        this.fullUpdateInterval = options.fullUpdateInterval();
+        this.updateThreads = options.updateThreads();
+        this.simulations = priority != null && options.threads() == 1 ? new ContractionGraph.Simulation[index.size()] : null;
+        this.checkpoints = options.checkpointPath() == null ? null : new PreprocessCheckpoint.Writer(options.checkpointPath());
+        this.checkpointInterval = options.checkpointInterval();
+        this.coreSize = options.coreSize(index.size());
+        try {
+            if (options.threads() > 1) {
+                preprocessParallel(options.threads());
+            } else {
+                preprocess();
+            }
+        } finally {
+            if (checkpoints != null) {
+                checkpoints.close();
+                System.out.printf("  checkpoints: %d written to %s, %d skipped while a write was running%n",
+                        checkpoints.started, options.checkpointPath(), checkpoints.skipped);
+            }
+        }
+    }
+
+    private PreprocessCheckpoint readCheckpoint(Path path) {
+        if (path == null) {
+            return null;
+        }
+        PreprocessCheckpoint checkpoint;
+        try {
+            checkpoint = PreprocessCheckpoint.read(path);
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Cannot read checkpoint " + path, ex);
+        }
+        checkpoint.checkMatches(index, originalGraph.m);
+        return checkpoint;
+    }
+
+    /**
+     * Copies the current state; the copy is all the contraction thread pays for a checkpoint.
+     */
+    private PreprocessCheckpoint snapshot() {
+        int n = index.size();
+        long[] ids = new long[n];
+        boolean[] present = new boolean[n];
+        for (int vi = 0; vi < n; vi++) {
+            ids[vi] = index.idOf(vi);
+            present[vi] = workingGraph.isPresent(vi);
+        }
+        int[] order = new int[contractionOrder.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = index.indexOf(contractionOrder.get(i));
+        }
+        int[][] arcs = workingGraph.outArcs();
+        return new PreprocessCheckpoint(ids, originalGraph.m, present, order, rank.clone(),
+                shortcutsPerVertex.clone(), priorityAtContraction.clone(), deletedNeighbours.clone(), depth.clone(),
+                arcs[0], arcs[1], arcs[2], arcs[3],
+                Arrays.copyOf(shortcuts.from, shortcuts.count), Arrays.copyOf(shortcuts.to, shortcuts.count),
+                Arrays.copyOf(shortcuts.weight, shortcuts.count), Arrays.copyOf(shortcuts.via, shortcuts.count));
+    }
+
+    // Starts a checkpoint once contracted reaches due, unless the run is complete; returns the next due count.
+    private int checkpointIfDue(int contracted, int due, int step) {
+        if (checkpoints == null || contracted < due || workingGraph.presentCount() <= coreSize) {
+            return due;
+        }
+        checkpoints.submit(snapshot());
+        while (due <= contracted) {
+            due += step;
+        }
+        return due;
     }
 
 
 private void preprocess() {
     // Build a snapshot of vertices from the working graph
-    Set<Long> vertices = workingGraph.getVertexIds();
+    Set<Long> vertices = originalGraph.getVertexIds();
     final int totalVertices = vertices.size();
     if (totalVertices == 0) {
         System.out.println("CH preprocessing: no vertices to contract.");
         return;
     }
 
-    System.out.printf("CH preprocessing: contracting %,d vertices...%n", totalVertices);
+    System.out.printf("CH preprocessing: contracting %,d vertices...%n", workingGraph.presentCount());
 
-    // 1) Initial PQ of (vertex, edge-difference)
-    PriorityQueue<QueueEntry> pq = new PriorityQueue<>();
-    for (long v : vertices) {
-        pq.add(new QueueEntry(v, workingGraph.getEdgeDifference(v)));
-    }
+    // Priority re-evaluations outside the lazy check may run on a pool
+    ForkJoinPool pool = updateThreads > 1 ? new ForkJoinPool(updateThreads) : null;
+    ThreadLocal<ContractionGraph.WitnessWorkspace> workspaces = ThreadLocal.withInitial(ContractionGraph.WitnessWorkspace::new);
 
     // Rank counter (0..n-1). Using an explicit counter avoids off-by-ones.
-    int nextRank = 0;
-    int processed = 0;
-
-    // Optional: progress logging
-    final int progressStep = Math.max(1, totalVertices / 10);
-    int nextCheckpoint = progressStep;
-
-    // 2) Main loop with LAZY UPDATE: re-evaluate the top before contraction
-    while (!pq.isEmpty()) {
-        QueueEntry top = pq.poll();
-        long v = top.vertex;
-
-        // Vertex might already be contracted (removed) -> skip
-        if (!workingGraph.containsVertex(v)) {
-            continue;
+    int nextRank = rankedCount;
+    try {
+        // 1) Initial PQ of (vertex, edge-difference), keyed by dense vertex index; a resumed run skips the contracted ones
+        IndexedMinHeap pq = new IndexedMinHeap(index.size());
+        int[] initial = new int[workingGraph.presentCount()];
+        int initialCount = 0;
+        for (long v : vertices) {
+            int vi = index.indexOf(v);
+            if (workingGraph.isPresent(vi)) {
+                initial[initialCount++] = vi;
+            }
         }
+        reevaluate(initial, pq, pool, workspaces);
+        counters.initial += initialCount;
+
+        int processed = rankedCount;
+
+        // Optional: progress logging
+        final int progressStep = Math.max(1, totalVertices / 10);
+        int nextProgress = (processed / progressStep + 1) * progressStep;
+        final int checkpointStep = checkpointInterval > 0 ? checkpointInterval : progressStep;
+        int nextSnapshot = processed + checkpointStep;
+
+        // 2) Main loop with LAZY UPDATE: re-evaluate the top before contraction; it stops at the core
+        while (!pq.isEmpty() && workingGraph.presentCount() > coreSize) {
+            int priority = pq.peekKey();
+            int vi = pq.poll();
+            long v = index.idOf(vi);
+
+            // Lazy re-evaluation of edge difference BEFORE contracting
+            int freshDiff = priority;
+            if (update.lazy) {
+                freshDiff = priorityOf(vi, witness, true);
+                counters.lazy++;
+                if (freshDiff != priority) {
+                    // Priority became stale -> reinsert with the new priority, skip contracting this round
+                    pq.push(vi, freshDiff);
+                    counters.staleReinsertions++;
+                    continue;
+                }
+            }
 
-        // Lazy re-evaluation of edge difference BEFORE contracting
-        int freshDiff = workingGraph.getEdgeDifference(v);
-        if (freshDiff != top.priority) {
-            // Priority became stale -> reinsert with the new priority, skip contracting this round
-            pq.add(new QueueEntry(v, freshDiff));
-            continue;
-        }
+            // 3) Contract v now that we confirmed its current priority
+            int[] neighbours = noteContracted(vi);
+            int created;
+            if (simulations == null) {
+                created = workingGraph.contract(vi, shortcuts);
+            } else {
+                ContractionGraph.Simulation simulation = simulations[vi];
+                simulations[vi] = null;
+                if (simulation != null && workingGraph.isCurrent(simulation)) {
+                    contractionReuses++;
+                }
+                created = workingGraph.contract(vi, simulation, witness, shortcuts);
+            }
 
-        // 3) Contract v now that we confirmed its current priority
-        Graph.ContractResult cr = workingGraph.contract(v);
+            // 4) Assign rank immediately and uniquely
+            rank[vi] = nextRank++;
+            rankedCount++;
 
-        // 4) Assign rank immediately and uniquely
-        rank.put(v, nextRank++);
+            // Bookkeeping (optional; you already have these arrays):
+            contractionOrder.add(v);
+            shortcutsPerVertex[vi] = created;
+            priorityAtContraction[vi] = freshDiff;
 
-        // Bookkeeping (optional; you already have these maps):
-        contractionOrder.add(v);
-        shortcutsPerVertex.put(v, cr.shortcutsAdded);
-        priorityAtContraction.put(v, freshDiff);
-        recordShortcuts(cr.shortcuts);
+            // Eager update: the neighbours' arcs changed, so their priorities are recomputed now
+            if (update.neighbours) {
+                reevaluate(neighbours, pq, pool, workspaces);
+                counters.neighbours += neighbours.length;
+            }
 
-        processed++;
-        if (processed >= nextCheckpoint || processed == totalVertices) {
-            double percent = (processed * 100.0) / totalVertices;
-            System.out.printf("  %,d/%,d (%.1f%%) contracted%n", processed, totalVertices, percent);
-            nextCheckpoint += progressStep;
+            processed++;
+            if (fullUpdateInterval > 0 && processed % fullUpdateInterval == 0 && !pq.isEmpty()) {
+                int[] queued = new int[pq.size()];
+                int queuedCount = 0;
+                for (int wi = 0; wi < index.size(); wi++) {
+                    if (pq.contains(wi)) {
+                        queued[queuedCount++] = wi;
+                    }
+                }
+                reevaluate(queued, pq, pool, workspaces);
+                counters.full += queuedCount;
+                counters.fullPasses++;
+            }
+            if (processed >= nextProgress || processed == totalVertices) {
+                double percent = (processed * 100.0) / totalVertices;
+                System.out.printf("  %,d/%,d (%.1f%%) contracted%n", processed, totalVertices, percent);
+                nextProgress += progressStep;
+            }
+            nextSnapshot = checkpointIfDue(processed, nextSnapshot, checkpointStep);
+        }
+    } finally {
+        if (pool != null) {
+            pool.shutdown();
         }
     }
+    int core = rankCore(nextRank);
 
-    // 5) Strong postconditions: every vertex must have a rank in [0..n-1]
-    if (nextRank != totalVertices) {
+    System.out.println("  priority evaluations: " + counters);
+    if (simulations != null) {
+        System.out.printf("  %,d simulated contractions; reused for %,d priority checks and %,d contractions%n",
+                simulationsRun.sum(), priorityReuses.sum(), contractionReuses);
+    }
+
+    // 5) Strong postconditions: every vertex must have a rank in [0..n-1], core vertices share the last one
+    if (nextRank + core != totalVertices) {
         throw new IllegalStateException(
             "Preprocess finished but not all vertices were ranked: nextRank=" + nextRank +
             " totalVertices=" + totalVertices);
     }
-    if (rank.size() != totalVertices) {
+    if (rankedCount != totalVertices) {
         throw new IllegalStateException(
-            "Rank map size mismatch: " + rank.size() + " vs total=" + totalVertices);
+            "Ranked vertex count mismatch: " + rankedCount + " vs total=" + totalVertices);
     }
 }
 
+    /**
+     * Gives every vertex that is still present the same rank, coreRank, and returns how
+     * many there were. Nothing is left unless contraction stopped at a core.
+     */
+    private int rankCore(int coreRank) {
+        int count = 0;
+        for (int vi = 0; vi < index.size(); vi++) {
+            if (workingGraph.isPresent(vi)) {
+                rank[vi] = coreRank;
+                count++;
+            }
+        }
+        rankedCount += count;
+        if (count > 0) {
+            System.out.printf("  core: %,d vertices left uncontracted at rank %,d%n", count, coreRank);
+        }
+        return count;
+    }
+
+
+    /**
+     * Contracts in rounds. Each round takes the vertices whose priority is a strict local
+     * minimum among their in- and out-neighbours (ties broken by dense index), so no two of
+     * them are adjacent. Their shortcuts are planned concurrently with witness searches that
+     * avoid the whole set, then applied one by one in (priority, index) order, which also
+     * gives the ranks. Planning only reads the graph, so the hierarchy does not depend on
+     * the thread count.
+     */
+    private void preprocessParallel(int threads) {
+        int[] remaining = workingGraph.presentVertices();
+        int remainingCount = remaining.length;
+        final int totalVertices = rankedCount + remainingCount;
+        if (remainingCount == 0) {
+            System.out.println("CH preprocessing: no vertices to contract.");
+            return;
+        }
+        System.out.printf("CH preprocessing: contracting %,d vertices with %d threads...%n", remainingCount, threads);
+
+        int[] priority = new int[index.size()];
+        boolean[] inRound = new boolean[index.size()];
+        boolean[] dirty = new boolean[index.size()];
+        int[] touched = new int[index.size()];
+        ThreadLocal<ContractionGraph.WitnessWorkspace> workspaces = ThreadLocal.withInitial(ContractionGraph.WitnessWorkspace::new);
+
+        final int progressStep = Math.max(1, totalVertices / 10);
+        int nextProgress = (rankedCount / progressStep + 1) * progressStep;
+        final int checkpointStep = checkpointInterval > 0 ? checkpointInterval : progressStep;
+        int nextSnapshot = rankedCount + checkpointStep;
+        int nextRank = rankedCount;
+        int rounds = 0;
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            int[] all = Arrays.copyOf(remaining, remainingCount);
+            pool.submit(() -> Arrays.stream(all).parallel()
+                    .forEach(vi -> priority[vi] = priorityOf(vi, workspaces.get(), false))).join();
+
+            while (remainingCount > coreSize) {
+                rounds++;
+                int[] alive = Arrays.copyOf(remaining, remainingCount);
+                int[] minima = pool.submit(() -> Arrays.stream(alive).parallel()
+                        .filter(vi -> isLocalMinimum(vi, priority))
+                        .boxed()
+                        .sorted((a, b) -> priority[a] != priority[b] ? Integer.compare(priority[a], priority[b]) : Integer.compare(a, b))
+                        .mapToInt(Integer::intValue)
+                        .toArray()).join();
+                // The last round before the core only takes as many as the core leaves over
+                int[] selected = Arrays.copyOf(minima, Math.min(minima.length, remainingCount - coreSize));
+                for (int vi : selected) {
+                    inRound[vi] = true;
+                }
+
+                List<ContractionGraph.Simulation> planned = pool.submit(() -> Arrays.stream(selected).parallel()
+                        .mapToObj(vi -> workingGraph.simulateContraction(vi, workspaces.get(), inRound))
+                        .collect(Collectors.toList())).join();
+
+                // Merge: apply the planned shortcuts and remember whose priority may have changed
+                int touchedCount = 0;
+                for (int i = 0; i < selected.length; i++) {
+                    int vi = selected[i];
+                    for (int wi : noteContracted(vi)) {
+                        if (!dirty[wi]) {
+                            dirty[wi] = true;
+                            touched[touchedCount++] = wi;
+                        }
+                    }
+                    shortcutsPerVertex[vi] = workingGraph.contractPlanned(vi, planned.get(i), shortcuts);
+                    rank[vi] = nextRank++;
+                    rankedCount++;
+                    contractionOrder.add(index.idOf(vi));
+                    priorityAtContraction[vi] = priority[vi];
+                    inRound[vi] = false;
+                }
+
+                int kept = 0;
+                for (int r = 0; r < remainingCount; r++) {
+                    if (rank[remaining[r]] == UNSET) {
+                        remaining[kept++] = remaining[r];
+                    }
+                }
+                remainingCount = kept;
+
+                int[] stale = Arrays.stream(touched, 0, touchedCount).filter(wi -> rank[wi] == UNSET).toArray();
+                for (int t = 0; t < touchedCount; t++) {
+                    dirty[touched[t]] = false;
+                }
+                pool.submit(() -> Arrays.stream(stale).parallel()
+                        .forEach(wi -> priority[wi] = priorityOf(wi, workspaces.get(), false))).join();
+
+                if (nextRank >= nextProgress || nextRank == totalVertices) {
+                    double percent = (nextRank * 100.0) / totalVertices;
+                    System.out.printf("  %,d/%,d (%.1f%%) contracted after %,d rounds%n", nextRank, totalVertices, percent, rounds);
+                    while (nextProgress <= nextRank) {
+                        nextProgress += progressStep;
+                    }
+                }
+                nextSnapshot = checkpointIfDue(nextRank, nextSnapshot, checkpointStep);
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        int core = rankCore(nextRank);
+        if (nextRank + core != totalVertices || rankedCount != totalVertices) {
+            throw new IllegalStateException(
+                "Parallel preprocess ranked " + nextRank + " of " + totalVertices + " vertices");
+        }
+    }
+
+    // With cache set (sequential loop only) a still-current simulation is reused and a new one kept for contract.
+    private int priorityOf(int vi, ContractionGraph.WitnessWorkspace ws, boolean cache) {
+        if (priority == null) {
+            return workingGraph.getEdgeDifference(vi);
+        }
+        ContractionGraph.Simulation simulation = cache ? simulations[vi] : null;
+        if (simulation != null && workingGraph.isCurrent(simulation)) {
+            priorityReuses.increment();
+        } else {
+            simulation = workingGraph.simulateContraction(vi, ws, null);
+            if (cache) {
+                simulations[vi] = simulation;
+                simulationsRun.increment();
+            }
+        }
+        return priority.evaluate(simulation, deletedNeighbours[vi], depth[vi]);
+    }
+
+    /**
+     * Recomputes the priorities of the given dense indices, on the pool when there is one,
+     * and moves them in pq. Writes to simulations go to distinct slots, so they need no lock.
+     */
+    private void reevaluate(int[] ids, IndexedMinHeap pq, ForkJoinPool pool, ThreadLocal<ContractionGraph.WitnessWorkspace> workspaces) {
+        int[] priorities = new int[ids.length];
+        if (pool == null) {
+            for (int i = 0; i < ids.length; i++) {
+                priorities[i] = priorityOf(ids[i], witness, true);
+            }
+        } else {
+            pool.submit(() -> IntStream.range(0, ids.length).parallel()
+                    .forEach(i -> priorities[i] = priorityOf(ids[i], workspaces.get(), true))).join();
+        }
+        for (int i = 0; i < ids.length; i++) {
+            pq.push(ids[i], priorities[i]);
+        }
+    }
+
+    // Counts vi as a deleted neighbour of each remaining neighbour and pushes their depth below vi.
+    // Returns the dense indices of those neighbours.
+    private int[] noteContracted(int vi) {
+        int[] neighbours = new int[workingGraph.outDegree(vi) + workingGraph.inDegree(vi)];
+        int count = 0;
+        for (int i = 0, degree = workingGraph.outDegree(vi) + workingGraph.inDegree(vi); i < degree; i++) {
+            int wi = i < workingGraph.outDegree(vi) ? workingGraph.outHead(vi, i) : workingGraph.inTail(vi, i - workingGraph.outDegree(vi));
+            if (wi == vi || neighbourStamp[wi] == vi + 1) {
+                continue;
+            }
+            neighbourStamp[wi] = vi + 1;
+            deletedNeighbours[wi]++;
+            depth[wi] = Math.max(depth[wi], depth[vi] + 1);
+            neighbours[count++] = wi;
+        }
+        return Arrays.copyOf(neighbours, count);
+    }
+
+    private boolean isLocalMinimum(int vi, int[] priority) {
+        for (int i = 0; i < workingGraph.outDegree(vi); i++) {
+            if (beats(workingGraph.outHead(vi, i), vi, priority)) {
+                return false;
+            }
+        }
+        for (int i = 0; i < workingGraph.inDegree(vi); i++) {
+            if (beats(workingGraph.inTail(vi, i), vi, priority)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // True if neighbour wi comes before vi in (priority, index) order.
+    private static boolean beats(int wi, int vi, int[] priority) {
+        return wi != vi && (priority[wi] < priority[vi] || (priority[wi] == priority[vi] && wi < vi));
+    }
+
+    /**
+     * Priority evaluations by kind, from the sequential contraction loop.
+     */
+    static final class UpdateCounters {
+        long initial;
+        long lazy;
+        long staleReinsertions;
+        long neighbours;
+        long full;
+        long fullPasses;
+
+        long total() {
+            return initial + lazy + neighbours + full;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%,d total (initial %,d, lazy %,d with %,d stale re-insertions, neighbours %,d, full %,d in %,d passes)",
+                    total(), initial, lazy, staleReinsertions, neighbours, full, fullPasses);
+        }
+    }
+
+    UpdateCounters getUpdateCounters() {
+        return counters;
+    }
 
     public List<Long> getContractionOrder() {
         return Collections.unmodifiableList(contractionOrder);
     }
 
     public Integer getRank(long vertex) {
-        return rank.get(vertex);
+        int vi = contractedIndexOf(vertex);
+        return vi < 0 ? null : rank[vi];
     }
 
     public Integer getShortcutsFor(long vertex) {
-        return shortcutsPerVertex.get(vertex);
+        int vi = contractedIndexOf(vertex);
+        return vi < 0 ? null : shortcutsPerVertex[vi];
     }
 
     public Integer getPriorityAtContraction(long vertex) {
-        return priorityAtContraction.get(vertex);
+        int vi = contractedIndexOf(vertex);
+        return vi < 0 ? null : priorityAtContraction[vi];
+    }
+
+    // Dense index of a vertex that has been contracted, or -1.
+    private int contractedIndexOf(long vertex) {
+        int vi = index.indexOf(vertex);
+        return vi < 0 || vi >= rank.length || rank[vi] == UNSET ? -1 : vi;
     }
 
     int getShortcutCountForTesting() {
@@ -160,6 +550,12 @@ private void preprocess() {
         return BidirectionalDijkstra.shortestPath(originalGraph, s, t);
     }
 
+    /**
+     * Writes the augmented graph as text, arcs sorted by (from, to, weight, via).
+     * Arcs are streamed vertex by vertex from the adjacency lists and the shortcuts
+     * grouped by tail, so only one vertex's arcs are sorted at a time. A path ending
+     * in .gz is gzip-compressed.
+     */
     public void storeGraph(Path outputPath) throws IOException {
         if (outputPath == null) {
             throw new IllegalArgumentException("Output path must not be null");
@@ -168,87 +564,167 @@ private void preprocess() {
         List<Long> vertexIds = new ArrayList<>(originalGraph.getVertexIds());
         Collections.sort(vertexIds);
 
-        List<EdgeRecord> edges = new ArrayList<>();
-        for (long from : vertexIds) {
-            List<Graph.Edge> neighbours = originalGraph.getNeighbours(from);
-            if (neighbours == null) {
-                continue;
-            }
-            for (Graph.Edge edge : neighbours) {
-                edges.add(new EdgeRecord(from, edge.to, edge.weight, edge.contracted));
-            }
+        // Group shortcuts by tail with a counting sort over the dense index
+        int[] shortcutOffsets = new int[index.size() + 1];
+        for (int entry = 0; entry < shortcuts.count; entry++) {
+            shortcutOffsets[shortcuts.from[entry] + 1]++;
         }
-
-        for (Graph.Shortcut shortcut : shortcuts.values()) {
-            edges.add(new EdgeRecord(shortcut.from, shortcut.to, shortcut.weight, shortcut.via));
+        for (int i = 0; i < index.size(); i++) {
+            shortcutOffsets[i + 1] += shortcutOffsets[i];
+        }
+        int[] shortcutsByTail = new int[shortcuts.count];
+        int[] nextShortcut = Arrays.copyOf(shortcutOffsets, index.size());
+        for (int entry = 0; entry < shortcuts.count; entry++) {
+            shortcutsByTail[nextShortcut[shortcuts.from[entry]]++] = entry;
         }
 
-        edges.sort(Comparator
-                .comparingLong((EdgeRecord e) -> e.from)
-                .thenComparingLong(e -> e.to)
-                .thenComparingInt(e -> e.weight)
-                .thenComparingLong(e -> e.via));
+        long edgeCount = shortcuts.size();
+        for (long from : vertexIds) {
+            List<Graph.Edge> neighbours = originalGraph.getNeighbours(from);
+            edgeCount += neighbours == null ? 0 : neighbours.size();
+        }
 
-        int edgeCount = edges.size();
-        try (BufferedWriter writer = Files.newBufferedWriter(outputPath, StandardCharsets.UTF_8)) {
-            writer.write(String.format(Locale.US, "%d %d%n", vertexIds.size(), edgeCount));
+        ArcRun run = new ArcRun();
+        try (GraphWriter writer = GraphWriter.open(outputPath)) {
+            writer.writeLong(vertexIds.size()).space().writeLong(edgeCount).newline();
             for (long id : vertexIds) {
                 Graph.Vertex vertex = originalGraph.getVertex(id);
-                int vertexRank = rank.getOrDefault(id, -1);
-                writer.write(String.format(Locale.US, "%d %f %f %d%n", id, vertex.x, vertex.y, vertexRank));
+                int vertexRank = rank[index.indexOf(id)];
+                writer.writeLong(id).space().writeFixed(vertex.x).space().writeFixed(vertex.y)
+                        .space().writeLong(vertexRank).newline();
             }
-            for (EdgeRecord edge : edges) {
-                writer.write(String.format(Locale.US, "%d %d %d %d%n", edge.from, edge.to, edge.weight, edge.via));
+            for (long from : vertexIds) {
+                run.clear();
+                List<Graph.Edge> neighbours = originalGraph.getNeighbours(from);
+                if (neighbours != null) {
+                    for (Graph.Edge edge : neighbours) {
+                        run.add(edge.to, edge.weight, edge.contracted);
+                    }
+                }
+                int tail = index.indexOf(from);
+                for (int i = shortcutOffsets[tail]; i < shortcutOffsets[tail + 1]; i++) {
+                    int entry = shortcutsByTail[i];
+                    run.add(index.idOf(shortcuts.to[entry]), shortcuts.weight[entry], shortcuts.via[entry]);
+                }
+                run.sort();
+                for (int i = 0; i < run.size; i++) {
+                    int arc = run.order[i];
+                    writer.writeLong(from).space().writeLong(run.to[arc]).space()
+                            .writeLong(run.weight[arc]).space().writeLong(run.via[arc]).newline();
+                }
             }
         }
     }
 
-    private void recordShortcuts(List<Graph.Shortcut> newShortcuts) {
-        for (Graph.Shortcut shortcut : newShortcuts) {
-            ShortcutKey key = new ShortcutKey(shortcut.from, shortcut.to);
-            shortcuts.merge(key, shortcut,
-                    (existing, candidate) -> existing.weight <= candidate.weight ? existing : candidate);
+    /**
+     * Writes the hierarchy in the binary format of {@link ChGraph}, which the query
+     * commands can memory-map instead of parsing the text written by storeGraph.
+     */
+    public void storeBinary(Path outputPath) throws IOException {
+        if (outputPath == null) {
+            throw new IllegalArgumentException("Output path must not be null");
         }
+        toSearchGraph().write(outputPath);
     }
 
-    private static final class EdgeRecord {
-        final long from;
-        final long to;
-        final int weight;
-        final long via;
+    /**
+     * Upward search graph over the original arcs plus all recorded shortcuts.
+     */
+    public ChGraph toSearchGraph() {
+        List<Long> vertexIds = new ArrayList<>(originalGraph.getVertexIds());
+        Collections.sort(vertexIds);
 
-        EdgeRecord(long from, long to, int weight, long via) {
-            this.from = from;
-            this.to = to;
-            this.weight = weight;
-            this.via = via;
+        CsrGraph.Builder builder = new CsrGraph.Builder(vertexIds.size(), originalGraph.m + shortcuts.size());
+        int[] ranks = new int[vertexIds.size()];
+        for (long id : vertexIds) {
+            Graph.Vertex vertex = originalGraph.getVertex(id);
+            ranks[builder.addVertex(id, vertex.x, vertex.y)] = rank[index.indexOf(id)];
+        }
+        for (long from : vertexIds) {
+            List<Graph.Edge> neighbours = originalGraph.getNeighbours(from);
+            if (neighbours == null) {
+                continue;
+            }
+            for (Graph.Edge edge : neighbours) {
+                builder.addEdge(from, edge.to, edge.weight, edge.contracted);
+            }
+        }
+        for (int entry = 0; entry < shortcuts.count; entry++) {
+            builder.addEdge(index.idOf(shortcuts.from[entry]), index.idOf(shortcuts.to[entry]),
+                    shortcuts.weight[entry], shortcuts.via[entry]);
         }
+        return ChGraph.fromAugmented(builder.build(), ranks);
     }
 
-    private static final class ShortcutKey {
-        final long from;
-        final long to;
+    // Out-arcs of a single vertex, sorted through a permutation so the arrays are reused across vertices.
+    private static final class ArcRun {
+        long[] to = new long[16];
+        int[] weight = new int[16];
+        long[] via = new long[16];
+        int[] order = new int[16];
+        int[] scratch = new int[16];
+        int size;
+
+        void clear() {
+            size = 0;
+        }
 
-        ShortcutKey(long from, long to) {
-            this.from = from;
-            this.to = to;
+        void add(long head, int w, long contracted) {
+            if (size == to.length) {
+                int grown = size * 2;
+                to = Arrays.copyOf(to, grown);
+                weight = Arrays.copyOf(weight, grown);
+                via = Arrays.copyOf(via, grown);
+                order = new int[grown];
+                scratch = new int[grown];
+            }
+            to[size] = head;
+            weight[size] = w;
+            via[size] = contracted;
+            size++;
         }
 
-        @Override
-        public boolean equals(Object obj) {
-            if (this == obj) {
-                return true;
+        void sort() {
+            for (int i = 0; i < size; i++) {
+                order[i] = i;
             }
-            if (!(obj instanceof ShortcutKey)) {
-                return false;
+            mergeSort(0, size);
+        }
+
+        private void mergeSort(int lo, int hi) {
+            if (hi - lo <= 16) {
+                for (int i = lo + 1; i < hi; i++) {
+                    int arc = order[i];
+                    int j = i - 1;
+                    while (j >= lo && compare(order[j], arc) > 0) {
+                        order[j + 1] = order[j];
+                        j--;
+                    }
+                    order[j + 1] = arc;
+                }
+                return;
+            }
+            int mid = (lo + hi) >>> 1;
+            mergeSort(lo, mid);
+            mergeSort(mid, hi);
+            System.arraycopy(order, lo, scratch, lo, hi - lo);
+            int left = lo;
+            int right = mid;
+            for (int k = lo; k < hi; k++) {
+                if (right >= hi || (left < mid && compare(scratch[left], scratch[right]) <= 0)) {
+                    order[k] = scratch[left++];
+                } else {
+                    order[k] = scratch[right++];
+                }
             }
-            ShortcutKey other = (ShortcutKey) obj;
-            return this.from == other.from && this.to == other.to;
         }
 
-        @Override
-        public int hashCode() {
-            return Long.hashCode(from) * 31 + Long.hashCode(to);
+        private int compare(int a, int b) {
+            int c = Long.compare(to[a], to[b]);
+            if (c == 0) {
+                c = Integer.compare(weight[a], weight[b]);
+            }
+            return c != 0 ? c : Long.compare(via[a], via[b]);
         }
     }
 }
@@ -0,0 +1,292 @@
+package ch;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * Core-ALT query on a partially contracted hierarchy ({@link PreprocessOptions#core}).
+ * Two upward CH searches from s and t stop at the core and find its entry vertices;
+ * a bidirectional A* with landmark bounds then connects the two entry sets inside the
+ * core, starting from their upward distances. Paths that peak below the core are found
+ * by the upward searches alone.
+ *
+ * The landmarks live in the core graph ({@link ChGraph#core()}), so s and t usually have
+ * no landmark distances. The potentials therefore bound the distance to the whole target
+ * entry set T instead: with dt(c) the upward distance from entry c to t,
+ * d(v, T) >= min_c (d(L, c) + dt(c)) - d(L, v) and d(v, T) >= d(v, L) - max_c (d(c, L) - dt(c)),
+ * and symmetrically from the source entry set. Each term is consistent, and so is their
+ * maximum; the two sides use the average of the forward and backward potentials as
+ * {@link AStar#bidirectional} does.
+ */
+public final class CoreAlt {
+    private static final int NONE = Integer.MAX_VALUE;
+
+    private final ChGraph g;
+    private final int coreStart;
+    private final CsrGraph core;
+    private final Landmarks landmarks;
+    private final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+
+    /**
+     * core must be g.core() and landmarks must have been selected in it.
+     */
+    public CoreAlt(ChGraph g, CsrGraph core, Landmarks landmarks) {
+        this.g = g;
+        this.coreStart = g.coreStart();
+        if (core.vertexCount() != g.vertexCount() - coreStart) {
+            throw new IllegalArgumentException("Core graph has " + core.vertexCount() + " vertices, the hierarchy's core "
+                    + (g.vertexCount() - coreStart));
+        }
+        this.core = core;
+        this.landmarks = landmarks;
+    }
+
+    /**
+     * Extracts the core of g and selects count landmarks in it with {@link Landmarks.Selection#AVOID}.
+     */
+    public static CoreAlt withLandmarks(ChGraph g, int count, int threads) {
+        CsrGraph core = g.core();
+        return new CoreAlt(g, core, Landmarks.select(core, count, Landmarks.Selection.AVOID, threads, 1));
+    }
+
+    public int coreSize() {
+        return core.vertexCount();
+    }
+
+    public Result<Integer> shortestPath(long s, long t) {
+        return shortestPath(s, t, SearchWorkspace.forThread(g.vertexCount()));
+    }
+
+    public Result<Integer> shortestPath(long s, long t, SearchWorkspace ws) {
+        long start = System.nanoTime();
+        int source = g.indexOf(s);
+        int target = g.indexOf(t);
+        if (source < 0 || target < 0) {
+            return new Result<>(System.nanoTime() - start, 0, -1);
+        }
+        int distance = distance(source, target, ws);
+        return new Result<>(System.nanoTime() - start, ws.relaxed, distance);
+    }
+
+    /**
+     * Distance between dense indices of the ChGraph, -1 if there is no path; the number
+     * of relaxed arcs is left in ws.relaxed.
+     */
+    int distance(int source, int target, SearchWorkspace ws) {
+        ws.reset();
+        if (source == target) {
+            return 0;
+        }
+        Scratch query = scratch.get();
+        Entries sources = query.sources;
+        Entries targets = query.targets;
+        sources.count = 0;
+        targets.count = 0;
+        int best = upward(source, true, ws, Integer.MAX_VALUE, sources);
+        best = upward(target, false, ws, best, targets);
+        if (sources.count > 0 && targets.count > 0) {
+            query.potential.set(sources, targets, ws);
+            best = coreSearch(sources, targets, query.potential, ws, best);
+        }
+        return best == Integer.MAX_VALUE ? -1 : best;
+    }
+
+    /**
+     * Complete upward search from root that does not expand core vertices; the core
+     * vertices it settles go to entries. Returns best, lowered by any vertex the other
+     * side has settled.
+     */
+    private int upward(int root, boolean forward, SearchWorkspace ws, int best, Entries entries) {
+        IndexedMinHeap pq = forward ? ws.forwardHeap : ws.backwardHeap;
+        IntBuffer offsets = forward ? g.forwardOffsets : g.backwardOffsets;
+        IntBuffer heads = forward ? g.forwardHeads : g.backwardHeads;
+        IntBuffer weights = forward ? g.forwardWeights : g.backwardWeights;
+        int relaxed = 0;
+
+        ws.set(forward, root, 0, -1);
+        pq.push(root, 0);
+        while (!pq.isEmpty()) {
+            int du = pq.peekKey();
+            int u = pq.poll();
+            int other = ws.distance(!forward, u);
+            if (other != SearchWorkspace.INF && du + other < best) {
+                best = du + other;
+            }
+            if (u >= coreStart) {
+                entries.add(u);
+                continue;
+            }
+            if (ChQuery.STALL_ON_DEMAND && ChQuery.isStalled(g, ws, forward, u, du)) {
+                continue;
+            }
+            for (int a = offsets.get(u), end = offsets.get(u + 1); a < end; a++) {
+                int newDist = du + weights.get(a);
+                if (newDist >= best) {
+                    continue;
+                }
+                int v = heads.get(a);
+                relaxed++;
+                if (newDist < ws.distance(forward, v)) {
+                    ws.set(forward, v, newDist, a);
+                    pq.push(v, newDist);
+                }
+            }
+        }
+        ws.relaxed += relaxed;
+        return best;
+    }
+
+    // Bidirectional A* inside the core from the labelled source entries to the labelled target entries.
+    private int coreSearch(Entries sources, Entries targets, Potential potential, SearchWorkspace ws, int best) {
+        IndexedMinHeap ql = ws.forwardHeap;
+        IndexedMinHeap qr = ws.backwardHeap;
+        for (int i = 0; i < sources.count; i++) {
+            int c = sources.ids[i];
+            ql.push(c, 2 * ws.forward(c) + potential.of(c - coreStart));
+        }
+        for (int i = 0; i < targets.count; i++) {
+            int c = targets.ids[i];
+            qr.push(c, 2 * ws.backward(c) - potential.of(c - coreStart));
+        }
+
+        int relaxed = 0;
+        while (!ql.isEmpty() && !qr.isEmpty()) {
+            int minForward = ql.peekKey();
+            int minBackward = qr.peekKey();
+            if (best != Integer.MAX_VALUE && (long) minForward + minBackward >= 2L * best) {
+                break;
+            }
+            boolean forward = minForward <= minBackward;
+            IndexedMinHeap pq = forward ? ql : qr;
+            int u = pq.poll();
+            int du = ws.distance(forward, u);
+
+            int[] offsets = forward ? core.outOffsets : core.inOffsets;
+            int[] heads = forward ? core.outTargets : core.inSources;
+            int[] weights = forward ? core.outWeights : core.inWeights;
+            for (int a = offsets[u - coreStart], end = offsets[u - coreStart + 1]; a < end; a++) {
+                int newDist = du + weights[a];
+                if (newDist >= best) {
+                    continue;
+                }
+                relaxed++;
+                int v = heads[a] + coreStart;
+                if (newDist < ws.distance(forward, v)) {
+                    ws.set(forward, v, newDist, -1); // a indexes the core CSR, not the ChGraph arcs
+                    int p = potential.of(v - coreStart);
+                    pq.push(v, 2 * newDist + (forward ? p : -p));
+                    int other = ws.distance(!forward, v);
+                    if (other != SearchWorkspace.INF) {
+                        best = Math.min(best, newDist + other);
+                    }
+                }
+            }
+        }
+        ws.relaxed += relaxed;
+        return best;
+    }
+
+    // Per-thread state of one query, reused so that queries allocate nothing in steady state.
+    private final class Scratch {
+        final Entries sources = new Entries();
+        final Entries targets = new Entries();
+        final Potential potential = new Potential();
+    }
+
+    /**
+     * Twice the average potential of one query, for core-local indices: the bound on the
+     * distance to the target entries minus the bound on the distance from the source entries.
+     */
+    private final class Potential {
+        private final int[] active = new int[Landmarks.ACTIVE];
+        private final int[] activeBounds = new int[Landmarks.ACTIVE];
+        private int activeCount;
+        private final int[] toTargetsMin = new int[Landmarks.ACTIVE];   // min over T of d(L, c) + dt(c)
+        private final int[] toTargetsMax = new int[Landmarks.ACTIVE];   // max over T of d(c, L) - dt(c)
+        private final int[] fromSourcesMin = new int[Landmarks.ACTIVE]; // min over S of ds(c) + d(c, L)
+        private final int[] fromSourcesMax = new int[Landmarks.ACTIVE]; // max over S of d(L, c) - ds(c)
+
+        // Recomputes the bounds for the entry sets of a new query.
+        void set(Entries sources, Entries targets, SearchWorkspace ws) {
+            activeCount = landmarks.active(closest(sources, ws, true) - coreStart, closest(targets, ws, false) - coreStart,
+                    active, activeBounds);
+            for (int j = 0; j < activeCount; j++) {
+                int i = active[j];
+                toTargetsMin[j] = NONE;
+                toTargetsMax[j] = Integer.MIN_VALUE;
+                for (int e = 0; e < targets.count; e++) {
+                    int c = targets.ids[e] - coreStart;
+                    int dt = ws.backward(targets.ids[e]);
+                    int lc = landmarks.fromLandmark(i, c);
+                    int cl = landmarks.toLandmark(i, c);
+                    if (lc >= 0) {
+                        toTargetsMin[j] = Math.min(toTargetsMin[j], lc + dt);
+                    }
+                    toTargetsMax[j] = cl < 0 || toTargetsMax[j] == NONE ? NONE : Math.max(toTargetsMax[j], cl - dt);
+                }
+                fromSourcesMin[j] = NONE;
+                fromSourcesMax[j] = Integer.MIN_VALUE;
+                for (int e = 0; e < sources.count; e++) {
+                    int c = sources.ids[e] - coreStart;
+                    int ds = ws.forward(sources.ids[e]);
+                    int lc = landmarks.fromLandmark(i, c);
+                    int cl = landmarks.toLandmark(i, c);
+                    if (cl >= 0) {
+                        fromSourcesMin[j] = Math.min(fromSourcesMin[j], ds + cl);
+                    }
+                    fromSourcesMax[j] = lc < 0 || fromSourcesMax[j] == NONE ? NONE : Math.max(fromSourcesMax[j], lc - ds);
+                }
+            }
+        }
+
+        int of(int v) {
+            int toTargets = 0;
+            int fromSources = 0;
+            for (int j = 0; j < activeCount; j++) {
+                int lv = landmarks.fromLandmark(active[j], v);
+                int vl = landmarks.toLandmark(active[j], v);
+                if (lv >= 0) {
+                    if (toTargetsMin[j] != NONE) {
+                        toTargets = Math.max(toTargets, toTargetsMin[j] - lv);
+                    }
+                    if (fromSourcesMax[j] != NONE) {
+                        fromSources = Math.max(fromSources, lv - fromSourcesMax[j]);
+                    }
+                }
+                if (vl >= 0) {
+                    if (toTargetsMax[j] != NONE) {
+                        toTargets = Math.max(toTargets, vl - toTargetsMax[j]);
+                    }
+                    if (fromSourcesMin[j] != NONE) {
+                        fromSources = Math.max(fromSources, fromSourcesMin[j] - vl);
+                    }
+                }
+            }
+            return toTargets - fromSources;
+        }
+
+        // The entry with the smallest upward distance, which picks the active landmarks.
+        private int closest(Entries entries, SearchWorkspace ws, boolean forward) {
+            int best = entries.ids[0];
+            for (int e = 1; e < entries.count; e++) {
+                if (ws.distance(forward, entries.ids[e]) < ws.distance(forward, best)) {
+                    best = entries.ids[e];
+                }
+            }
+            return best;
+        }
+    }
+
+    // Core vertices settled by one upward search; the array only grows.
+    private static final class Entries {
+        int[] ids = new int[16];
+        int count;
+
+        void add(int v) {
+            if (count == ids.length) {
+                ids = Arrays.copyOf(ids, count * 2);
+            }
+            ids[count++] = v;
+        }
+    }
+}
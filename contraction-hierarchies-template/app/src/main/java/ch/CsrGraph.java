@@ -0,0 +1,271 @@
+package ch;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.stream.IntStream;
+
+/**
+ * Immutable, array-backed graph in compressed sparse row (CSR) layout.
+ * Vertices are dense indices 0..n-1; the arcs leaving vertex u are stored at
+ * positions outOffsets[u]..outOffsets[u+1]-1 of the target/weight/via arrays,
+ * and the arcs entering u likewise in the reverse arrays.
+ */
+public class CsrGraph {
+    final VertexIndex index; // external (OSM) id <-> dense index
+    final float[] xs;
+    final float[] ys;
+
+    final int[] outOffsets;
+    final int[] outTargets;
+    final int[] outWeights;
+    final int[] outVia; // dense index of the contracted vertex, -1 for original arcs
+
+    final int[] inOffsets;
+    final int[] inSources;
+    final int[] inWeights;
+    final int[] inVia;
+
+    private CsrGraph(VertexIndex index, float[] xs, float[] ys,
+                     int[] outOffsets, int[] outTargets, int[] outWeights, int[] outVia,
+                     int[] inOffsets, int[] inSources, int[] inWeights, int[] inVia) {
+        this.index = index;
+        this.xs = xs;
+        this.ys = ys;
+        this.outOffsets = outOffsets;
+        this.outTargets = outTargets;
+        this.outWeights = outWeights;
+        this.outVia = outVia;
+        this.inOffsets = inOffsets;
+        this.inSources = inSources;
+        this.inWeights = inWeights;
+        this.inVia = inVia;
+    }
+
+    /**
+     * Snapshot of g numbered like g.vertexIndex(), so g.indexOf(id) is also the vertex's index
+     * here. Ids that only appear as arc endpoints become vertices at (0, 0).
+     */
+    public static CsrGraph fromGraph(Graph g) {
+        VertexIndex ids = g.vertexIndex();
+        int n = ids.size();
+        int arcCount = 0;
+        for (int v = 0; v < n; v++) {
+            List<Graph.Edge> adj = g.getNeighbours(ids.idOf(v));
+            if (adj != null) {
+                arcCount += adj.size();
+            }
+        }
+
+        Builder builder = new Builder(n, arcCount);
+        for (int v = 0; v < n; v++) {
+            long id = ids.idOf(v);
+            Graph.Vertex vertex = g.getVertex(id);
+            if (vertex == null) {
+                builder.addVertex(id, 0, 0);
+            } else {
+                builder.addVertex(id, vertex.x, vertex.y);
+            }
+        }
+        for (int v = 0; v < n; v++) {
+            List<Graph.Edge> adj = g.getNeighbours(ids.idOf(v));
+            if (adj == null) {
+                continue;
+            }
+            for (Graph.Edge edge : adj) {
+                builder.addArc(v, ids.indexOf(edge.to), edge.weight, edge.contracted < 0 ? -1 : ids.indexOf(edge.contracted));
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Lays out m arcs given as parallel arrays of dense indices. With parallel set the
+     * counting sorts run on the common fork/join pool; the result is identical to the
+     * sequential layout.
+     */
+    static CsrGraph fromArcs(VertexIndex index, float[] xs, float[] ys,
+                             int[] arcFrom, int[] arcTo, int[] arcWeight, int[] arcVia, int m,
+                             boolean parallel) {
+        int n = index.size();
+
+        int[] outOffsets = new int[n + 1];
+        int[] outTargets = new int[m];
+        int[] outWeights = new int[m];
+        int[] outVia = new int[m];
+
+        int[] inOffsets = new int[n + 1];
+        int[] inSources = new int[m];
+        int[] inWeights = new int[m];
+        int[] inVia = new int[m];
+
+        if (parallel) {
+            parallelScatter(arcFrom, arcTo, arcWeight, arcVia, n, m, outOffsets, outTargets, outWeights, outVia);
+            parallelScatter(arcTo, arcFrom, arcWeight, arcVia, n, m, inOffsets, inSources, inWeights, inVia);
+        } else {
+            scatter(arcFrom, arcTo, arcWeight, arcVia, n, m, outOffsets, outTargets, outWeights, outVia);
+            scatter(arcTo, arcFrom, arcWeight, arcVia, n, m, inOffsets, inSources, inWeights, inVia);
+        }
+        return new CsrGraph(index, Arrays.copyOf(xs, n), Arrays.copyOf(ys, n),
+                outOffsets, outTargets, outWeights, outVia,
+                inOffsets, inSources, inWeights, inVia);
+    }
+
+    // Counting sort of the arcs by key; arcs with the same key keep their insertion order.
+    private static void scatter(int[] key, int[] other, int[] weight, int[] via, int n, int m,
+                                int[] offsets, int[] others, int[] weights, int[] vias) {
+        for (int i = 0; i < m; i++) {
+            offsets[key[i] + 1]++;
+        }
+        for (int v = 0; v < n; v++) {
+            offsets[v + 1] += offsets[v];
+        }
+        int[] next = Arrays.copyOf(offsets, n);
+        for (int i = 0; i < m; i++) {
+            int slot = next[key[i]]++;
+            others[slot] = other[i];
+            weights[slot] = weight[i];
+            vias[slot] = via[i];
+        }
+    }
+
+    // Same result as scatter: arcs claim slots through atomic cursors, then every
+    // vertex's slots are sorted by arc number to restore insertion order.
+    private static void parallelScatter(int[] key, int[] other, int[] weight, int[] via, int n, int m,
+                                        int[] offsets, int[] others, int[] weights, int[] vias) {
+        AtomicIntegerArray cursor = new AtomicIntegerArray(n);
+        IntStream.range(0, m).parallel().forEach(i -> cursor.getAndIncrement(key[i]));
+        IntStream.range(0, n).parallel().forEach(v -> offsets[v + 1] = cursor.get(v));
+        Arrays.parallelPrefix(offsets, Integer::sum);
+        IntStream.range(0, n).parallel().forEach(v -> cursor.set(v, offsets[v]));
+
+        int[] arcAt = new int[m];
+        IntStream.range(0, m).parallel().forEach(i -> arcAt[cursor.getAndIncrement(key[i])] = i);
+        IntStream.range(0, n).parallel().forEach(v -> {
+            int start = offsets[v];
+            int end = offsets[v + 1];
+            Arrays.sort(arcAt, start, end);
+            for (int slot = start; slot < end; slot++) {
+                int arc = arcAt[slot];
+                others[slot] = other[arc];
+                weights[slot] = weight[arc];
+                vias[slot] = via[arc];
+            }
+        });
+    }
+
+    public int vertexCount() {
+        return index.size();
+    }
+
+    public int arcCount() {
+        return outTargets.length;
+    }
+
+    /**
+     * Translates an external vertex id to its dense index, or -1 if the vertex is unknown.
+     */
+    public int indexOf(long id) {
+        return index.indexOf(id);
+    }
+
+    public long idOf(int v) {
+        return index.idOf(v);
+    }
+
+    public VertexIndex vertexIndex() {
+        return index;
+    }
+
+    public int outDegree(int v) {
+        return outOffsets[v + 1] - outOffsets[v];
+    }
+
+    public int inDegree(int v) {
+        return inOffsets[v + 1] - inOffsets[v];
+    }
+
+    /**
+     * Collects vertices and arcs in primitive buffers and lays them out as CSR
+     * with a counting sort by source (forward) and target (reverse). Dense
+     * indices follow the order in which vertices are added, so every vertex
+     * must be added before the arcs that reference it.
+     */
+    public static class Builder {
+        private final VertexIndex index;
+        private float[] vertexX;
+        private float[] vertexY;
+
+        private int[] arcFrom;
+        private int[] arcTo;
+        private int[] arcWeight;
+        private int[] arcVia;
+        private int arcCount;
+
+        public Builder(int expectedVertices, int expectedArcs) {
+            this.index = new VertexIndex(expectedVertices);
+            this.vertexX = new float[Math.max(1, expectedVertices)];
+            this.vertexY = new float[vertexX.length];
+            this.arcFrom = new int[Math.max(1, expectedArcs)];
+            this.arcTo = new int[arcFrom.length];
+            this.arcWeight = new int[arcFrom.length];
+            this.arcVia = new int[arcFrom.length];
+        }
+
+        public int addVertex(long id, float x, float y) {
+            int before = index.size();
+            int v = index.add(id);
+            if (v < before) {
+                throw new IllegalStateException("Duplicate vertex id " + id);
+            }
+            if (v == vertexX.length) {
+                vertexX = Arrays.copyOf(vertexX, v * 2);
+                vertexY = Arrays.copyOf(vertexY, v * 2);
+            }
+            vertexX[v] = x;
+            vertexY[v] = y;
+            return v;
+        }
+
+        public void addEdge(long from, long to, int weight, long via) {
+            addArc(resolve(from), resolve(to), weight, via < 0 ? -1 : index.indexOf(via));
+        }
+
+        public void addUndirectedEdge(long u, long v, int weight) {
+            int a = resolve(u);
+            int b = resolve(v);
+            addArc(a, b, weight, -1);
+            addArc(b, a, weight, -1);
+        }
+
+        /**
+         * Adds an arc between dense indices returned by {@link #addVertex}.
+         */
+        public void addArc(int from, int to, int weight, int via) {
+            if (arcCount == arcFrom.length) {
+                int capacity = arcFrom.length * 2;
+                arcFrom = Arrays.copyOf(arcFrom, capacity);
+                arcTo = Arrays.copyOf(arcTo, capacity);
+                arcWeight = Arrays.copyOf(arcWeight, capacity);
+                arcVia = Arrays.copyOf(arcVia, capacity);
+            }
+            arcFrom[arcCount] = from;
+            arcTo[arcCount] = to;
+            arcWeight[arcCount] = weight;
+            arcVia[arcCount] = via;
+            arcCount++;
+        }
+
+        public CsrGraph build() {
+            return fromArcs(index, vertexX, vertexY, arcFrom, arcTo, arcWeight, arcVia, arcCount, false);
+        }
+
+        private int resolve(long id) {
+            int v = index.indexOf(id);
+            if (v < 0) {
+                throw new IllegalStateException("Edge references unknown vertex " + id);
+            }
+            return v;
+        }
+    }
+}
@@ -1,11 +1,5 @@
 package ch;
 
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Map;
-import java.util.PriorityQueue;
-import java.util.Set;
-
 public class Dijkstra {
     /**
      * Computes the shortest path distance between two vertices using Dijkstra's algorithm.
@@ -16,39 +10,56 @@ public class Dijkstra {
      * @return A triple containing the duration (in ns), the number of relaxed edges, and the shortest path distance. The distance is -1 if no path exists.
      */
     public static Result<Integer> shortestPath(Graph g, long from, long to) {
+        return shortestPath(g.csr(), from, to);
+    }
+
+    /**
+     * Same search on the array-backed CSR layout, which the Graph overload also runs on.
+     * Returns -1 if there is no path or one of the vertices is unknown.
+     */
+    public static Result<Integer> shortestPath(CsrGraph g, long from, long to) {
+        return shortestPath(g, from, to, SearchWorkspace.forThread(g.vertexCount()));
+    }
+
+    public static Result<Integer> shortestPath(CsrGraph g, long from, long to, SearchWorkspace ws) {
         long start = System.nanoTime();
-        PriorityQueue<PQElem> pq = new PriorityQueue<>();
-        Set<Long> visited = new HashSet<>();
-        Map<Long, Integer> dists = new HashMap<>();
-        int relaxed = 0;
+        int s = g.indexOf(from);
+        int t = g.indexOf(to);
+        if (s < 0 || t < 0) {
+            return new Result<>(System.nanoTime() - start, 0, -1);
+        }
+        int distance = distance(g, s, t, ws);
+        long end = System.nanoTime();
+        return new Result<>(end - start, ws.relaxed, distance);
+    }
 
-        pq.add(new PQElem(0, from));
-        dists.put(from, 0);
-        
-        while (!pq.isEmpty()&& pq.peek().v != to) {
-            PQElem elem = pq.poll();
-            long u = elem.v;
-            if (visited.contains(u)) {
-                continue;
-            }
+    /**
+     * Allocation-free core of the CSR search between dense indices. Returns -1 if t is
+     * unreachable; the number of relaxed arcs is left in ws.relaxed.
+     */
+    static int distance(CsrGraph g, int s, int t, SearchWorkspace ws) {
+        ws.reset();
+        IndexedMinHeap pq = ws.forwardHeap;
+        int relaxed = 0;
 
-            visited.add(u);
+        pq.push(s, 0);
+        ws.setForward(s, 0, -1);
 
-            int dist = elem.key;
-            for (Graph.Edge e : g.getNeighbours(u)) {
+        while (!pq.isEmpty() && pq.peek() != t) {
+            int dist = pq.peekKey();
+            int u = pq.poll();
+            for (int a = g.outOffsets[u], end = g.outOffsets[u + 1]; a < end; a++) {
                 relaxed++;
-                long v = e.to;
-                int w = e.weight;
-                if (!dists.containsKey(v) || dists.get(v) > dist + w) {
-                    pq.add(new PQElem(dist + w, v));
-                    dists.put(v, dist + w);
+                int v = g.outTargets[a];
+                int newDist = dist + g.outWeights[a];
+                if (newDist < ws.forward(v)) {
+                    pq.push(v, newDist);
+                    ws.setForward(v, newDist, a);
                 }
             }
         }
-        long end = System.nanoTime();
-        if (!dists.containsKey(to)) {
-            return new Result<>(end - start, relaxed, -1);
-        }
-        return new Result<>(end - start, relaxed, dists.get(to));
+        ws.relaxed = relaxed;
+        int dist = ws.forward(t);
+        return dist == SearchWorkspace.INF ? -1 : dist;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,176 @@
+package ch;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Many-to-many distances on a {@link ChGraph} with buckets. Every target runs one backward
+ * upward search and leaves (target, distance) in a bucket at each vertex it settles; every
+ * source then runs one forward upward search and combines its distance to each settled
+ * vertex with that vertex's bucket entries. A table of N sources and M targets costs N + M
+ * upward searches instead of N * M bidirectional queries.
+ *
+ * The result is a flat row-major matrix: entry i * M + j is the distance from sources[i] to
+ * targets[j], or -1 if there is no path or either id is unknown, as in {@link ChQuery}.
+ */
+public final class DistanceTable {
+    private final ChGraph g;
+    private final int threads;
+    private long relaxed;
+
+    public DistanceTable(ChGraph g, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Thread count must be positive, got " + threads);
+        }
+        this.g = g;
+        this.threads = threads;
+    }
+
+    /**
+     * Arcs relaxed by all searches of the last {@link #compute} call.
+     */
+    public long relaxed() {
+        return relaxed;
+    }
+
+    public int[] compute(long[] sources, long[] targets) {
+        int n = sources.length;
+        int m = targets.length;
+        int[] table = new int[Math.multiplyExact(n, m)];
+        Arrays.fill(table, -1);
+        if (n == 0 || m == 0) {
+            return table;
+        }
+        ForkJoinPool pool = threads > 1 ? new ForkJoinPool(threads) : null;
+        try {
+            // Backward searches, one per target, each keeping its settled vertices and distances
+            int[][] settled = new int[m][];
+            long[] backwardRelaxed = new long[m];
+            run(pool, m, j -> {
+                int target = g.indexOf(targets[j]);
+                SearchWorkspace ws = SearchWorkspace.forThread(g.vertexCount());
+                settled[j] = target < 0 ? new int[0] : upwardSearch(target, false, ws);
+                backwardRelaxed[j] = ws.relaxed;
+            });
+            Buckets buckets = new Buckets(g.vertexCount(), settled);
+
+            // Forward searches, one per source, each filling its own row
+            long[] forwardRelaxed = new long[n];
+            run(pool, n, i -> {
+                int source = g.indexOf(sources[i]);
+                if (source < 0) {
+                    return;
+                }
+                SearchWorkspace ws = SearchWorkspace.forThread(g.vertexCount());
+                int[] reached = upwardSearch(source, true, ws);
+                int row = i * m;
+                for (int k = 0; k < reached.length; k += 2) {
+                    int v = reached[k];
+                    int dv = reached[k + 1];
+                    for (int b = buckets.offsets[v], end = buckets.offsets[v + 1]; b < end; b++) {
+                        int d = dv + buckets.distances[b];
+                        int cell = row + buckets.targets[b];
+                        if (table[cell] < 0 || d < table[cell]) {
+                            table[cell] = d;
+                        }
+                    }
+                }
+                forwardRelaxed[i] = ws.relaxed;
+            });
+            relaxed = Arrays.stream(backwardRelaxed).sum() + Arrays.stream(forwardRelaxed).sum();
+        } finally {
+            if (pool != null) {
+                pool.shutdown();
+            }
+        }
+        return table;
+    }
+
+    private interface Task {
+        void run(int i);
+    }
+
+    private static void run(ForkJoinPool pool, int count, Task task) {
+        if (pool == null) {
+            for (int i = 0; i < count; i++) {
+                task.run(i);
+            }
+        } else {
+            pool.submit(() -> IntStream.range(0, count).parallel().forEach(task::run)).join();
+        }
+    }
+
+    /**
+     * Complete upward search from root on one side of ws. Returns the settled vertices that
+     * were not stalled as (vertex, distance) pairs; stalled vertices have a shorter path
+     * through a higher vertex, which the search also settles.
+     */
+    private int[] upwardSearch(int root, boolean forward, SearchWorkspace ws) {
+        ws.reset();
+        IndexedMinHeap pq = forward ? ws.forwardHeap : ws.backwardHeap;
+        IntBuffer offsets = forward ? g.forwardOffsets : g.backwardOffsets;
+        IntBuffer heads = forward ? g.forwardHeads : g.backwardHeads;
+        IntBuffer weights = forward ? g.forwardWeights : g.backwardWeights;
+        int[] reached = new int[32];
+        int size = 0;
+        int relaxedArcs = 0;
+
+        ws.set(forward, root, 0, -1);
+        pq.push(root, 0);
+        while (!pq.isEmpty()) {
+            int du = pq.peekKey();
+            int u = pq.poll();
+            if (ChQuery.STALL_ON_DEMAND && ChQuery.isStalled(g, ws, forward, u, du)) {
+                continue;
+            }
+            if (size == reached.length) {
+                reached = Arrays.copyOf(reached, size * 2);
+            }
+            reached[size++] = u;
+            reached[size++] = du;
+            for (int a = offsets.get(u), end = offsets.get(u + 1); a < end; a++) {
+                int v = heads.get(a);
+                int newDist = du + weights.get(a);
+                relaxedArcs++;
+                if (newDist < ws.distance(forward, v)) {
+                    ws.set(forward, v, newDist, a);
+                    pq.push(v, newDist);
+                }
+            }
+        }
+        ws.relaxed = relaxedArcs;
+        return Arrays.copyOf(reached, size);
+    }
+
+    // Bucket entries of all targets grouped by vertex with a counting sort.
+    private static final class Buckets {
+        final int[] offsets;
+        final int[] targets;
+        final int[] distances;
+
+        Buckets(int vertexCount, int[][] settled) {
+            offsets = new int[vertexCount + 1];
+            for (int[] reached : settled) {
+                for (int k = 0; k < reached.length; k += 2) {
+                    offsets[reached[k] + 1]++;
+                }
+            }
+            for (int v = 0; v < vertexCount; v++) {
+                offsets[v + 1] += offsets[v];
+            }
+            targets = new int[offsets[vertexCount]];
+            distances = new int[targets.length];
+            int[] next = Arrays.copyOf(offsets, vertexCount);
+            for (int j = 0; j < settled.length; j++) {
+                int[] reached = settled[j];
+                for (int k = 0; k < reached.length; k += 2) {
+                    int slot = next[reached[k]]++;
+                    targets[slot] = j;
+                    distances[slot] = reached[k + 1];
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package ch;
+
+/**
+ * Geographic lower bound: the straight-line distance between the vertex coordinates
+ * times the smallest weight per coordinate unit over all arcs. The scale is measured
+ * on the graph itself, so the bound holds whatever units the weights and coordinates
+ * use: every arc weighs at least scale times its straight-line length, and by the
+ * triangle inequality so does every path. Arcs between vertices at the same position
+ * do not constrain the scale; a zero-weight arc between distinct positions makes it 0
+ * and A* falls back to Dijkstra's order.
+ */
+public final class GeoBound implements LowerBound {
+    // Shrinks the scale slightly so rounding in the float coordinates cannot overshoot.
+    private static final double SAFETY = 1 - 1e-6;
+
+    private final float[] xs;
+    private final float[] ys;
+    private final double scale;
+
+    private GeoBound(float[] xs, float[] ys, double scale) {
+        this.xs = xs;
+        this.ys = ys;
+        this.scale = scale;
+    }
+
+    public static GeoBound calibrate(CsrGraph g) {
+        double scale = Double.POSITIVE_INFINITY;
+        for (int u = 0; u < g.vertexCount(); u++) {
+            for (int a = g.outOffsets[u]; a < g.outOffsets[u + 1]; a++) {
+                double length = length(g.xs, g.ys, u, g.outTargets[a]);
+                if (length > 0) {
+                    scale = Math.min(scale, g.outWeights[a] / length);
+                }
+            }
+        }
+        return new GeoBound(g.xs, g.ys, Double.isInfinite(scale) ? 0 : scale * SAFETY);
+    }
+
+    /**
+     * Weight per coordinate unit; 0 if the coordinates carry no information.
+     */
+    public double scale() {
+        return scale;
+    }
+
+    @Override
+    public int lowerBound(int from, int to) {
+        return (int) (scale * length(xs, ys, from, to));
+    }
+
+    private static double length(float[] xs, float[] ys, int u, int v) {
+        double dx = (double) xs[u] - xs[v];
+        double dy = (double) ys[u] - ys[v];
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+}
@@ -0,0 +1,325 @@
+package ch;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Whitespace separated number tokenizer for .graph files. Reads the input in large
+ * chunks through a direct buffer and parses longs, ints and floats straight from the
+ * bytes, so no String is created per token. Files ending in .gz are decompressed.
+ */
+public final class GraphReader implements Closeable {
+    private static final int BUFFER_BYTES = 1 << 20;
+
+    // Exact powers of ten for the float fast path; a double holds 10^22 without rounding.
+    private static final double[] POWERS_OF_TEN = new double[23];
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private final ReadableByteChannel channel;
+    private final ByteBuffer buffer;
+    private int pos;
+    private int limit;
+    private long consumed; // bytes before the current chunk, for error messages
+    private boolean eof;
+
+    // Set when reading a byte range of a shared file with positional reads
+    private final FileChannel file;
+    private long filePosition;
+    private final long fileEnd;
+
+    private GraphReader(ReadableByteChannel channel, ByteBuffer buffer, boolean eof) {
+        this.channel = channel;
+        this.buffer = buffer;
+        this.limit = buffer.limit();
+        this.eof = eof;
+        this.file = null;
+        this.fileEnd = -1;
+    }
+
+    private GraphReader(FileChannel file, long start, long end, int bufferBytes) {
+        this.channel = null;
+        this.buffer = ByteBuffer.allocateDirect(bufferBytes).limit(0);
+        this.file = file;
+        this.filePosition = start;
+        this.fileEnd = end;
+        this.consumed = start;
+    }
+
+    public static GraphReader open(Path path) throws IOException {
+        if (path.getFileName().toString().endsWith(".gz")) {
+            return of(new GZIPInputStream(Files.newInputStream(path), 1 << 16));
+        }
+        return new GraphReader(FileChannel.open(path, StandardOpenOption.READ),
+                ByteBuffer.allocateDirect(BUFFER_BYTES).limit(0), false);
+    }
+
+    public static GraphReader of(InputStream in) {
+        InputStream source = in instanceof BufferedInputStream || in instanceof GZIPInputStream
+                ? in : new BufferedInputStream(in, 1 << 16);
+        return new GraphReader(Channels.newChannel(source), ByteBuffer.allocateDirect(BUFFER_BYTES).limit(0), false);
+    }
+
+    /**
+     * Reads bytes start..end-1 of file without moving its position, so several readers
+     * can parse disjoint ranges of the same channel concurrently. Closing the reader
+     * leaves the channel open.
+     */
+    public static GraphReader range(FileChannel file, long start, long end) {
+        int bufferBytes = (int) Math.max(1, Math.min(BUFFER_BYTES, end - start));
+        return new GraphReader(file, start, end, bufferBytes);
+    }
+
+    public static GraphReader of(byte[] data) {
+        return new GraphReader(null, ByteBuffer.wrap(data), true);
+    }
+
+    public static GraphReader of(String data) {
+        return of(data.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Skips whitespace and reports whether another token follows.
+     */
+    public boolean hasNext() {
+        return skipWhitespace() >= 0;
+    }
+
+    public int nextInt() {
+        long value = nextLong();
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Value " + value + " out of int range at byte " + offset());
+        }
+        return (int) value;
+    }
+
+    public long nextLong() {
+        int c = skipWhitespace();
+        if (c < 0) {
+            throw new IllegalStateException("Unexpected end of input at byte " + offset());
+        }
+        boolean negative = c == '-';
+        if (negative || c == '+') {
+            pos++;
+            c = peek();
+        }
+        if (!isDigit(c)) {
+            throw malformed();
+        }
+        long value = 0;
+        while (isDigit(c)) {
+            int digit = c - '0';
+            if (value > (Long.MAX_VALUE - digit) / 10) {
+                throw new IllegalStateException("Value out of long range at byte " + offset());
+            }
+            value = value * 10 + digit;
+            pos++;
+            c = peek();
+        }
+        if (!isDelimiter(c)) {
+            throw malformed();
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Parses decimal floats like 55.137427 or -1.5e3. Mantissas of up to 18 digits with
+     * a small exponent are converted with a single exact division; anything else is
+     * handed to Float.parseFloat.
+     */
+    public float nextFloat() {
+        int c = skipWhitespace();
+        if (c < 0) {
+            throw new IllegalStateException("Unexpected end of input at byte " + offset());
+        }
+        boolean negative = c == '-';
+        if (negative || c == '+') {
+            pos++;
+            c = peek();
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int scale = 0;
+        boolean seenDigit = false;
+        while (isDigit(c)) {
+            seenDigit = true;
+            if (mantissa != 0 || c != '0') {
+                digits++;
+            }
+            if (digits <= 18) {
+                mantissa = mantissa * 10 + (c - '0');
+            } else {
+                scale++; // dropped integer digit
+            }
+            pos++;
+            c = peek();
+        }
+        if (c == '.') {
+            pos++;
+            c = peek();
+            while (isDigit(c)) {
+                seenDigit = true;
+                if (mantissa != 0 || c != '0') {
+                    digits++;
+                }
+                if (digits <= 18) {
+                    mantissa = mantissa * 10 + (c - '0');
+                    scale--;
+                }
+                pos++;
+                c = peek();
+            }
+        }
+        if (!seenDigit) {
+            return slowFloat(negative);
+        }
+        if (c == 'e' || c == 'E') {
+            pos++;
+            c = peek();
+            boolean negativeExponent = c == '-';
+            if (negativeExponent || c == '+') {
+                pos++;
+                c = peek();
+            }
+            if (!isDigit(c)) {
+                throw malformed();
+            }
+            int exponent = 0;
+            while (isDigit(c)) {
+                exponent = Math.min(exponent * 10 + (c - '0'), 100_000);
+                pos++;
+                c = peek();
+            }
+            scale += negativeExponent ? -exponent : exponent;
+        }
+        if (!isDelimiter(c)) {
+            throw malformed();
+        }
+        double value;
+        if (mantissa == 0) {
+            value = 0;
+        } else if (scale >= 0 && scale < POWERS_OF_TEN.length) {
+            value = mantissa * POWERS_OF_TEN[scale];
+        } else if (scale < 0 && -scale < POWERS_OF_TEN.length) {
+            value = mantissa / POWERS_OF_TEN[-scale];
+        } else {
+            value = mantissa * Math.pow(10, scale);
+        }
+        return (float) (negative ? -value : value);
+    }
+
+    // NaN, Infinity and similar spellings are rare enough to go through a String.
+    private float slowFloat(boolean negative) {
+        StringBuilder token = new StringBuilder(negative ? "-" : "");
+        for (int c = peek(); !isDelimiter(c); c = peek()) {
+            token.append((char) c);
+            pos++;
+        }
+        try {
+            return Float.parseFloat(token.toString());
+        } catch (NumberFormatException ex) {
+            throw new IllegalStateException("Malformed number '" + token + "' at byte " + offset(), ex);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+    private int skipWhitespace() {
+        int c = peek();
+        while (c == ' ' || c == '\n' || c == '\r' || c == '\t') {
+            pos++;
+            c = peek();
+        }
+        return c;
+    }
+
+    // Next byte without consuming it, or -1 at end of input.
+    private int peek() {
+        if (pos == limit && !fill()) {
+            return -1;
+        }
+        return buffer.get(pos);
+    }
+
+    private boolean fill() {
+        if (eof) {
+            return false;
+        }
+        consumed += limit;
+        buffer.clear();
+        try {
+            if (file != null) {
+                fillRange();
+            } else {
+                int read;
+                do {
+                    read = channel.read(buffer);
+                } while (read == 0);
+                if (read < 0) {
+                    eof = true;
+                }
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        buffer.flip();
+        pos = 0;
+        limit = buffer.limit();
+        return limit > 0;
+    }
+
+    private void fillRange() throws IOException {
+        long remaining = fileEnd - filePosition;
+        if (remaining <= 0) {
+            eof = true;
+            buffer.limit(0);
+            return;
+        }
+        buffer.limit((int) Math.min(buffer.capacity(), remaining));
+        while (buffer.hasRemaining()) {
+            int read = file.read(buffer, filePosition);
+            if (read < 0) {
+                eof = true;
+                break;
+            }
+            filePosition += read;
+        }
+    }
+
+    private long offset() {
+        return consumed + pos;
+    }
+
+    private IllegalStateException malformed() {
+        return new IllegalStateException("Malformed number at byte " + offset());
+    }
+
+    private static boolean isDigit(int c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isDelimiter(int c) {
+        return c < 0 || c == ' ' || c == '\n' || c == '\r' || c == '\t';
+    }
+}
@@ -0,0 +1,134 @@
+package ch;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Counterpart of {@link GraphReader}: formats numbers straight into a byte buffer and
+ * writes it out in large blocks. Paths ending in .gz are gzip-compressed.
+ */
+public final class GraphWriter implements Closeable {
+    private static final int BUFFER_BYTES = 1 << 20;
+    private static final long FIXED_SCALE = 1_000_000L; // six decimals, like %f
+
+    private final OutputStream out;
+    private final byte[] buffer = new byte[BUFFER_BYTES];
+    private final byte[] digits = new byte[20];
+    private int pos;
+
+    private GraphWriter(OutputStream out) {
+        this.out = out;
+    }
+
+    public static GraphWriter open(Path path) throws IOException {
+        OutputStream out = Files.newOutputStream(path);
+        if (path.getFileName().toString().endsWith(".gz")) {
+            out = new GZIPOutputStream(out, 1 << 16);
+        }
+        return new GraphWriter(out);
+    }
+
+    public static GraphWriter of(OutputStream out) {
+        return new GraphWriter(out);
+    }
+
+    public GraphWriter space() throws IOException {
+        return put((byte) ' ');
+    }
+
+    public GraphWriter newline() throws IOException {
+        return put((byte) '\n');
+    }
+
+    public GraphWriter writeLong(long value) throws IOException {
+        ensureRoom(20);
+        if (value < 0) {
+            if (value == Long.MIN_VALUE) {
+                return writeAscii(Long.toString(value));
+            }
+            buffer[pos++] = '-';
+            value = -value;
+        }
+        int count = 0;
+        do {
+            digits[count++] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        while (count > 0) {
+            buffer[pos++] = digits[--count];
+        }
+        return this;
+    }
+
+    /**
+     * Writes value with six decimals, the same text String.format("%f", value) produces.
+     * A float has 24 significant bits and 10^6 has 20, so magnitude * 10^6 is exact in a
+     * double and Math.round rounds the exact decimal half up, as %f does. Values that land
+     * on a tie at the seventh decimal still go through String.format, so the output does
+     * not depend on that argument.
+     */
+    public GraphWriter writeFixed(float value) throws IOException {
+        double magnitude = Math.abs((double) value);
+        if (Float.isNaN(value) || Float.isInfinite(value) || magnitude >= 1e12) {
+            return writeAscii(String.format(Locale.US, "%f", value));
+        }
+        double product = magnitude * FIXED_SCALE;
+        if (Math.abs(product - Math.floor(product) - 0.5) <= Math.ulp(product)) {
+            return writeAscii(String.format(Locale.US, "%f", value));
+        }
+        long scaled = Math.round(product);
+        if (value < 0 || (value == 0 && 1 / value < 0)) {
+            put((byte) '-');
+        }
+        writeLong(scaled / FIXED_SCALE);
+        ensureRoom(7);
+        buffer[pos++] = '.';
+        long fraction = scaled % FIXED_SCALE;
+        for (long unit = FIXED_SCALE / 10; unit > 0; unit /= 10) {
+            buffer[pos++] = (byte) ('0' + (fraction / unit) % 10);
+        }
+        return this;
+    }
+
+    public void flush() throws IOException {
+        out.write(buffer, 0, pos);
+        pos = 0;
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            out.write(buffer, 0, pos);
+            pos = 0;
+        } finally {
+            out.close();
+        }
+    }
+
+    private GraphWriter writeAscii(String text) throws IOException {
+        ensureRoom(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            buffer[pos++] = (byte) text.charAt(i);
+        }
+        return this;
+    }
+
+    private GraphWriter put(byte b) throws IOException {
+        ensureRoom(1);
+        buffer[pos++] = b;
+        return this;
+    }
+
+    private void ensureRoom(int bytes) throws IOException {
+        if (pos + bytes > buffer.length) {
+            out.write(buffer, 0, pos);
+            pos = 0;
+        }
+    }
+}
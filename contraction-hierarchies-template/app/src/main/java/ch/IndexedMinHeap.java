@@ -0,0 +1,218 @@
+package ch;
+
+import java.util.Arrays;
+
+/**
+ * Addressable d-ary min-heap over int ids 0..capacity-1 with int keys.
+ * Every id is in the heap at most once, so a better distance is a
+ * decrease-key instead of a second entry, and nothing is allocated after
+ * construction. The arity must be a power of two (2 = binary, 4 = 4-ary).
+ */
+public final class IndexedMinHeap {
+    public static final int BINARY = 2;
+    public static final int QUATERNARY = 4;
+
+    private final int shift; // log2(arity), children of i are (i << shift) + 1 .. (i << shift) + arity
+    private final int arity;
+    private int[] ids;       // heap position -> id
+    private int[] keys;      // heap position -> key, kept next to ids for locality while sifting
+    private int[] position;  // id -> heap position, -1 when the id is not in the heap
+    private int size;
+
+    public IndexedMinHeap(int capacity) {
+        this(capacity, QUATERNARY);
+    }
+
+    public IndexedMinHeap(int capacity, int arity) {
+        if (arity < 2 || Integer.bitCount(arity) != 1) {
+            throw new IllegalArgumentException("Heap arity must be a power of two >= 2, got " + arity);
+        }
+        this.arity = arity;
+        this.shift = Integer.numberOfTrailingZeros(arity);
+        this.ids = new int[Math.max(1, capacity)];
+        this.keys = new int[ids.length];
+        this.position = new int[ids.length];
+        Arrays.fill(position, -1);
+    }
+
+    public int arity() {
+        return arity;
+    }
+
+    public int capacity() {
+        return position.length;
+    }
+
+    /**
+     * Grows the id range to at least capacity; existing entries are kept.
+     */
+    public void ensureCapacity(int capacity) {
+        if (capacity <= position.length) {
+            return;
+        }
+        int old = position.length;
+        int grown = Math.max(capacity, old * 2);
+        ids = Arrays.copyOf(ids, grown);
+        keys = Arrays.copyOf(keys, grown);
+        position = Arrays.copyOf(position, grown);
+        Arrays.fill(position, old, grown, -1);
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean contains(int id) {
+        return position[id] >= 0;
+    }
+
+    /**
+     * Current key of an id that is in the heap.
+     */
+    public int key(int id) {
+        return keys[position[id]];
+    }
+
+    /**
+     * Inserts id with key, or moves it to key if it is already in the heap (up or down).
+     */
+    public void push(int id, int key) {
+        int pos = position[id];
+        if (pos < 0) {
+            pos = size++;
+            ids[pos] = id;
+            keys[pos] = key;
+            position[id] = pos;
+            siftUp(pos);
+        } else if (key < keys[pos]) {
+            keys[pos] = key;
+            siftUp(pos);
+        } else if (key > keys[pos]) {
+            keys[pos] = key;
+            siftDown(pos);
+        }
+    }
+
+    /**
+     * Inserts id with key, or lowers its key; a larger key for a contained id is ignored.
+     * Returns true if the heap changed.
+     */
+    public boolean decreaseKey(int id, int key) {
+        int pos = position[id];
+        if (pos >= 0 && key >= keys[pos]) {
+            return false;
+        }
+        push(id, key);
+        return true;
+    }
+
+    public int peek() {
+        return ids[0];
+    }
+
+    public int peekKey() {
+        return keys[0];
+    }
+
+    /**
+     * Removes and returns the id with the smallest key.
+     */
+    public int poll() {
+        int top = ids[0];
+        position[top] = -1;
+        int last = --size;
+        if (last > 0) {
+            ids[0] = ids[last];
+            keys[0] = keys[last];
+            position[ids[0]] = 0;
+            siftDown(0);
+        }
+        return top;
+    }
+
+    /**
+     * Removes id if it is in the heap.
+     */
+    public void remove(int id) {
+        int pos = position[id];
+        if (pos < 0) {
+            return;
+        }
+        position[id] = -1;
+        int last = --size;
+        if (pos == last) {
+            return;
+        }
+        int key = keys[pos];
+        ids[pos] = ids[last];
+        keys[pos] = keys[last];
+        position[ids[pos]] = pos;
+        if (keys[pos] < key) {
+            siftUp(pos);
+        } else {
+            siftDown(pos);
+        }
+    }
+
+    /**
+     * Empties the heap in O(size) rather than O(capacity).
+     */
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            position[ids[i]] = -1;
+        }
+        size = 0;
+    }
+
+    private void siftUp(int pos) {
+        int id = ids[pos];
+        int key = keys[pos];
+        while (pos > 0) {
+            int parent = (pos - 1) >>> shift;
+            if (keys[parent] <= key) {
+                break;
+            }
+            ids[pos] = ids[parent];
+            keys[pos] = keys[parent];
+            position[ids[pos]] = pos;
+            pos = parent;
+        }
+        ids[pos] = id;
+        keys[pos] = key;
+        position[id] = pos;
+    }
+
+    private void siftDown(int pos) {
+        int id = ids[pos];
+        int key = keys[pos];
+        while (true) {
+            int first = (pos << shift) + 1;
+            if (first >= size) {
+                break;
+            }
+            int end = Math.min(first + arity, size);
+            int best = first;
+            int bestKey = keys[first];
+            for (int c = first + 1; c < end; c++) {
+                if (keys[c] < bestKey) {
+                    best = c;
+                    bestKey = keys[c];
+                }
+            }
+            if (bestKey >= key) {
+                break;
+            }
+            ids[pos] = ids[best];
+            keys[pos] = bestKey;
+            position[ids[pos]] = pos;
+            pos = best;
+        }
+        ids[pos] = id;
+        keys[pos] = key;
+        position[id] = pos;
+    }
+}
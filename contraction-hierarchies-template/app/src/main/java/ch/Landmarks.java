@@ -0,0 +1,468 @@
+package ch;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * ALT lower bounds: distances from and to k landmark vertices give, by the triangle
+ * inequality, d(u, v) >= d(L, v) - d(L, u) and d(u, v) >= d(u, L) - d(v, L). The bound
+ * is the largest of these over the landmarks; a query uses the few landmarks that bound
+ * its own (s, t) pair best.
+ *
+ * Distances are stored per vertex, k entries each, so one bound reads two short runs.
+ * They can be saved to a binary sidecar file next to the graph; the file records the
+ * vertex ids in dense order and is rejected for any other graph.
+ */
+public final class Landmarks implements LowerBound {
+    static final long MAGIC = 0x314B524D444E414CL;
+    static final int VERSION = 1;
+    /** Landmarks consulted per query. */
+    static final int ACTIVE = 4;
+
+    private static final int UNREACHED = -1;
+
+    /** How landmarks are picked. */
+    public enum Selection {
+        /** Each new landmark is the vertex farthest from the ones chosen so far. */
+        FARTHEST,
+        /**
+         * Goldberg and Werneck's avoid: grows a shortest-path tree from a random root and
+         * descends into the subtree whose vertices the current landmarks bound worst.
+         */
+        AVOID;
+
+        static Selection parse(String value) {
+            try {
+                return valueOf(value.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException ex) {
+                throw new IllegalArgumentException("Landmark selection must be farthest or avoid, got " + value, ex);
+            }
+        }
+    }
+
+    private final int n;
+    private final long[] landmarkIds;
+    private final int k;
+    private final int[] from; // from[v * k + i] = d(L_i, v), -1 if unreachable
+    private final int[] to;   // to[v * k + i] = d(v, L_i)
+    private final long fingerprint;
+
+    private Landmarks(int n, long[] landmarkIds, int[] from, int[] to, long fingerprint) {
+        this.n = n;
+        this.landmarkIds = landmarkIds;
+        this.k = landmarkIds.length;
+        this.from = from;
+        this.to = to;
+        this.fingerprint = fingerprint;
+    }
+
+    public int count() {
+        return k;
+    }
+
+    public long[] landmarkIds() {
+        return landmarkIds.clone();
+    }
+
+    /**
+     * Picks count landmarks and computes their distance arrays; the 2 * count full
+     * searches run on threads workers.
+     */
+    public static Landmarks select(CsrGraph g, int count, Selection selection, int threads, long seed) {
+        if (count < 1) {
+            throw new IllegalArgumentException("Landmark count must be positive, got " + count);
+        }
+        if (threads < 1) {
+            throw new IllegalArgumentException("Thread count must be positive, got " + threads);
+        }
+        int n = g.vertexCount();
+        if (n == 0) {
+            throw new IllegalArgumentException("Cannot place landmarks in an empty graph");
+        }
+        count = Math.min(count, n);
+        int[] chosen = selection == Selection.FARTHEST ? farthest(g, count, seed) : avoid(g, count, seed);
+        int k = chosen.length;
+
+        int[][] forward = new int[k][];
+        int[][] backward = new int[k][];
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            pool.submit(() -> IntStream.range(0, 2 * k).parallel().forEach(task -> {
+                int i = task >> 1;
+                if ((task & 1) == 0) {
+                    forward[i] = search(g, chosen[i], true);
+                } else {
+                    backward[i] = search(g, chosen[i], false);
+                }
+            })).join();
+        } finally {
+            pool.shutdown();
+        }
+
+        long[] ids = new long[k];
+        int[] from = new int[Math.multiplyExact(n, k)];
+        int[] to = new int[from.length];
+        for (int i = 0; i < k; i++) {
+            ids[i] = g.idOf(chosen[i]);
+            for (int v = 0; v < n; v++) {
+                from[v * k + i] = forward[i][v];
+                to[v * k + i] = backward[i][v];
+            }
+        }
+        return new Landmarks(n, ids, from, to, fingerprint(g));
+    }
+
+    @Override
+    public int lowerBound(int u, int v) {
+        int best = 0;
+        for (int i = 0; i < k; i++) {
+            best = Math.max(best, bound(i, u, v));
+        }
+        return best;
+    }
+
+    /**
+     * The {@link #ACTIVE} landmarks with the largest bound on d(s, t).
+     */
+    @Override
+    public LowerBound forQuery(int s, int t) {
+        if (k <= ACTIVE) {
+            return this;
+        }
+        int[] active = active(s, t);
+        return (a, b) -> {
+            int best = 0;
+            for (int i : active) {
+                best = Math.max(best, bound(i, a, b));
+            }
+            return best;
+        };
+    }
+
+    /**
+     * Indices of the (at most {@link #ACTIVE}) landmarks with the largest bound on d(s, t).
+     */
+    int[] active(int s, int t) {
+        int[] active = new int[Math.min(k, ACTIVE)];
+        active(s, t, active, new int[active.length]);
+        return active;
+    }
+
+    /**
+     * Same as {@link #active(int, int)} into caller-owned arrays of length at least
+     * {@link #ACTIVE}; returns how many leading entries of active are set.
+     */
+    int active(int s, int t, int[] active, int[] bounds) {
+        int count = Math.min(k, ACTIVE);
+        Arrays.fill(bounds, 0, count, -1);
+        for (int i = 0; i < k; i++) {
+            int b = bound(i, s, t);
+            for (int j = 0; j < count; j++) {
+                if (b > bounds[j]) {
+                    System.arraycopy(bounds, j, bounds, j + 1, count - j - 1);
+                    System.arraycopy(active, j, active, j + 1, count - j - 1);
+                    bounds[j] = b;
+                    active[j] = i;
+                    break;
+                }
+            }
+        }
+        return count;
+    }
+
+    /** d(L_i, v), or -1 if v is unreachable from landmark i. */
+    int fromLandmark(int i, int v) {
+        return from[v * k + i];
+    }
+
+    /** d(v, L_i), or -1 if landmark i is unreachable from v. */
+    int toLandmark(int i, int v) {
+        return to[v * k + i];
+    }
+
+    private int bound(int i, int u, int v) {
+        int best = 0;
+        int lu = from[u * k + i];
+        int lv = from[v * k + i];
+        if (lu != UNREACHED && lv != UNREACHED) {
+            best = lv - lu;
+        }
+        int ul = to[u * k + i];
+        int vl = to[v * k + i];
+        if (ul != UNREACHED && vl != UNREACHED) {
+            best = Math.max(best, ul - vl);
+        }
+        return best;
+    }
+
+    // Multi-source search from all chosen landmarks; the next one is the farthest reachable vertex.
+    private static int[] farthest(CsrGraph g, int count, long seed) {
+        int n = g.vertexCount();
+        int[] chosen = new int[count];
+        chosen[0] = new Random(seed).nextInt(n);
+        // The first pick is random; replacing it with the vertex farthest from it moves it to the border.
+        chosen[0] = farthestFrom(g, chosen, 1);
+        for (int c = 1; c < count; c++) {
+            chosen[c] = farthestFrom(g, chosen, c);
+        }
+        return chosen;
+    }
+
+    private static int farthestFrom(CsrGraph g, int[] roots, int rootCount) {
+        int n = g.vertexCount();
+        int[] dist = new int[n];
+        Arrays.fill(dist, Integer.MAX_VALUE);
+        IndexedMinHeap pq = new IndexedMinHeap(n);
+        for (int r = 0; r < rootCount; r++) {
+            dist[roots[r]] = 0;
+            pq.push(roots[r], 0);
+        }
+        int last = roots[0];
+        while (!pq.isEmpty()) {
+            int du = pq.peekKey();
+            int u = pq.poll();
+            last = u;
+            for (int a = g.outOffsets[u]; a < g.outOffsets[u + 1]; a++) {
+                int v = g.outTargets[a];
+                int nd = du + g.outWeights[a];
+                if (nd < dist[v]) {
+                    dist[v] = nd;
+                    pq.push(v, nd);
+                }
+            }
+        }
+        return last;
+    }
+
+    private static int[] avoid(CsrGraph g, int count, long seed) {
+        int n = g.vertexCount();
+        Random random = new Random(seed);
+        int[] chosen = new int[count];
+        int chosenCount = 0;
+        chosen[chosenCount++] = farthest(g, 1, seed)[0];
+        boolean[] isLandmark = new boolean[n];
+        isLandmark[chosen[0]] = true;
+
+        // Distances of the chosen landmarks, so the current bound can be evaluated
+        int[][] forward = new int[count][];
+        int[][] backward = new int[count][];
+        forward[0] = search(g, chosen[0], true);
+        backward[0] = search(g, chosen[0], false);
+
+        int[] dist = new int[n];
+        int[] parent = new int[n];
+        int[] settled = new int[n];
+        long[] size = new long[n];
+        int[] childOffsets = new int[n + 1];
+        int[] children = new int[n];
+        IndexedMinHeap pq = new IndexedMinHeap(n);
+        for (int attempt = 0; chosenCount < count && attempt < 4 * count; attempt++) {
+            int root = random.nextInt(n);
+            // Shortest-path tree from root, vertices in settle order
+            Arrays.fill(dist, Integer.MAX_VALUE);
+            Arrays.fill(parent, -1);
+            dist[root] = 0;
+            pq.push(root, 0);
+            int settledCount = 0;
+            while (!pq.isEmpty()) {
+                int du = pq.peekKey();
+                int u = pq.poll();
+                settled[settledCount++] = u;
+                for (int a = g.outOffsets[u]; a < g.outOffsets[u + 1]; a++) {
+                    int v = g.outTargets[a];
+                    int nd = du + g.outWeights[a];
+                    if (nd < dist[v]) {
+                        dist[v] = nd;
+                        parent[v] = u;
+                        pq.push(v, nd);
+                    }
+                }
+            }
+            // Weight of v: how much the current landmarks underestimate d(root, v).
+            // Size of v: total weight of its subtree, 0 if the subtree holds a landmark.
+            Arrays.fill(size, 0);
+            boolean[] hasLandmark = new boolean[n];
+            for (int i = settledCount - 1; i >= 0; i--) {
+                int v = settled[i];
+                if (isLandmark[v]) {
+                    hasLandmark[v] = true;
+                }
+                int bound = 0;
+                for (int c = 0; c < chosenCount; c++) {
+                    bound = Math.max(bound, boundFrom(forward[c], backward[c], root, v));
+                }
+                size[v] += dist[v] - bound;
+                int p = parent[v];
+                if (p >= 0) {
+                    hasLandmark[p] |= hasLandmark[v];
+                    size[p] += size[v];
+                }
+            }
+            for (int i = 0; i < settledCount; i++) {
+                if (hasLandmark[settled[i]]) {
+                    size[settled[i]] = 0;
+                }
+            }
+            // Children lists, then descend into the largest subtree until a leaf
+            Arrays.fill(childOffsets, 0);
+            for (int i = 0; i < settledCount; i++) {
+                int p = parent[settled[i]];
+                if (p >= 0) {
+                    childOffsets[p + 1]++;
+                }
+            }
+            for (int v = 0; v < n; v++) {
+                childOffsets[v + 1] += childOffsets[v];
+            }
+            int[] next = Arrays.copyOf(childOffsets, n);
+            for (int i = 0; i < settledCount; i++) {
+                int p = parent[settled[i]];
+                if (p >= 0) {
+                    children[next[p]++] = settled[i];
+                }
+            }
+            int v = root;
+            while (true) {
+                int best = -1;
+                for (int c = childOffsets[v]; c < childOffsets[v + 1]; c++) {
+                    if (size[children[c]] > 0 && (best < 0 || size[children[c]] > size[best])) {
+                        best = children[c];
+                    }
+                }
+                if (best < 0) {
+                    break;
+                }
+                v = best;
+            }
+            if (size[v] == 0 || isLandmark[v]) {
+                continue; // every subtree of this root already holds a landmark
+            }
+            isLandmark[v] = true;
+            forward[chosenCount] = search(g, v, true);
+            backward[chosenCount] = search(g, v, false);
+            chosen[chosenCount++] = v;
+        }
+        return Arrays.copyOf(chosen, chosenCount);
+    }
+
+    private static int boundFrom(int[] forward, int[] backward, int u, int v) {
+        int best = 0;
+        if (forward[u] != UNREACHED && forward[v] != UNREACHED) {
+            best = forward[v] - forward[u];
+        }
+        if (backward[u] != UNREACHED && backward[v] != UNREACHED) {
+            best = Math.max(best, backward[u] - backward[v]);
+        }
+        return best;
+    }
+
+    // Full Dijkstra from root over out-arcs (forward) or in-arcs; -1 marks unreachable vertices.
+    private static int[] search(CsrGraph g, int root, boolean forward) {
+        int n = g.vertexCount();
+        int[] offsets = forward ? g.outOffsets : g.inOffsets;
+        int[] heads = forward ? g.outTargets : g.inSources;
+        int[] weights = forward ? g.outWeights : g.inWeights;
+        int[] dist = new int[n];
+        Arrays.fill(dist, Integer.MAX_VALUE);
+        IndexedMinHeap pq = new IndexedMinHeap(n);
+        dist[root] = 0;
+        pq.push(root, 0);
+        while (!pq.isEmpty()) {
+            int du = pq.peekKey();
+            int u = pq.poll();
+            for (int a = offsets[u]; a < offsets[u + 1]; a++) {
+                int v = heads[a];
+                int nd = du + weights[a];
+                if (nd < dist[v]) {
+                    dist[v] = nd;
+                    pq.push(v, nd);
+                }
+            }
+        }
+        for (int v = 0; v < n; v++) {
+            if (dist[v] == Integer.MAX_VALUE) {
+                dist[v] = UNREACHED;
+            }
+        }
+        return dist;
+    }
+
+    // Order-sensitive hash of the vertex ids, so a sidecar written for another graph or vertex order is rejected.
+    private static long fingerprint(CsrGraph g) {
+        long hash = g.vertexCount();
+        for (int v = 0; v < g.vertexCount(); v++) {
+            hash = hash * 0x9E3779B97F4A7C15L + g.idOf(v);
+        }
+        return hash;
+    }
+
+    /**
+     * Writes the sidecar: magic, version, n, k, fingerprint, landmark ids, then the
+     * from and to distances, k per vertex.
+     */
+    public void write(Path path) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), 1 << 16))) {
+            out.writeLong(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(n);
+            out.writeInt(k);
+            out.writeLong(fingerprint);
+            for (long id : landmarkIds) {
+                out.writeLong(id);
+            }
+            for (int d : from) {
+                out.writeInt(d);
+            }
+            for (int d : to) {
+                out.writeInt(d);
+            }
+        }
+    }
+
+    /**
+     * Reads a sidecar written by {@link #write} for the same graph g.
+     */
+    public static Landmarks read(Path path, CsrGraph g) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+            if (in.readLong() != MAGIC) {
+                throw new IOException("Not a landmark file: " + path);
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported landmark file version " + version + " in " + path);
+            }
+            int n = in.readInt();
+            int k = in.readInt();
+            long fingerprint = in.readLong();
+            if (n != g.vertexCount() || fingerprint != fingerprint(g)) {
+                throw new IOException("Landmark file " + path + " was written for a different graph");
+            }
+            long[] ids = new long[k];
+            for (int i = 0; i < k; i++) {
+                ids[i] = in.readLong();
+            }
+            int[] from = new int[Math.multiplyExact(n, k)];
+            for (int i = 0; i < from.length; i++) {
+                from[i] = in.readInt();
+            }
+            int[] to = new int[from.length];
+            for (int i = 0; i < to.length; i++) {
+                to[i] = in.readInt();
+            }
+            return new Landmarks(n, ids, from, to, fingerprint);
+        } catch (EOFException ex) {
+            throw new IOException("Truncated landmark file: " + path, ex);
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package ch;
+
+/**
+ * Lower bound on shortest-path distances between dense vertices of a {@link CsrGraph},
+ * used as A* potential. Bounds must be consistent: for every arc (u, x) of weight w,
+ * lowerBound(u, t) <= w + lowerBound(x, t) and lowerBound(s, x) <= lowerBound(s, u) + w,
+ * which keeps the reduced arc weights of {@link AStar} non-negative.
+ */
+public interface LowerBound {
+    int lowerBound(int from, int to);
+
+    /**
+     * Bound to use for one query from s to t. Implementations may specialise to the pair,
+     * e.g. by picking the landmarks that bound d(s, t) best; the default is this bound.
+     */
+    default LowerBound forQuery(int s, int t) {
+        return this;
+    }
+}
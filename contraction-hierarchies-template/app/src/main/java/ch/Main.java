@@ -1,171 +1,503 @@
 package ch;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Locale;
-import java.util.Scanner;
 
 class Main {
 
     public static void main(String[] args) throws Exception {
-        if (args.length == 2 && "preprocess".equalsIgnoreCase(args[0])) {
-            runPreprocess(Path.of(args[1]));
+        if (args.length >= 2 && "preprocess".equalsIgnoreCase(args[0])) {
+            runPreprocess(Path.of(args[1]), PreprocessOptions.parse(args, 2));
+        } else if (args.length == 3 && "convert".equalsIgnoreCase(args[0])) {
+            runConvert(Path.of(args[1]), Path.of(args[2]));
+        } else if (args.length >= 2 && args.length <= 4 && "serve".equalsIgnoreCase(args[0])) {
+            int port = args.length >= 3 ? Integer.parseInt(args[2]) : -1;
+            int threads = args.length == 4 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+            runServe(Path.of(args[1]), port, threads);
+        } else if (args.length >= 3 && args.length <= 5 && "batch-query".equalsIgnoreCase(args[0])) {
+            Path pairs = args.length >= 4 && !"-".equals(args[3]) ? Path.of(args[3]) : null;
+            int threads = args.length == 5 ? Integer.parseInt(args[4]) : 1;
+            runBatchQuery(args[1], Path.of(args[2]), pairs, threads);
+        } else if (args.length >= 4 && args.length <= 5 && "distance-table".equalsIgnoreCase(args[0])) {
+            int threads = args.length == 5 ? Integer.parseInt(args[4]) : Runtime.getRuntime().availableProcessors();
+            runDistanceTable(Path.of(args[1]), Path.of(args[2]), Path.of(args[3]), threads);
+        } else if (args.length >= 3 && args.length <= 5 && "cch".equalsIgnoreCase(args[0])) {
+            Path updates = args.length >= 4 && !"-".equals(args[3]) ? Path.of(args[3]) : null;
+            int threads = args.length == 5 ? Integer.parseInt(args[4]) : Runtime.getRuntime().availableProcessors();
+            runCch(Path.of(args[1]), Path.of(args[2]), updates, threads);
+        } else if (args.length == 3 && "one-to-all".equalsIgnoreCase(args[0])) {
+            runOneToAll(Path.of(args[1]), Long.parseLong(args[2]));
         } else if (args.length == 4 && "query".equalsIgnoreCase(args[0])) {
             runQuery(Path.of(args[1]), Long.parseLong(args[2]), Long.parseLong(args[3]));
+        } else if (args.length == 5 && "query".equalsIgnoreCase(args[0]) && "--path".equals(args[4])) {
+            runRouteQuery(Path.of(args[1]), Long.parseLong(args[2]), Long.parseLong(args[3]));
+        } else if (args.length >= 4 && args.length <= 5 && "query-core".equalsIgnoreCase(args[0])) {
+            Path sidecar = args.length == 5 ? Path.of(args[4]) : landmarkSidecar(Path.of(args[1]));
+            runCoreQuery(Path.of(args[1]), Long.parseLong(args[2]), Long.parseLong(args[3]), sidecar);
         } else if (args.length == 4 && "query-raw".equalsIgnoreCase(args[0])) {
             runRawQuery(Path.of(args[1]), Long.parseLong(args[2]), Long.parseLong(args[3]));
         } else if (args.length == 4 && "query-dijkstra".equalsIgnoreCase(args[0])) {
             runDijkstraQuery(Path.of(args[1]), Long.parseLong(args[2]), Long.parseLong(args[3]));
+        } else if (args.length == 4 && "query-astar".equalsIgnoreCase(args[0])) {
+            runAStarQuery(Path.of(args[1]), Long.parseLong(args[2]), Long.parseLong(args[3]));
+        } else if (args.length >= 4 && args.length <= 5 && "query-alt".equalsIgnoreCase(args[0])) {
+            Path sidecar = args.length == 5 ? Path.of(args[4]) : landmarkSidecar(Path.of(args[1]));
+            runAltQuery(Path.of(args[1]), Long.parseLong(args[2]), Long.parseLong(args[3]), sidecar);
+        } else if (args.length >= 3 && args.length <= 6 && "landmarks".equalsIgnoreCase(args[0])) {
+            int count = args.length >= 4 ? Integer.parseInt(args[3]) : DEFAULT_LANDMARKS;
+            Landmarks.Selection selection = args.length >= 5 ? Landmarks.Selection.parse(args[4]) : Landmarks.Selection.AVOID;
+            int threads = args.length == 6 ? Integer.parseInt(args[5]) : Runtime.getRuntime().availableProcessors();
+            runLandmarks(Path.of(args[1]), Path.of(args[2]), count, selection, threads);
         } else {
             printUsage();
         }
     }
+    private static final int DEFAULT_LANDMARKS = 16;
     private static final String ALG_DIJKSTRA = "dijkstra";
     private static final String ALG_BIDIRECTIONAL = "bidirectional";
 
-    private static Graph readGraph(Scanner sc) {
-        int n = sc.nextInt();
-        int m = sc.nextInt();
+    private static void runPreprocess(Path output, PreprocessOptions options) throws IOException {
+        Graph graph = readOriginalGraphFromStdin();
+        ContractionHierachy ch = new ContractionHierachy(graph, options);
+        if (isBinaryOutput(output)) {
+            ch.storeBinary(output);
+        } else {
+            ch.storeGraph(output);
+        }
+        System.out.printf("Stored augmented graph at %s%n", output);
+    }
 
-        Graph g = new Graph();
+    private static void runQuery(Path augmented, long source, long target) throws IOException {
+        ChGraph graph = loadSearchGraph(augmented);
+        Result<Integer> result = ChQuery.shortestPath(graph, source, target);
+        System.out.printf("distance=%d relaxed=%d time(ns)=%d%n", result.result, result.relaxed, result.time);
+    }
+    
+    private static void runRouteQuery(Path augmented, long source, long target) throws IOException {
+        ChGraph graph = loadSearchGraph(augmented);
+        Result<Integer> result = ChQuery.route(graph, source, target, new PathUnpacker(graph));
+        System.out.printf("distance=%d relaxed=%d time(ns)=%d%n", result.result, result.relaxed, result.time);
+        StringBuilder path = new StringBuilder("path=");
+        if (result.path != null) {
+            for (int i = 0; i < result.path.length; i++) {
+                path.append(i == 0 ? "" : ",").append(result.path[i]);
+            }
+        }
+        System.out.println(path);
+    }
 
-        long id;
-        float x, y;
+    private static void runCoreQuery(Path augmented, long source, long target, Path sidecar) throws IOException {
+        CoreAlt query = loadCoreAlt(loadSearchGraph(augmented), sidecar);
+        Result<Integer> result = query.shortestPath(source, target);
+        System.out.printf("distance=%d relaxed=%d time(ns)=%d%n", result.result, result.relaxed, result.time);
+    }
 
-        for (int i = 0; i < n; i++) {
-            id = sc.nextLong();
-            x = Float.parseFloat(sc.next());
-            y = Float.parseFloat(sc.next());
+    // Core-ALT on g with the core's landmarks from the sidecar, which is written if missing.
+    private static CoreAlt loadCoreAlt(ChGraph graph, Path sidecar) throws IOException {
+        CsrGraph core = graph.core();
+        return new CoreAlt(graph, core, loadLandmarks(core, sidecar));
+    }
 
-            g.addVertex(id, new Graph.Vertex(x, y));
+    private static void runServe(Path augmented, int port, int threads) throws IOException, InterruptedException {
+        ChGraph graph = loadSearchGraph(augmented);
+        try (QueryServer server = new QueryServer(graph, threads)) {
+            if (port < 0) {
+                server.serve(new BufferedReader(new InputStreamReader(System.in, StandardCharsets.US_ASCII)),
+                        new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.US_ASCII)));
+                return;
+            }
+            int bound = server.start(port);
+            System.out.printf("Serving %s on 127.0.0.1:%d with %d threads%n", augmented, bound, threads);
+            server.join();
         }
+    }
 
-        long from, to;
-        int weight;
+    private static void runBatchQuery(String mode, Path graphPath, Path pairs, int threads) throws IOException {
+        BatchQuery.PairQuery query;
+        if ("query".equalsIgnoreCase(mode)) {
+            ChGraph graph = loadSearchGraph(graphPath);
+            query = (s, t) -> ChQuery.shortestPath(graph, s, t);
+        } else if ("query-core".equalsIgnoreCase(mode)) {
+            CoreAlt core = loadCoreAlt(loadSearchGraph(graphPath), landmarkSidecar(graphPath));
+            query = core::shortestPath;
+        } else if ("query-raw".equalsIgnoreCase(mode)) {
+            CsrGraph graph = readOriginalCsr(graphPath);
+            query = (s, t) -> BidirectionalDijkstra.shortestPath(graph, s, t);
+        } else if ("query-dijkstra".equalsIgnoreCase(mode)) {
+            CsrGraph graph = readOriginalCsr(graphPath);
+            query = (s, t) -> Dijkstra.shortestPath(graph, s, t);
+        } else if ("query-astar".equalsIgnoreCase(mode)) {
+            CsrGraph graph = readOriginalCsr(graphPath);
+            GeoBound bound = GeoBound.calibrate(graph);
+            query = (s, t) -> AStar.shortestPath(graph, s, t, bound);
+        } else if ("query-alt".equalsIgnoreCase(mode)) {
+            CsrGraph graph = readOriginalCsr(graphPath);
+            Landmarks landmarks = loadLandmarks(graph, landmarkSidecar(graphPath));
+            query = (s, t) -> AStar.bidirectional(graph, s, t, landmarks);
+        } else {
+            throw new IllegalArgumentException("Unknown batch-query mode " + mode);
+        }
+        BufferedReader in = pairs == null
+                ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.US_ASCII))
+                : Files.newBufferedReader(pairs, StandardCharsets.US_ASCII);
+        try (in) {
+            Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.US_ASCII), 1 << 16);
+            new BatchQuery(query, threads).run(in, out);
+        }
+    }
 
-        for (int i = 0; i < m; i++) {
-            from = sc.nextLong();
-            to = sc.nextLong();
-            weight = sc.nextInt();
-            g.addUndirectedEdge(from, to, weight);
+    // Writes the matrix as CSV: a header of target ids, then one row per source starting with its id.
+    private static void runDistanceTable(Path augmented, Path sourcesFile, Path targetsFile, int threads) throws IOException {
+        ChGraph graph = loadSearchGraph(augmented);
+        long[] sources = readIds(sourcesFile);
+        long[] targets = readIds(targetsFile);
+        int[] table = new DistanceTable(graph, threads).compute(sources, targets);
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.US_ASCII), 1 << 16);
+        StringBuilder row = new StringBuilder("source");
+        for (long target : targets) {
+            row.append(',').append(target);
+        }
+        out.append(row).append("\r\n");
+        for (int i = 0; i < sources.length; i++) {
+            row.setLength(0);
+            row.append(sources[i]);
+            for (int j = 0; j < targets.length; j++) {
+                row.append(',').append(table[i * targets.length + j]);
+            }
+            out.append(row).append("\r\n");
         }
+        out.flush();
+    }
 
-        return g;
+    // Orders and builds the CCH, customizes it with the graph's weights and then with the updates, and stores the result.
+    private static void runCch(Path originalGraph, Path output, Path updates, int threads) throws IOException {
+        CsrGraph graph = readOriginalCsr(originalGraph);
+        long start = System.nanoTime();
+        int[] rank = NestedDissection.order(graph, threads);
+        long ordered = System.nanoTime();
+        Cch cch = new Cch(graph, rank);
+        long built = System.nanoTime();
+        System.out.printf("CCH: nested dissection order in %d ms, topology with %,d edges in %,d levels in %d ms%n",
+                (ordered - start) / 1_000_000, cch.edgeCount(), cch.levelCount(), (built - ordered) / 1_000_000);
+
+        int[] weights = graph.outWeights.clone();
+        ChGraph customized = cch.customize(weights, threads);
+        System.out.printf("CCH: customized in %d ms on %d threads%n", (System.nanoTime() - built) / 1_000_000, threads);
+        if (updates != null) {
+            int changed = applyWeightUpdates(graph, weights, updates);
+            long recustomized = System.nanoTime();
+            customized = cch.customize(weights, threads);
+            System.out.printf("CCH: %,d updated arcs customized in %d ms%n", changed, (System.nanoTime() - recustomized) / 1_000_000);
+        }
+        customized.write(output);
+        System.out.printf("Stored customized graph at %s%n", output);
     }
-    
-    private static void runPreprocess(Path output) throws IOException {
-        try (Scanner sc = new Scanner(System.in)) {
-            Graph graph = readOriginalGraph(sc);
-            ContractionHierachy ch = new ContractionHierachy(graph);
-            ch.storeGraph(output);
-            System.out.printf("Stored augmented graph at %s%n", output);
+
+    /**
+     * Applies "from to weight" lines to weights, indexed like graph.outWeights; a weight of
+     * -1 closes the arc. Every arc from -> to is changed. Returns the number of changed arcs.
+     */
+    static int applyWeightUpdates(CsrGraph graph, int[] weights, Path updates) throws IOException {
+        int changed = 0;
+        for (String line : Files.readAllLines(updates, StandardCharsets.US_ASCII)) {
+            String trimmed = line.trim();
+            if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                continue;
+            }
+            String[] parts = trimmed.split("[\\s,]+");
+            if (parts.length != 3) {
+                throw new IllegalArgumentException("Expected 'from to weight', got: " + line);
+            }
+            int from = graph.indexOf(Long.parseLong(parts[0]));
+            int to = graph.indexOf(Long.parseLong(parts[1]));
+            int weight = Integer.parseInt(parts[2]);
+            int matched = 0;
+            for (int a = from < 0 ? 0 : graph.outOffsets[from], end = from < 0 ? 0 : graph.outOffsets[from + 1]; a < end; a++) {
+                if (graph.outTargets[a] == to) {
+                    weights[a] = weight == -1 ? Cch.CLOSED : weight;
+                    matched++;
+                }
+            }
+            if (matched == 0) {
+                throw new IllegalArgumentException("No arc " + parts[0] + " -> " + parts[1] + " in the graph");
+            }
+            changed += matched;
         }
+        return changed;
     }
 
-    private static void runQuery(Path augmented, long source, long target) throws IOException {
+    // Writes vertex,distance for every vertex reachable from source, in vertex id order.
+    private static void runOneToAll(Path augmented, long source) throws IOException {
+        ChGraph graph = loadSearchGraph(augmented);
+        long start = System.nanoTime();
+        int[] dist = new Phast(graph).distances(source);
+        long elapsed = System.nanoTime() - start;
+        if (dist == null) {
+            throw new IllegalArgumentException("Unknown source vertex " + source);
+        }
+        long[] ids = new long[dist.length];
+        for (int v = 0; v < ids.length; v++) {
+            ids[v] = graph.idOf(v);
+        }
+        Arrays.sort(ids); // rows by vertex id
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.US_ASCII), 1 << 16);
+        out.append("vertex,distance\r\n");
+        int reached = 0;
+        for (long id : ids) {
+            int d = dist[graph.indexOf(id)];
+            if (d >= 0) {
+                out.append(Long.toString(id)).append(',').append(Integer.toString(d)).append("\r\n");
+                reached++;
+            }
+        }
+        out.flush();
+        System.err.printf("reached=%d time(ns)=%d%n", reached, elapsed);
+    }
+
+    // Vertex ids separated by whitespace or commas; '#' starts a comment line.
+    private static long[] readIds(Path file) throws IOException {
+        long[] ids = new long[16];
+        int size = 0;
+        for (String line : Files.readAllLines(file, StandardCharsets.US_ASCII)) {
+            String trimmed = line.trim();
+            if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                continue;
+            }
+            for (String part : trimmed.split("[\\s,]+")) {
+                if (size == ids.length) {
+                    ids = Arrays.copyOf(ids, size * 2);
+                }
+                ids[size++] = Long.parseLong(part);
+            }
+        }
+        return Arrays.copyOf(ids, size);
+    }
+
+    // Binary graphs are mapped, text augmented graphs are parsed and split into upward arcs.
+    private static ChGraph loadSearchGraph(Path augmented) throws IOException {
+        if (ChGraph.isBinary(augmented)) {
+            return ChGraph.map(augmented);
+        }
         LoadedGraph loaded = readAugmentedGraph(augmented);
-        Result<Integer> result = BidirectionalDijkstra.shortestPath(loaded.graph, source, target, loaded.ranks);
-        System.out.printf("distance=%d relaxed=%d time(ns)=%d%n", result.result, result.relaxed, result.time);
+        return ChGraph.fromAugmented(loaded.graph, loaded.ranks);
     }
-    
+
+    private static void runConvert(Path augmented, Path output) throws IOException {
+        loadSearchGraph(augmented).write(output);
+        System.out.printf("Stored binary CH graph at %s%n", output);
+    }
+
+    private static boolean isBinaryOutput(Path output) {
+        return output.getFileName().toString().endsWith(".bin");
+    }
+
     private static void runRawQuery(Path originalGraph, long source, long target) throws IOException {
-        Graph graph = readOriginalGraph(originalGraph);
+        CsrGraph graph = readOriginalCsr(originalGraph);
         Result<Integer> result = BidirectionalDijkstra.shortestPath(graph, source, target);
         System.out.printf("distance=%d relaxed=%d time(ns)=%d%n", result.result, result.relaxed, result.time);
     }
 
     private static void runDijkstraQuery(Path originalGraph, long source, long target) throws IOException {
-        Graph graph = readOriginalGraph(originalGraph);
+        CsrGraph graph = readOriginalCsr(originalGraph);
         Result<Integer> result = Dijkstra.shortestPath(graph, source, target);
         System.out.printf("distance=%d relaxed=%d time(ns)=%d%n", result.result, result.relaxed, result.time);
     }
 
-    private static Graph readOriginalGraph(Path path) throws IOException {
-        try (Scanner sc = new Scanner(Files.newBufferedReader(path))) {
-            return readOriginalGraph(sc);
+    private static void runAStarQuery(Path originalGraph, long source, long target) throws IOException {
+        CsrGraph graph = readOriginalCsr(originalGraph);
+        Result<Integer> result = AStar.shortestPath(graph, source, target, GeoBound.calibrate(graph));
+        System.out.printf("distance=%d relaxed=%d time(ns)=%d%n", result.result, result.relaxed, result.time);
+    }
+
+    private static void runAltQuery(Path originalGraph, long source, long target, Path sidecar) throws IOException {
+        CsrGraph graph = readOriginalCsr(originalGraph);
+        Landmarks landmarks = loadLandmarks(graph, sidecar);
+        Result<Integer> result = AStar.bidirectional(graph, source, target, landmarks);
+        System.out.printf("distance=%d relaxed=%d time(ns)=%d%n", result.result, result.relaxed, result.time);
+    }
+
+    private static void runLandmarks(Path originalGraph, Path output, int count, Landmarks.Selection selection, int threads)
+            throws IOException {
+        CsrGraph graph = readOriginalCsr(originalGraph);
+        long start = System.nanoTime();
+        Landmarks landmarks = Landmarks.select(graph, count, selection, threads, 1);
+        landmarks.write(output);
+        System.out.printf("Stored %d landmarks at %s in %d ms%n", landmarks.count(), output, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    static Path landmarkSidecar(Path originalGraph) {
+        return originalGraph.resolveSibling(originalGraph.getFileName() + ".landmarks");
+    }
+
+    // Reads the sidecar, or selects landmarks with the defaults and writes it for the next run.
+    private static Landmarks loadLandmarks(CsrGraph graph, Path sidecar) throws IOException {
+        if (Files.exists(sidecar)) {
+            return Landmarks.read(sidecar, graph);
         }
+        Landmarks landmarks = Landmarks.select(graph, DEFAULT_LANDMARKS, Landmarks.Selection.AVOID,
+                Runtime.getRuntime().availableProcessors(), 1);
+        landmarks.write(sidecar);
+        System.err.printf("Stored %d landmarks at %s%n", landmarks.count(), sidecar);
+        return landmarks;
     }
- 
- 
-    private static Graph readOriginalGraph(Scanner sc) {
-        int n = sc.nextInt();
-        int m = sc.nextInt();
-        Graph g = new Graph();
+
+    static CsrGraph readOriginalCsr(Path path) throws IOException {
+        if (!path.getFileName().toString().endsWith(".gz")) {
+            return ParallelGraphLoader.read(path).toCsr();
+        }
+        try (GraphReader in = GraphReader.open(path)) {
+            return readOriginalCsr(in);
+        }
+    }
+
+    private static CsrGraph readOriginalCsr(GraphReader in) {
+        int n = in.nextInt();
+        int m = in.nextInt();
+        CsrGraph.Builder builder = new CsrGraph.Builder(n, 2 * m);
+        readOriginal(in, n, m, builder::addVertex, builder::addUndirectedEdge);
+        return builder.build();
+    }
+
+    /** Receives one vertex of {@link #readOriginal}. */
+    private interface VertexSink {
+        void add(long id, float x, float y);
+    }
+
+    // Reads the n vertex and m undirected edge lines that follow the "n m" header.
+    private static void readOriginal(GraphReader in, int n, int m, VertexSink vertices, Graph.ArcVisitor edges) {
         for (int i = 0; i < n; i++) {
-            long id = sc.nextLong();
-            float x = Float.parseFloat(sc.next());
-            float y = Float.parseFloat(sc.next());
-            g.addVertex(id, new Graph.Vertex(x, y));
+            long id = in.nextLong();
+            float x = in.nextFloat();
+            float y = in.nextFloat();
+            vertices.add(id, x, y);
         }
         int edgesRead = 0;
         for (int i = 0; i < m; i++) {
-            if (!sc.hasNextLong()) {
+            if (!in.hasNext()) {
                 throw new IllegalStateException("Expected edge " + i + " 'from' value");
             }
-            long from = sc.nextLong();
-            if (!sc.hasNextLong()) {
+            long from = in.nextLong();
+            if (!in.hasNext()) {
                 throw new IllegalStateException("Expected edge " + i + " 'to' value");
             }
-            long to = sc.nextLong();
-            if (!sc.hasNextInt()) {
+            long to = in.nextLong();
+            if (!in.hasNext()) {
                 throw new IllegalStateException("Expected edge " + i + " weight");
             }
-            int weight = sc.nextInt();
-            g.addUndirectedEdge(from, to, weight);
+            int weight = in.nextInt();
+            edges.visit(from, to, weight);
             edgesRead++;
         }
         if (edgesRead != m) {
             throw new IllegalStateException(
                     "Input declared " + m + " edges but only " + edgesRead + " were read");
         }
+    }
+
+    // A file redirected to stdin is seekable and can be loaded in parallel; pipes are read sequentially.
+    private static Graph readOriginalGraphFromStdin() throws IOException {
+        FileChannel stdin = new FileInputStream(FileDescriptor.in).getChannel();
+        boolean seekable;
+        try {
+            seekable = stdin.position() == 0 && stdin.size() > 0;
+        } catch (IOException ex) {
+            seekable = false;
+        }
+        if (seekable) {
+            return ParallelGraphLoader.read(stdin).toGraph();
+        }
+        try (GraphReader in = GraphReader.of(System.in)) {
+            return readOriginalGraph(in);
+        }
+    }
+
+    private static Graph readOriginalGraph(GraphReader in) {
+        int n = in.nextInt();
+        int m = in.nextInt();
+        Graph g = new Graph();
+        readOriginal(in, n, m, (id, x, y) -> g.addVertex(id, new Graph.Vertex(x, y)), g::addUndirectedEdge);
         return g;
     }
 
     private static LoadedGraph readAugmentedGraph(Path path) throws IOException {
-        try (Scanner sc = new Scanner(Files.newBufferedReader(path))) {
-            int n = sc.nextInt();
-            int m = sc.nextInt();
-            Graph g = new Graph();
-            Map<Long, Integer> ranks = new HashMap<>();
+        try (GraphReader in = GraphReader.open(path)) {
+            int n = in.nextInt();
+            int m = in.nextInt();
+            CsrGraph.Builder builder = new CsrGraph.Builder(n, m);
+            int[] ranks = new int[n];
 
             for (int i = 0; i < n; i++) {
-                long id = sc.nextLong();
-                float x = Float.parseFloat(sc.next());
-                float y = Float.parseFloat(sc.next());
-                int rank = sc.nextInt();
-                g.addVertex(id, new Graph.Vertex(x, y));
-                ranks.put(id, rank);
+                long id = in.nextLong();
+                float x = in.nextFloat();
+                float y = in.nextFloat();
+                int rank = in.nextInt();
+                ranks[builder.addVertex(id, x, y)] = rank;
             }
 
             for (int i = 0; i < m; i++) {
-                long from = sc.nextLong();
-                long to = sc.nextLong();
-                int weight = sc.nextInt();
-                long via = sc.nextLong();
-                g.addEdge(from, to, via, weight);
+                long from = in.nextLong();
+                long to = in.nextLong();
+                int weight = in.nextInt();
+                long via = in.nextLong();
+                builder.addEdge(from, to, weight, via);
             }
-            return new LoadedGraph(g, ranks);
+
+            return new LoadedGraph(builder.build(), ranks);
         }
     }
 
     private static void printUsage() {
         System.out.println("Usage:");
-        System.out.println("  preprocess <output.graph>   # reads original graph from stdin");
-        System.out.println("  query <augmented.graph> <source> <target>");
+        System.out.println("  preprocess <output.graph> [--threads N] [--priority W] [--witness-hops H] [--witness-settled S] [--update U] [--full-update K] [--update-threads N] [--checkpoint F] [--checkpoint-every K] [--resume F] [--core C]   # reads original graph from stdin; a .bin output is written in binary");
+        System.out.println("      --threads N   contract independent vertex sets in parallel rounds (default 1: sequential)");
+        System.out.println("      --priority W  order by weights 'edgeDifference,deletedNeighbours,depth,originalArcs' with witness-searched");
+        System.out.println("                    edge differences, or 'default' (" + NodePriority.DEFAULT + "); without it the legacy edge difference is used");
+        System.out.println("      --witness-hops H, --witness-settled S   bound witness searches to H arcs per path (default "
+                + ContractionGraph.MAX_WITNESS_HOPS + ") and S settled vertices (default unbounded)");
+        System.out.println("      --update lazy|neighbours|both   re-check the queue top (lazy, default), recompute the neighbours of each");
+        System.out.println("                    contracted vertex, or both; --full-update K re-evaluates every queued vertex after K contractions;");
+        System.out.println("                    --update-threads N runs those re-evaluations in parallel; none of them work with --threads");
+        System.out.println("      --checkpoint F   write the run's state to F in the background at every progress line, or every K");
+        System.out.println("                    contractions with --checkpoint-every K; --resume F continues a run from F (same input graph)");
+        System.out.println("      --core C   stop contracting when C vertices (or C% with a percent sign) are left; query them with query-core");
+        System.out.println("  convert <augmented.graph> <output.bin>   # converts a text augmented graph to the binary format");
+        System.out.println("  cch <graph> <output.bin> [updates.txt|-] [threads]   # customizable CH: metric-independent order and topology,");
+        System.out.println("                    customized with the graph's weights and then with 'from to weight' updates (-1 closes an arc)");
+        System.out.println("  query <augmented.graph|augmented.bin> <source> <target> [--path]   # --path also prints the route");
+        System.out.println("  one-to-all <augmented.graph|augmented.bin> <source>   # CSV of the distance to every reachable vertex (PHAST sweep)");
+        System.out.println("  distance-table <augmented.graph|augmented.bin> <sources.txt> <targets.txt> [threads]   # CSV matrix of all source-target distances");
+        System.out.println("  serve <augmented.graph|augmented.bin> [port] [threads]   # answers '<source> <target>' lines on stdin, or on a loopback TCP port");
+        System.out.println("  query-core <augmented.graph|augmented.bin> <source> <target> [landmarks]   # CH searches into the core, ALT inside it;");
+        System.out.println("                    landmarks default to <augmented>.landmarks, which is computed for the core and written if missing");
         System.out.println("  query-raw <graph> <source> <target>   # run queries on unprocessed graph files");
         System.out.println("  query-dijkstra <graph> <source> <target>   # run plain Dijkstra on unprocessed graphs");
+        System.out.println("  query-astar <graph> <source> <target>   # A* with a geographic lower bound on unprocessed graphs");
+        System.out.println("  query-alt <graph> <source> <target> [landmarks]   # bidirectional ALT; landmarks default to <graph>.landmarks,");
+        System.out.println("                    which is computed and written if missing");
+        System.out.println("  landmarks <graph> <output> [k] [farthest|avoid] [threads]   # precompute k landmarks (default "
+                + DEFAULT_LANDMARKS + ", avoid)");
+        System.out.println("  batch-query <query|query-core|query-raw|query-dijkstra|query-astar|query-alt> <graph> [pairs.txt|-] [threads]   # CSV rows for many pairs");
     }
 
     private static final class LoadedGraph {
-        final Graph graph;
-        final Map<Long, Integer> ranks;
+        final CsrGraph graph;
+        final int[] ranks; // indexed by dense vertex index
 
-        LoadedGraph(Graph graph, Map<Long, Integer> ranks) {
+        LoadedGraph(CsrGraph graph, int[] ranks) {
             this.graph = graph;
             this.ranks = ranks;
         }
@@ -0,0 +1,185 @@
+package ch;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Metric-independent vertex order for {@link Cch}: geometric nested dissection. Each part
+ * is sorted along four directions (x, y and both diagonals); for each the sweep finds the
+ * position between 35% and 65% of the part that cuts the fewest arcs, and the best one
+ * over all directions wins. The vertices on the smaller side of that cut form the
+ * separator. Separator vertices are ranked above both halves, which are ordered the same
+ * way, recursively and in parallel. Parts of at most {@link #LEAF} vertices keep their order.
+ *
+ * Only the arcs and coordinates are used, never the weights, so the order stays valid for
+ * every metric.
+ */
+public final class NestedDissection {
+    static final int LEAF = 8;
+    private static final float[][] DIRECTIONS = {{1, 0}, {0, 1}, {1, 1}, {1, -1}};
+    private static final double MIN_BALANCE = 0.35;
+
+    private final CsrGraph g;
+    private final int[] perm;     // vertices; every part owns a range, its separator at the end
+    private final int[] stamp;    // id of the part a vertex currently belongs to
+    private final int[] position; // position in the part's current sweep order, -1 in the separator
+    private final AtomicInteger parts = new AtomicInteger();
+
+    private NestedDissection(CsrGraph g) {
+        this.g = g;
+        int n = g.vertexCount();
+        this.perm = new int[n];
+        for (int v = 0; v < n; v++) {
+            perm[v] = v;
+        }
+        this.stamp = new int[n];
+        this.position = new int[n];
+    }
+
+    /**
+     * Rank of every dense vertex index of g, a permutation of 0..n-1; parts are
+     * dissected on threads workers.
+     */
+    public static int[] order(CsrGraph g, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Thread count must be positive, got " + threads);
+        }
+        NestedDissection nd = new NestedDissection(g);
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            pool.invoke(nd.new Part(0, g.vertexCount()));
+        } finally {
+            pool.shutdown();
+        }
+        int[] rank = new int[g.vertexCount()];
+        for (int i = 0; i < rank.length; i++) {
+            rank[nd.perm[i]] = i;
+        }
+        return rank;
+    }
+
+    // Dissects perm[lo..hi). Sibling parts touch disjoint vertices, so the shared arrays need no locks.
+    private final class Part extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int lo;
+        private final int hi;
+
+        Part(int lo, int hi) {
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        protected void compute() {
+            int size = hi - lo;
+            if (size <= LEAF) {
+                return;
+            }
+            int id = parts.incrementAndGet();
+            for (int i = lo; i < hi; i++) {
+                stamp[perm[i]] = id;
+            }
+
+            int[] best = null;
+            int bestSplit = -1;
+            long bestCut = Long.MAX_VALUE;
+            for (float[] direction : DIRECTIONS) {
+                int[] sorted = sortAlong(direction[0], direction[1]);
+                int min = Math.max(1, (int) (size * MIN_BALANCE));
+                int max = Math.min(size - 1, size - min);
+                long cut = 0;
+                for (int i = 0; i < max; i++) {
+                    // Moving sorted[i] to the left side cuts its arcs to the right and joins those to the left
+                    int v = sorted[i];
+                    cut += neighbours(v, id, i, true) - neighbours(v, id, i, false);
+                    int split = i + 1;
+                    if (split >= min && (cut < bestCut
+                            || (cut == bestCut && Math.abs(2 * split - size) < Math.abs(2 * bestSplit - size)))) {
+                        bestCut = cut;
+                        bestSplit = split;
+                        best = sorted;
+                    }
+                }
+            }
+
+            for (int i = 0; i < size; i++) {
+                position[best[i]] = i;
+            }
+            int[] leftBoundary = boundary(best, 0, bestSplit, id, bestSplit, true);
+            int[] rightBoundary = boundary(best, bestSplit, size, id, bestSplit, false);
+            int[] separator = leftBoundary.length <= rightBoundary.length ? leftBoundary : rightBoundary;
+            for (int v : separator) {
+                position[v] = -1;
+            }
+
+            int next = lo;
+            for (int i = 0; i < bestSplit; i++) {
+                if (position[best[i]] >= 0) {
+                    perm[next++] = best[i];
+                }
+            }
+            int mid = next;
+            for (int i = bestSplit; i < size; i++) {
+                if (position[best[i]] >= 0) {
+                    perm[next++] = best[i];
+                }
+            }
+            int end = next;
+            System.arraycopy(separator, 0, perm, end, separator.length);
+            invokeAll(new Part(lo, mid), new Part(mid, end));
+        }
+
+        // The part's vertices sorted by their projection on (dx, dy), ties by index.
+        private int[] sortAlong(float dx, float dy) {
+            long[] keys = new long[hi - lo];
+            for (int i = lo; i < hi; i++) {
+                int v = perm[i];
+                int bits = Float.floatToIntBits(g.xs[v] * dx + g.ys[v] * dy);
+                bits ^= (bits >> 31) & 0x7fffffff; // orders negative floats as ints
+                keys[i - lo] = ((long) bits << 32) | v;
+            }
+            Arrays.sort(keys);
+            int[] sorted = new int[keys.length];
+            for (int i = 0; i < keys.length; i++) {
+                sorted[i] = (int) keys[i];
+                position[sorted[i]] = i;
+            }
+            return sorted;
+        }
+
+        // Arcs from or to v whose other end is in the part at a position after (or before) i.
+        private int neighbours(int v, int id, int i, boolean after) {
+            int count = 0;
+            for (int a = g.outOffsets[v]; a < g.outOffsets[v + 1]; a++) {
+                count += side(g.outTargets[a], id, i, after);
+            }
+            for (int a = g.inOffsets[v]; a < g.inOffsets[v + 1]; a++) {
+                count += side(g.inSources[a], id, i, after);
+            }
+            return count;
+        }
+
+        private int side(int w, int id, int i, boolean after) {
+            if (stamp[w] != id) {
+                return 0;
+            }
+            return (after ? position[w] > i : position[w] < i) ? 1 : 0;
+        }
+
+        // Vertices of sorted[from..to) with a neighbour on the other side of split.
+        private int[] boundary(int[] sorted, int from, int to, int id, int split, boolean left) {
+            int[] result = new int[to - from];
+            int count = 0;
+            for (int i = from; i < to; i++) {
+                int v = sorted[i];
+                if (left ? neighbours(v, id, split - 1, true) > 0 : neighbours(v, id, split, false) > 0) {
+                    result[count++] = v;
+                }
+            }
+            return Arrays.copyOf(result, count);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package ch;
+
+/**
+ * Weighted node-ordering priority, lower is contracted first:
+ *
+ *   edgeDifference * (shortcuts added - arcs removed)
+ *   + deletedNeighbours * (neighbours contracted before)
+ *   + depth * (hierarchy depth reached so far)
+ *   + originalArcs * (original arcs in the added shortcuts - original arcs in the removed arcs)
+ *
+ * The edge difference comes from a simulated contraction with real witness searches,
+ * unlike {@link ContractionGraph#getEdgeDifference}, which counts every unconnected neighbour pair.
+ */
+public final class NodePriority {
+    public static final NodePriority DEFAULT = new NodePriority(2, 1, 1, 1);
+
+    final int edgeDifference;
+    final int deletedNeighbours;
+    final int depth;
+    final int originalArcs;
+
+    public NodePriority(int edgeDifference, int deletedNeighbours, int depth, int originalArcs) {
+        this.edgeDifference = edgeDifference;
+        this.deletedNeighbours = deletedNeighbours;
+        this.depth = depth;
+        this.originalArcs = originalArcs;
+    }
+
+    int evaluate(ContractionGraph.Simulation simulation, int deletedNeighbourCount, int vertexDepth) {
+        long priority = (long) edgeDifference * simulation.edgeDifference()
+                + (long) deletedNeighbours * deletedNeighbourCount
+                + (long) depth * vertexDepth
+                + (long) originalArcs * simulation.originalArcDifference();
+        return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, priority));
+    }
+
+    /**
+     * Parses "edgeDifference,deletedNeighbours,depth,originalArcs", or "default".
+     */
+    public static NodePriority parse(String spec) {
+        if ("default".equalsIgnoreCase(spec)) {
+            return DEFAULT;
+        }
+        String[] parts = spec.split(",");
+        if (parts.length != 4) {
+            throw new IllegalArgumentException(
+                    "Priority weights must be 'edgeDifference,deletedNeighbours,depth,originalArcs', got " + spec);
+        }
+        int[] weights = new int[4];
+        for (int i = 0; i < 4; i++) {
+            try {
+                weights[i] = Integer.parseInt(parts[i].trim());
+            } catch (NumberFormatException ex) {
+                throw new IllegalArgumentException("Priority weight '" + parts[i] + "' is not an integer", ex);
+            }
+        }
+        return new NodePriority(weights[0], weights[1], weights[2], weights[3]);
+    }
+
+    @Override
+    public String toString() {
+        return edgeDifference + "," + deletedNeighbours + "," + depth + "," + originalArcs;
+    }
+}
@@ -0,0 +1,328 @@
+package ch;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Loads an original .graph file (header "n m", n vertex lines, m edge lines) on all
+ * cores. The vertex and edge sections are cut into byte ranges at newline boundaries,
+ * every range is parsed by its own {@link GraphReader} into primitive buffers, and the
+ * buffers are merged into a {@link CsrGraph} with a parallel counting sort, or into a
+ * {@link Graph} for preprocessing. Needs a seekable, uncompressed file with one record
+ * per line; everything else goes through the sequential reader.
+ */
+public final class ParallelGraphLoader {
+    private static final int SCAN_BYTES = 1 << 16;
+
+    final int n;
+    final int m;
+    final long[] ids;
+    final float[] xs;
+    final float[] ys;
+    final long[] edgeFrom;
+    final long[] edgeTo;
+    final int[] edgeWeight;
+
+    private ParallelGraphLoader(int n, int m, long[] ids, float[] xs, float[] ys,
+                                long[] edgeFrom, long[] edgeTo, int[] edgeWeight) {
+        this.n = n;
+        this.m = m;
+        this.ids = ids;
+        this.xs = xs;
+        this.ys = ys;
+        this.edgeFrom = edgeFrom;
+        this.edgeTo = edgeTo;
+        this.edgeWeight = edgeWeight;
+    }
+
+    public static ParallelGraphLoader read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return read(channel);
+        }
+    }
+
+    /**
+     * Parses the whole channel from offset 0 with one task per range on the common pool.
+     */
+    public static ParallelGraphLoader read(FileChannel channel) throws IOException {
+        long size = channel.size();
+        int ranges = 4 * ForkJoinPool.getCommonPoolParallelism();
+
+        long headerEnd = afterNewlines(channel, 0, size, 1);
+        int n;
+        int m;
+        try (GraphReader header = GraphReader.range(channel, 0, headerEnd)) {
+            n = header.nextInt();
+            m = header.nextInt();
+        }
+
+        // The edge section starts after the n vertex lines; count newlines per range to find it.
+        long[] bounds = evenBounds(headerEnd, size, ranges);
+        long[] newlines = new long[ranges];
+        parallel(ranges, r -> newlines[r] = countNewlines(channel, bounds[r], bounds[r + 1]));
+        long edgeStart = size;
+        long seen = 0;
+        for (int r = 0; r < ranges; r++) {
+            if (seen + newlines[r] >= n) {
+                edgeStart = afterNewlines(channel, bounds[r], bounds[r + 1], n - seen);
+                break;
+            }
+            seen += newlines[r];
+        }
+        if (n == 0) {
+            edgeStart = headerEnd;
+        }
+
+        long[] vertexBounds = lineBounds(channel, headerEnd, edgeStart, ranges);
+        VertexChunk[] vertexChunks = new VertexChunk[vertexBounds.length - 1];
+        parallel(vertexChunks.length, r -> vertexChunks[r] = VertexChunk.parse(channel, vertexBounds[r], vertexBounds[r + 1]));
+
+        long[] edgeBounds = lineBounds(channel, edgeStart, size, ranges);
+        EdgeChunk[] edgeChunks = new EdgeChunk[edgeBounds.length - 1];
+        parallel(edgeChunks.length, r -> edgeChunks[r] = EdgeChunk.parse(channel, edgeBounds[r], edgeBounds[r + 1]));
+
+        // Concatenate the per-range buffers in file order
+        int[] vertexStart = new int[vertexChunks.length + 1];
+        for (int r = 0; r < vertexChunks.length; r++) {
+            vertexStart[r + 1] = vertexStart[r] + vertexChunks[r].size;
+        }
+        if (vertexStart[vertexChunks.length] != n) {
+            throw new IllegalStateException(
+                    "Input declared " + n + " vertices but only " + vertexStart[vertexChunks.length] + " were read");
+        }
+        long[] edgeStartAt = new long[edgeChunks.length + 1];
+        for (int r = 0; r < edgeChunks.length; r++) {
+            edgeStartAt[r + 1] = edgeStartAt[r] + edgeChunks[r].size;
+        }
+        if (edgeStartAt[edgeChunks.length] < m) {
+            throw new IllegalStateException(
+                    "Input declared " + m + " edges but only " + edgeStartAt[edgeChunks.length] + " were read");
+        }
+
+        long[] ids = new long[n];
+        float[] xs = new float[n];
+        float[] ys = new float[n];
+        parallel(vertexChunks.length, r -> {
+            VertexChunk chunk = vertexChunks[r];
+            System.arraycopy(chunk.ids, 0, ids, vertexStart[r], chunk.size);
+            System.arraycopy(chunk.xs, 0, xs, vertexStart[r], chunk.size);
+            System.arraycopy(chunk.ys, 0, ys, vertexStart[r], chunk.size);
+        });
+        long[] edgeFrom = new long[m];
+        long[] edgeTo = new long[m];
+        int[] edgeWeight = new int[m];
+        parallel(edgeChunks.length, r -> {
+            // Lines past the declared m edges are ignored, as in the sequential reader
+            EdgeChunk chunk = edgeChunks[r];
+            int start = (int) Math.min(m, edgeStartAt[r]);
+            int count = (int) Math.min(m, edgeStartAt[r + 1]) - start;
+            System.arraycopy(chunk.from, 0, edgeFrom, start, count);
+            System.arraycopy(chunk.to, 0, edgeTo, start, count);
+            System.arraycopy(chunk.weight, 0, edgeWeight, start, count);
+        });
+        return new ParallelGraphLoader(n, m, ids, xs, ys, edgeFrom, edgeTo, edgeWeight);
+    }
+
+    /**
+     * CSR graph with both directions of every edge, laid out like {@link CsrGraph.Builder} would.
+     */
+    public CsrGraph toCsr() {
+        VertexIndex index = new VertexIndex(n);
+        for (int i = 0; i < n; i++) {
+            int before = index.size();
+            if (index.add(ids[i]) < before) {
+                throw new IllegalStateException("Duplicate vertex id " + ids[i]);
+            }
+        }
+        int arcs = 2 * m;
+        int[] arcFrom = new int[arcs];
+        int[] arcTo = new int[arcs];
+        int[] arcWeight = new int[arcs];
+        int[] arcVia = new int[arcs];
+        IntStream.range(0, m).parallel().forEach(e -> {
+            int u = resolve(index, edgeFrom[e]);
+            int v = resolve(index, edgeTo[e]);
+            arcFrom[2 * e] = u;
+            arcTo[2 * e] = v;
+            arcFrom[2 * e + 1] = v;
+            arcTo[2 * e + 1] = u;
+            arcWeight[2 * e] = edgeWeight[e];
+            arcWeight[2 * e + 1] = edgeWeight[e];
+            arcVia[2 * e] = -1;
+            arcVia[2 * e + 1] = -1;
+        });
+        return CsrGraph.fromArcs(index, xs, ys, arcFrom, arcTo, arcWeight, arcVia, arcs, true);
+    }
+
+    /**
+     * Adjacency-list graph for preprocessing; the hash maps of Graph are filled sequentially.
+     */
+    public Graph toGraph() {
+        Graph g = new Graph();
+        for (int i = 0; i < n; i++) {
+            g.addVertex(ids[i], new Graph.Vertex(xs[i], ys[i]));
+        }
+        for (int e = 0; e < m; e++) {
+            g.addUndirectedEdge(edgeFrom[e], edgeTo[e], edgeWeight[e]);
+        }
+        return g;
+    }
+
+    private static int resolve(VertexIndex index, long id) {
+        int v = index.indexOf(id);
+        if (v < 0) {
+            throw new IllegalStateException("Edge references unknown vertex " + id);
+        }
+        return v;
+    }
+
+    private interface RangeTask {
+        void run(int range) throws IOException;
+    }
+
+    private static void parallel(int count, RangeTask task) throws IOException {
+        try {
+            IntStream.range(0, count).parallel().forEach(r -> {
+                try {
+                    task.run(r);
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            });
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+    }
+
+    private static long[] evenBounds(long start, long end, int ranges) {
+        long[] bounds = new long[ranges + 1];
+        for (int r = 0; r <= ranges; r++) {
+            bounds[r] = start + (end - start) * r / ranges;
+        }
+        return bounds;
+    }
+
+    // Splits start..end into at most ranges pieces that each begin at the start of a line.
+    private static long[] lineBounds(FileChannel channel, long start, long end, int ranges) throws IOException {
+        long[] bounds = evenBounds(start, end, ranges);
+        for (int r = 1; r < ranges; r++) {
+            bounds[r] = Math.max(bounds[r - 1], afterNewlines(channel, bounds[r] - 1, end, 1));
+        }
+        int distinct = 1;
+        for (int r = 1; r <= ranges; r++) {
+            if (bounds[r] != bounds[distinct - 1]) {
+                bounds[distinct++] = bounds[r];
+            }
+        }
+        return distinct == 1 ? new long[] {start, end} : Arrays.copyOf(bounds, distinct);
+    }
+
+    private static long countNewlines(FileChannel channel, long start, long end) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(SCAN_BYTES);
+        long count = 0;
+        for (long position = start; position < end; ) {
+            int read = readAt(channel, buffer, position, end);
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    count++;
+                }
+            }
+            position += read;
+        }
+        return count;
+    }
+
+    // Offset just past the count-th newline at or after start, or end if there are fewer.
+    private static long afterNewlines(FileChannel channel, long start, long end, long count) throws IOException {
+        if (count <= 0) {
+            return start;
+        }
+        ByteBuffer buffer = ByteBuffer.allocateDirect(SCAN_BYTES);
+        for (long position = start; position < end; ) {
+            int read = readAt(channel, buffer, position, end);
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n' && --count == 0) {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return end;
+    }
+
+    private static int readAt(FileChannel channel, ByteBuffer buffer, long position, long end) throws IOException {
+        buffer.clear();
+        buffer.limit((int) Math.min(buffer.capacity(), end - position));
+        int total = 0;
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + total);
+            if (read < 0) {
+                break;
+            }
+            total += read;
+        }
+        if (total == 0) {
+            throw new IOException("Unexpected end of file at byte " + position);
+        }
+        return total;
+    }
+
+    private static final class VertexChunk {
+        long[] ids = new long[1024];
+        float[] xs = new float[1024];
+        float[] ys = new float[1024];
+        int size;
+
+        static VertexChunk parse(FileChannel channel, long start, long end) throws IOException {
+            VertexChunk chunk = new VertexChunk();
+            try (GraphReader in = GraphReader.range(channel, start, end)) {
+                while (in.hasNext()) {
+                    if (chunk.size == chunk.ids.length) {
+                        int grown = chunk.size * 2;
+                        chunk.ids = Arrays.copyOf(chunk.ids, grown);
+                        chunk.xs = Arrays.copyOf(chunk.xs, grown);
+                        chunk.ys = Arrays.copyOf(chunk.ys, grown);
+                    }
+                    chunk.ids[chunk.size] = in.nextLong();
+                    chunk.xs[chunk.size] = in.nextFloat();
+                    chunk.ys[chunk.size] = in.nextFloat();
+                    chunk.size++;
+                }
+            }
+            return chunk;
+        }
+    }
+
+    private static final class EdgeChunk {
+        long[] from = new long[1024];
+        long[] to = new long[1024];
+        int[] weight = new int[1024];
+        int size;
+
+        static EdgeChunk parse(FileChannel channel, long start, long end) throws IOException {
+            EdgeChunk chunk = new EdgeChunk();
+            try (GraphReader in = GraphReader.range(channel, start, end)) {
+                while (in.hasNext()) {
+                    if (chunk.size == chunk.from.length) {
+                        int grown = chunk.size * 2;
+                        chunk.from = Arrays.copyOf(chunk.from, grown);
+                        chunk.to = Arrays.copyOf(chunk.to, grown);
+                        chunk.weight = Arrays.copyOf(chunk.weight, grown);
+                    }
+                    chunk.from[chunk.size] = in.nextLong();
+                    chunk.to[chunk.size] = in.nextLong();
+                    chunk.weight[chunk.size] = in.nextInt();
+                    chunk.size++;
+                }
+            }
+            return chunk;
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package ch;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Turns the parent arcs of a finished {@link ChQuery} search into the route over
+ * original arcs. A shortcut u -> w with via v is replaced by u -> v (a downward arc,
+ * stored as backward arc at v) and v -> w (an upward arc, stored as forward arc at v),
+ * repeatedly, with an explicit stack instead of recursion.
+ *
+ * Optionally the expansions of the shortcuts at the top of the hierarchy, which most
+ * long routes use, are computed once up front so they are copied instead of unpacked.
+ * The cache is read-only after construction, so one unpacker can serve many threads.
+ */
+public final class PathUnpacker {
+    private final ChGraph g;
+    private final int forwardArcs;
+    private final Map<Integer, int[]> cache; // arc code -> vertices after the tail, ending with the head
+    private int cachedVertices;
+
+    public PathUnpacker(ChGraph g) {
+        this(g, 0);
+    }
+
+    /**
+     * cacheBudget is the number of vertex entries the precomputed expansions may hold in total.
+     */
+    public PathUnpacker(ChGraph g, int cacheBudget) {
+        this.g = g;
+        this.forwardArcs = g.forwardArcCount();
+        this.cache = new HashMap<>();
+        if (cacheBudget > 0) {
+            precompute(cacheBudget);
+        }
+    }
+
+    public int cachedShortcuts() {
+        return cache.size();
+    }
+
+    public int cachedVertices() {
+        return cachedVertices;
+    }
+
+    /**
+     * Vertex ids from source to target for the search last run on ws.
+     */
+    long[] unpack(SearchWorkspace ws, int source, int target) {
+        int meeting = ws.meeting;
+        if (meeting < 0) {
+            return null;
+        }
+        // Forward half: walk from the meeting vertex back to the source, then reverse.
+        IntList upward = new IntList();
+        for (int v = meeting; v != source; ) {
+            int arc = ws.forwardParent[v];
+            upward.add(arc);
+            v = owner(g.forwardOffsets, arc);
+        }
+        IntList path = new IntList();
+        path.add(source);
+        IntList stack = new IntList();
+        for (int i = upward.size - 1; i >= 0; i--) {
+            int arc = upward.values[i];
+            expand(arc, owner(g.forwardOffsets, arc), g.forwardHeads.get(arc), path, stack);
+        }
+        // Backward half: every parent arc leads from the current vertex down towards the target.
+        for (int v = meeting; v != target; ) {
+            int arc = ws.backwardParent[v];
+            int next = owner(g.backwardOffsets, arc);
+            expand(forwardArcs + arc, v, next, path, stack);
+            v = next;
+        }
+
+        long[] ids = new long[path.size];
+        for (int i = 0; i < path.size; i++) {
+            ids[i] = g.idOf(path.values[i]);
+        }
+        return ids;
+    }
+
+    // Appends the vertices of arc code (tail -> head) after tail, through head.
+    private void expand(int code, int tail, int head, IntList out, IntList stack) {
+        stack.size = 0;
+        stack.add(code);
+        stack.add(tail);
+        stack.add(head);
+        while (stack.size > 0) {
+            int to = stack.values[--stack.size];
+            int from = stack.values[--stack.size];
+            int c = stack.values[--stack.size];
+            int[] cached = cache.get(c);
+            if (cached != null) {
+                out.addAll(cached);
+                continue;
+            }
+            int via = via(c);
+            if (via < 0) {
+                out.add(to);
+                continue;
+            }
+            int first = -1;
+            int second = -1;
+            int weight = weight(c);
+            // from -> via is stored at via as a backward arc, via -> to as a forward arc
+            for (int a = g.backwardOffsets.get(via); a < g.backwardOffsets.get(via + 1) && second < 0; a++) {
+                if (g.backwardHeads.get(a) != from) {
+                    continue;
+                }
+                int rest = weight - g.backwardWeights.get(a);
+                for (int b = g.forwardOffsets.get(via); b < g.forwardOffsets.get(via + 1); b++) {
+                    if (g.forwardHeads.get(b) == to && g.forwardWeights.get(b) == rest) {
+                        first = forwardArcs + a;
+                        second = b;
+                        break;
+                    }
+                }
+            }
+            if (second < 0) {
+                throw new IllegalStateException("Shortcut " + g.idOf(from) + " -> " + g.idOf(to)
+                        + " via " + g.idOf(via) + " has no matching arcs to unpack");
+            }
+            stack.add(second);
+            stack.add(via);
+            stack.add(to);
+            stack.add(first);
+            stack.add(from);
+            stack.add(via);
+        }
+    }
+
+    // Expands shortcuts starting at the highest vertex numbers, i.e. the highest ranks, until the budget is used.
+    private void precompute(int budget) {
+        IntList out = new IntList();
+        IntList stack = new IntList();
+        for (int u = g.vertexCount() - 1; u >= 0; u--) {
+            for (int a = g.forwardOffsets.get(u); a < g.forwardOffsets.get(u + 1); a++) {
+                if (!cacheArc(a, u, g.forwardHeads.get(a), budget, out, stack)) {
+                    return;
+                }
+            }
+            for (int a = g.backwardOffsets.get(u); a < g.backwardOffsets.get(u + 1); a++) {
+                if (!cacheArc(forwardArcs + a, g.backwardHeads.get(a), u, budget, out, stack)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private boolean cacheArc(int code, int tail, int head, int budget, IntList out, IntList stack) {
+        if (via(code) < 0) {
+            return true;
+        }
+        out.size = 0;
+        expand(code, tail, head, out, stack);
+        if (cachedVertices + out.size > budget) {
+            return false;
+        }
+        cache.put(code, Arrays.copyOf(out.values, out.size));
+        cachedVertices += out.size;
+        return true;
+    }
+
+    private int via(int code) {
+        return code < forwardArcs ? g.forwardVia.get(code) : g.backwardVia.get(code - forwardArcs);
+    }
+
+    private int weight(int code) {
+        return code < forwardArcs ? g.forwardWeights.get(code) : g.backwardWeights.get(code - forwardArcs);
+    }
+
+    // Vertex whose arc range contains arc.
+    private static int owner(IntBuffer offsets, int arc) {
+        int lo = 0;
+        int hi = offsets.limit() - 2;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (offsets.get(mid) <= arc) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return lo;
+    }
+
+    private static final class IntList {
+        int[] values = new int[16];
+        int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        void addAll(int[] more) {
+            if (size + more.length > values.length) {
+                values = Arrays.copyOf(values, Math.max(size * 2, size + more.length));
+            }
+            System.arraycopy(more, 0, values, size, more.length);
+            size += more.length;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package ch;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * One-to-all distances on a {@link ChGraph} in the style of PHAST: an upward search from
+ * the source, then one linear sweep over all vertices from the highest rank down. The
+ * downward arcs into v are its backward arcs and come from higher ranked vertices, which
+ * the rank-ordered numbering puts at larger indices, so every tail is final before the
+ * sweep reaches v and no priority queue is needed. With an uncontracted core the upward
+ * search already settles every core vertex exactly, so the arcs inside the core do no harm.
+ *
+ * Several sources can share one sweep. Their distances are interleaved per vertex, so
+ * relaxing an arc is a min-plus over a short contiguous int run that the JIT can
+ * vectorise, and the arcs are read once per batch instead of once per source.
+ *
+ * Results are indexed by the dense vertex index of the ChGraph ({@link ChGraph#idOf});
+ * unreachable vertices get -1.
+ *
+ * An instance reuses its heap and distance buffer between calls and is not thread-safe;
+ * threads share the ChGraph but each needs its own Phast.
+ */
+public final class Phast {
+    /** Most sources swept together; 16 ints fill a 512-bit vector. */
+    public static final int MAX_LANES = 16;
+
+    // Half of Integer.MAX_VALUE, so unreached + arc weight cannot overflow in the sweep
+    private static final int UNREACHED = Integer.MAX_VALUE / 2;
+
+    private final ChGraph g;
+    private final IndexedMinHeap heap;
+    private int[] lanes = new int[0];
+
+    public Phast(ChGraph g) {
+        this.g = g;
+        this.heap = new IndexedMinHeap(Math.max(1, g.vertexCount()));
+    }
+
+    /**
+     * Distances from source to every vertex, or null if source is not in the graph.
+     */
+    public int[] distances(long source) {
+        int s = g.indexOf(source);
+        if (s < 0) {
+            return null;
+        }
+        int[] dist = new int[g.vertexCount()];
+        sweep(new int[] {s}, 1, dist);
+        return export(dist, 1, 0);
+    }
+
+    /**
+     * Distances from each source to every vertex, one array per source in input order,
+     * computed in sweeps of up to {@link #MAX_LANES} sources. Unknown sources give null.
+     */
+    public int[][] distances(long[] sources) {
+        int[][] result = new int[sources.length][];
+        int[] batch = new int[MAX_LANES];
+        int[] slots = new int[MAX_LANES];
+        int next = 0;
+        while (next < sources.length) {
+            int width = 0;
+            for (; next < sources.length && width < MAX_LANES; next++) {
+                int s = g.indexOf(sources[next]);
+                if (s >= 0) {
+                    batch[width] = s;
+                    slots[width++] = next;
+                }
+            }
+            if (width == 0) {
+                continue;
+            }
+            int required = Math.multiplyExact(g.vertexCount(), width);
+            if (lanes.length < required) {
+                lanes = new int[required];
+            }
+            sweep(batch, width, lanes);
+            for (int k = 0; k < width; k++) {
+                result[slots[k]] = export(lanes, width, k);
+            }
+        }
+        return result;
+    }
+
+    // Fills dist[v * width + k] with the distance from sources[k] to v.
+    private void sweep(int[] sources, int width, int[] dist) {
+        int n = g.vertexCount();
+        Arrays.fill(dist, 0, n * width, UNREACHED);
+        for (int k = 0; k < width; k++) {
+            upward(sources[k], width, k, dist);
+        }
+
+        IntBuffer offsets = g.backwardOffsets;
+        IntBuffer tails = g.backwardHeads;
+        IntBuffer weights = g.backwardWeights;
+        for (int v = n - 1; v >= 0; v--) {
+            int base = v * width;
+            for (int a = offsets.get(v), end = offsets.get(v + 1); a < end; a++) {
+                int from = tails.get(a) * width;
+                int w = weights.get(a);
+                for (int k = 0; k < width; k++) {
+                    dist[base + k] = Math.min(dist[base + k], dist[from + k] + w);
+                }
+            }
+        }
+    }
+
+    // Complete upward Dijkstra from source in lane k.
+    private void upward(int source, int width, int k, int[] dist) {
+        IntBuffer offsets = g.forwardOffsets;
+        IntBuffer heads = g.forwardHeads;
+        IntBuffer weights = g.forwardWeights;
+        heap.clear();
+        dist[source * width + k] = 0;
+        heap.push(source, 0);
+        while (!heap.isEmpty()) {
+            int du = heap.peekKey();
+            int u = heap.poll();
+            for (int a = offsets.get(u), end = offsets.get(u + 1); a < end; a++) {
+                int v = heads.get(a);
+                int newDist = du + weights.get(a);
+                int slot = v * width + k;
+                if (newDist < dist[slot]) {
+                    dist[slot] = newDist;
+                    heap.push(v, newDist);
+                }
+            }
+        }
+    }
+
+    private int[] export(int[] dist, int width, int k) {
+        int[] out = new int[g.vertexCount()];
+        for (int v = 0; v < out.length; v++) {
+            int d = dist[v * width + k];
+            out[v] = d >= UNREACHED ? -1 : d;
+        }
+        return out;
+    }
+}
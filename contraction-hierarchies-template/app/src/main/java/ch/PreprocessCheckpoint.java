@@ -0,0 +1,219 @@
+package ch;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * State of an unfinished {@link ContractionHierachy} preprocessing run: the contraction
+ * order and per-vertex bookkeeping so far, the recorded shortcuts, and the out-arcs of
+ * the vertices not contracted yet. Everything is indexed by the dense vertex index of
+ * the input graph, whose ids are stored to reject a checkpoint of a different graph.
+ *
+ * The file is a magic number and version followed by the arrays, each prefixed by its
+ * length. It is written next to the target and moved into place, so a run that dies
+ * while writing leaves the previous checkpoint intact.
+ */
+final class PreprocessCheckpoint {
+    static final long MAGIC = 0x3154504B43484331L;
+    static final int VERSION = 1;
+
+    final long[] ids;
+    final long originalArcs;
+    final boolean[] present;
+    final int[] order; // dense indices in contraction order
+    final int[] rank;
+    final int[] shortcutsPerVertex;
+    final int[] priorityAtContraction;
+    final int[] deletedNeighbours;
+    final int[] depth;
+    // Remaining out-arcs in CSR form: head, weight and original-arc count
+    final int[] arcOffsets;
+    final int[] arcHeads;
+    final int[] arcWeights;
+    final int[] arcOriginals;
+    final int[] shortcutFrom;
+    final int[] shortcutTo;
+    final int[] shortcutWeight;
+    final long[] shortcutVia;
+
+    PreprocessCheckpoint(long[] ids, long originalArcs, boolean[] present, int[] order, int[] rank,
+                         int[] shortcutsPerVertex, int[] priorityAtContraction, int[] deletedNeighbours, int[] depth,
+                         int[] arcOffsets, int[] arcHeads, int[] arcWeights, int[] arcOriginals,
+                         int[] shortcutFrom, int[] shortcutTo, int[] shortcutWeight, long[] shortcutVia) {
+        this.ids = ids;
+        this.originalArcs = originalArcs;
+        this.present = present;
+        this.order = order;
+        this.rank = rank;
+        this.shortcutsPerVertex = shortcutsPerVertex;
+        this.priorityAtContraction = priorityAtContraction;
+        this.deletedNeighbours = deletedNeighbours;
+        this.depth = depth;
+        this.arcOffsets = arcOffsets;
+        this.arcHeads = arcHeads;
+        this.arcWeights = arcWeights;
+        this.arcOriginals = arcOriginals;
+        this.shortcutFrom = shortcutFrom;
+        this.shortcutTo = shortcutTo;
+        this.shortcutWeight = shortcutWeight;
+        this.shortcutVia = shortcutVia;
+    }
+
+    int contracted() {
+        return order.length;
+    }
+
+    /**
+     * Throws if the checkpoint was not written for a graph with this vertex index and arc count.
+     */
+    void checkMatches(VertexIndex index, long arcs) {
+        boolean same = ids.length == index.size() && originalArcs == arcs;
+        for (int i = 0; same && i < ids.length; i++) {
+            same = ids[i] == index.idOf(i);
+        }
+        if (!same) {
+            throw new IllegalArgumentException("Checkpoint was written for a different graph ("
+                    + ids.length + " vertices, " + originalArcs + " arcs; this graph has "
+                    + index.size() + " vertices, " + arcs + " arcs)");
+        }
+    }
+
+    void write(Path path) throws IOException {
+        Path partial = path.resolveSibling(path.getFileName() + ".partial");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(partial), 1 << 16))) {
+            out.writeLong(MAGIC);
+            out.writeInt(VERSION);
+            writeLongs(out, ids);
+            out.writeLong(originalArcs);
+            out.writeInt(present.length);
+            for (boolean p : present) {
+                out.writeBoolean(p);
+            }
+            for (int[] values : new int[][] {order, rank, shortcutsPerVertex, priorityAtContraction, deletedNeighbours, depth,
+                    arcOffsets, arcHeads, arcWeights, arcOriginals, shortcutFrom, shortcutTo, shortcutWeight}) {
+                writeInts(out, values);
+            }
+            writeLongs(out, shortcutVia);
+        }
+        Files.move(partial, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    static PreprocessCheckpoint read(Path path) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+            if (in.readLong() != MAGIC) {
+                throw new IOException("Not a preprocessing checkpoint: " + path);
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported checkpoint version " + version + " in " + path);
+            }
+            long[] ids = readLongs(in);
+            long originalArcs = in.readLong();
+            boolean[] present = new boolean[in.readInt()];
+            for (int i = 0; i < present.length; i++) {
+                present[i] = in.readBoolean();
+            }
+            return new PreprocessCheckpoint(ids, originalArcs, present,
+                    readInts(in), readInts(in), readInts(in), readInts(in), readInts(in), readInts(in),
+                    readInts(in), readInts(in), readInts(in), readInts(in),
+                    readInts(in), readInts(in), readInts(in), readLongs(in));
+        } catch (EOFException ex) {
+            throw new IOException("Truncated checkpoint: " + path, ex);
+        }
+    }
+
+    private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+        out.writeInt(values.length);
+        for (int value : values) {
+            out.writeInt(value);
+        }
+    }
+
+    private static void writeLongs(DataOutputStream out, long[] values) throws IOException {
+        out.writeInt(values.length);
+        for (long value : values) {
+            out.writeLong(value);
+        }
+    }
+
+    private static int[] readInts(DataInputStream in) throws IOException {
+        int[] values = new int[in.readInt()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = in.readInt();
+        }
+        return values;
+    }
+
+    private static long[] readLongs(DataInputStream in) throws IOException {
+        long[] values = new long[in.readInt()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = in.readLong();
+        }
+        return values;
+    }
+
+    /**
+     * Writes checkpoints on a background thread so contraction only pays for the copy.
+     * A checkpoint that comes due while the previous one is still being written is
+     * skipped rather than queued, so at most two snapshots are in memory.
+     */
+    static final class Writer implements AutoCloseable {
+        private final Path path;
+        private final ExecutorService executor = Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, "ch-checkpoint");
+            thread.setDaemon(true);
+            return thread;
+        });
+        private Future<?> pending;
+        int started;
+        int skipped;
+
+        Writer(Path path) {
+            this.path = path;
+        }
+
+        /**
+         * Starts writing the checkpoint unless a write is still running; returns whether it was started.
+         */
+        boolean submit(PreprocessCheckpoint checkpoint) {
+            if (pending != null && !pending.isDone()) {
+                skipped++;
+                return false;
+            }
+            pending = executor.submit(() -> {
+                try {
+                    checkpoint.write(path);
+                } catch (IOException ex) {
+                    // A lost checkpoint must not end the run it is meant to protect
+                    System.err.printf("Could not write checkpoint %s: %s%n", path, ex.getMessage());
+                }
+            });
+            started++;
+            return true;
+        }
+
+        /**
+         * Waits for the write in progress, if any.
+         */
+        @Override
+        public void close() {
+            executor.shutdown();
+            try {
+                executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
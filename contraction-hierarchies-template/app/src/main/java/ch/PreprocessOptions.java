@@ -0,0 +1,263 @@
+package ch;
+
+import java.nio.file.Path;
+import java.util.Locale;
+
+/**
+ * Settings for {@link ContractionHierachy} preprocessing. The defaults reproduce the
+ * original sequential contraction, so hierarchies built without options do not change.
+ */
+public final class PreprocessOptions {
+    /**
+     * When the sequential loop recomputes priorities besides the initial evaluation.
+     */
+    public enum PriorityUpdate {
+        /** Re-check the top of the queue before contracting it and re-insert it if stale. */
+        LAZY(true, false),
+        /** Recompute the neighbours of every contracted vertex right away; the top is contracted unchecked. */
+        NEIGHBOURS(false, true),
+        /** Both of the above. */
+        BOTH(true, true);
+
+        final boolean lazy;
+        final boolean neighbours;
+
+        PriorityUpdate(boolean lazy, boolean neighbours) {
+            this.lazy = lazy;
+            this.neighbours = neighbours;
+        }
+    }
+
+    private int threads = 1;
+    private NodePriority priority; // null: legacy ContractionGraph.getEdgeDifference
+    private int witnessHops = ContractionGraph.MAX_WITNESS_HOPS;
+    private int witnessSettled = Integer.MAX_VALUE;
+    private PriorityUpdate priorityUpdate = PriorityUpdate.LAZY;
+    private int fullUpdateInterval; // 0: never
+    private int updateThreads = 1;
+    private Path checkpointPath; // null: no checkpoints
+    private int checkpointInterval; // 0: at every progress line
+    private Path resumeFrom;
+    private int coreVertices; // 0: contract everything
+    private double corePercent;
+
+    public int threads() {
+        return threads;
+    }
+
+    /**
+     * More than one thread contracts independent vertex sets in rounds on a ForkJoinPool.
+     */
+    public PreprocessOptions threads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Thread count must be positive, got " + threads);
+        }
+        this.threads = threads;
+        return this;
+    }
+
+    public NodePriority priority() {
+        return priority;
+    }
+
+    /**
+     * Orders vertices by a weighted priority instead of the legacy edge difference.
+     */
+    public PreprocessOptions priority(NodePriority priority) {
+        this.priority = priority;
+        return this;
+    }
+
+    public int witnessHops() {
+        return witnessHops;
+    }
+
+    public int witnessSettled() {
+        return witnessSettled;
+    }
+
+    /**
+     * Limits for every witness search; see {@link ContractionGraph#setWitnessLimits}.
+     */
+    public PreprocessOptions witnessLimits(int hops, int settled) {
+        if (hops < 1 || settled < 1) {
+            throw new IllegalArgumentException("Witness limits must be positive, got hops=" + hops + " settled=" + settled);
+        }
+        this.witnessHops = hops;
+        this.witnessSettled = settled;
+        return this;
+    }
+
+    public PriorityUpdate priorityUpdate() {
+        return priorityUpdate;
+    }
+
+    public int fullUpdateInterval() {
+        return fullUpdateInterval;
+    }
+
+    public int updateThreads() {
+        return updateThreads;
+    }
+
+    /**
+     * How the sequential loop keeps priorities current: the update strategy, a full
+     * re-evaluation of every queued vertex after each interval contractions (0 disables it),
+     * and the threads used for eager and full re-evaluations.
+     */
+    public PreprocessOptions priorityUpdates(PriorityUpdate update, int fullInterval, int threads) {
+        if (update == null) {
+            throw new IllegalArgumentException("Priority update strategy must not be null");
+        }
+        if (fullInterval < 0) {
+            throw new IllegalArgumentException("Full update interval must not be negative, got " + fullInterval);
+        }
+        if (threads < 1) {
+            throw new IllegalArgumentException("Thread count must be positive, got " + threads);
+        }
+        this.priorityUpdate = update;
+        this.fullUpdateInterval = fullInterval;
+        this.updateThreads = threads;
+        return this;
+    }
+
+    public Path checkpointPath() {
+        return checkpointPath;
+    }
+
+    public int checkpointInterval() {
+        return checkpointInterval;
+    }
+
+    /**
+     * Writes a {@link PreprocessCheckpoint} to path every interval contractions, or at every
+     * tenth of the run if interval is 0. Writes happen in the background.
+     */
+    public PreprocessOptions checkpoints(Path path, int interval) {
+        if (interval < 0) {
+            throw new IllegalArgumentException("Checkpoint interval must not be negative, got " + interval);
+        }
+        this.checkpointPath = path;
+        this.checkpointInterval = interval;
+        return this;
+    }
+
+    public Path resumeFrom() {
+        return resumeFrom;
+    }
+
+    /**
+     * Continues the run saved in the checkpoint at path instead of starting over. The
+     * input graph must be the one the checkpoint was written for.
+     */
+    public PreprocessOptions resumeFrom(Path path) {
+        this.resumeFrom = path;
+        return this;
+    }
+
+    /**
+     * Core size for a vertex count of n: the configured number of vertices, or the
+     * configured percentage of n rounded up; 0 if the whole graph is contracted.
+     */
+    public int coreSize(int n) {
+        if (corePercent > 0) {
+            return (int) Math.min(n, (long) Math.ceil(n * corePercent / 100));
+        }
+        return Math.min(n, coreVertices);
+    }
+
+    /**
+     * Stops contracting once at most vertices remain. They form the core: all of them get
+     * the same top rank and keep their arcs, for a Core-ALT query ({@link CoreAlt}).
+     */
+    public PreprocessOptions core(int vertices) {
+        if (vertices < 0) {
+            throw new IllegalArgumentException("Core size must not be negative, got " + vertices);
+        }
+        this.coreVertices = vertices;
+        this.corePercent = 0;
+        return this;
+    }
+
+    /**
+     * Like {@link #core(int)} with the core size given as a percentage of the vertices.
+     */
+    public PreprocessOptions corePercent(double percent) {
+        if (!(percent >= 0 && percent <= 100)) {
+            throw new IllegalArgumentException("Core percentage must be between 0 and 100, got " + percent);
+        }
+        this.corePercent = percent;
+        this.coreVertices = 0;
+        return this;
+    }
+
+    /**
+     * Parses "--name value" pairs starting at args[from]. The priority update options only
+     * apply to the sequential loop, so they are rejected together with --threads above 1.
+     */
+    public static PreprocessOptions parse(String[] args, int from) {
+        PreprocessOptions options = new PreprocessOptions();
+        String updateOption = null;
+        for (int i = from; i < args.length; i += 2) {
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing value for " + args[i]);
+            }
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--threads":
+                    options.threads(Integer.parseInt(value));
+                    break;
+                case "--priority":
+                    options.priority(NodePriority.parse(value));
+                    break;
+                case "--witness-hops":
+                    options.witnessLimits(Integer.parseInt(value), options.witnessSettled);
+                    break;
+                case "--witness-settled":
+                    options.witnessLimits(options.witnessHops, Integer.parseInt(value));
+                    break;
+                case "--update":
+                    updateOption = args[i];
+                    PriorityUpdate update;
+                    try {
+                        update = PriorityUpdate.valueOf(value.toUpperCase(Locale.ROOT));
+                    } catch (IllegalArgumentException ex) {
+                        throw new IllegalArgumentException("Priority update must be lazy, neighbours or both, got " + value, ex);
+                    }
+                    options.priorityUpdates(update, options.fullUpdateInterval, options.updateThreads);
+                    break;
+                case "--full-update":
+                    updateOption = args[i];
+                    options.priorityUpdates(options.priorityUpdate, Integer.parseInt(value), options.updateThreads);
+                    break;
+                case "--update-threads":
+                    updateOption = args[i];
+                    options.priorityUpdates(options.priorityUpdate, options.fullUpdateInterval, Integer.parseInt(value));
+                    break;
+                case "--checkpoint":
+                    options.checkpoints(Path.of(value), options.checkpointInterval);
+                    break;
+                case "--checkpoint-every":
+                    options.checkpoints(options.checkpointPath, Integer.parseInt(value));
+                    break;
+                case "--resume":
+                    options.resumeFrom(Path.of(value));
+                    break;
+                case "--core":
+                    if (value.endsWith("%")) {
+                        options.corePercent(Double.parseDouble(value.substring(0, value.length() - 1)));
+                    } else {
+                        options.core(Integer.parseInt(value));
+                    }
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown preprocess option " + args[i]);
+            }
+        }
+        if (updateOption != null && options.threads > 1) {
+            throw new IllegalArgumentException(updateOption + " only applies to the sequential loop and cannot be combined with --threads "
+                    + options.threads);
+        }
+        return options;
+    }
+}
@@ -0,0 +1,185 @@
+package ch;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps a CH search graph in memory and answers queries over a line protocol:
+ * each request line is "source target", each reply is the line the query command
+ * prints ("distance=.. relaxed=.. time(ns)=..", distance -1 for unknown or unreachable
+ * vertices) or "error=<message>". "quit" ends the session. Sessions are stdin/stdout or
+ * loopback TCP connections. Every TCP connection has its own thread that only reads
+ * requests and writes replies; the queries run on a fixed pool of workers, each with its
+ * own search workspace, so idle connections do not hold a worker.
+ */
+public final class QueryServer implements Closeable {
+    private static final int MAX_PIPELINED = 64; // replies buffered per session before they are written
+
+    private final ChGraph graph;
+    private final ExecutorService workers;
+    private ServerSocket socket;
+    private Thread acceptor;
+
+    public QueryServer(ChGraph graph, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Thread count must be positive, got " + threads);
+        }
+        this.graph = graph;
+        this.workers = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "ch-query-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Answers a single request line.
+     */
+    String answer(String line) {
+        String[] parts = line.trim().split("\\s+");
+        if (parts.length != 2) {
+            return "error=expected '<source> <target>'";
+        }
+        long source;
+        long target;
+        try {
+            source = Long.parseLong(parts[0]);
+            target = Long.parseLong(parts[1]);
+        } catch (NumberFormatException ex) {
+            return "error=vertex ids must be integers";
+        }
+        Result<Integer> result = ChQuery.shortestPath(graph, source, target);
+        return String.format(Locale.US, "distance=%d relaxed=%d time(ns)=%d", result.result, result.relaxed, result.time);
+    }
+
+    /**
+     * Serves one session until end of input or "quit".
+     */
+    public void serve(BufferedReader in, Writer out) throws IOException {
+        serve(in, out, null);
+    }
+
+    // With a pool, the requests are answered there and this thread only reads and writes.
+    private void serve(BufferedReader in, Writer out, ExecutorService pool) throws IOException {
+        List<Future<String>> pending = new ArrayList<>();
+        String line;
+        while ((line = in.readLine()) != null) {
+            if (line.isBlank()) {
+                continue;
+            }
+            if ("quit".equalsIgnoreCase(line.trim())) {
+                break;
+            }
+            String request = line;
+            pending.add(pool == null ? CompletableFuture.completedFuture(answer(request)) : pool.submit(() -> answer(request)));
+            boolean idle = !in.ready();
+            if (idle || pending.size() >= MAX_PIPELINED) {
+                write(pending, out);
+            }
+            if (idle) {
+                out.flush(); // answers to pipelined requests are flushed together
+            }
+        }
+        write(pending, out);
+        out.flush();
+    }
+
+    // Writes the replies in request order.
+    private static void write(List<Future<String>> pending, Writer out) throws IOException {
+        try {
+            for (Future<String> reply : pending) {
+                out.write(reply.get());
+                out.write('\n');
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a reply");
+        } catch (ExecutionException ex) {
+            throw new IOException("Query failed", ex.getCause());
+        } finally {
+            pending.clear();
+        }
+    }
+
+    /**
+     * Listens on the loopback interface (port 0 picks a free port) and returns the bound port.
+     * Connections are accepted on a background thread until {@link #close()}; each one is
+     * read on a thread of its own.
+     */
+    public int start(int port) throws IOException {
+        if (socket != null) {
+            throw new IllegalStateException("Server already started");
+        }
+        socket = new ServerSocket(port, 128, InetAddress.getLoopbackAddress());
+        acceptor = new Thread(this::acceptLoop, "ch-query-acceptor");
+        acceptor.start();
+        return socket.getLocalPort();
+    }
+
+    /**
+     * Blocks until the accept loop has stopped.
+     */
+    public void join() throws InterruptedException {
+        if (acceptor != null) {
+            acceptor.join();
+        }
+    }
+
+    private void acceptLoop() {
+        while (!socket.isClosed()) {
+            try {
+                Socket client = socket.accept();
+                Thread session = new Thread(() -> handle(client), "ch-query-session");
+                session.setDaemon(true);
+                session.start();
+            } catch (IOException ex) {
+                if (!socket.isClosed()) {
+                    System.err.println("Accept failed: " + ex.getMessage());
+                }
+            }
+        }
+    }
+
+    private void handle(Socket client) {
+        try (client;
+             BufferedReader in = new BufferedReader(new InputStreamReader(client.getInputStream(), StandardCharsets.US_ASCII));
+             Writer out = new BufferedWriter(new OutputStreamWriter(client.getOutputStream(), StandardCharsets.US_ASCII))) {
+            client.setTcpNoDelay(true);
+            serve(in, out, workers);
+        } catch (IOException ex) {
+            System.err.println("Connection closed: " + ex.getMessage());
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (socket != null) {
+            socket.close();
+        }
+        workers.shutdown();
+        try {
+            workers.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -4,6 +4,7 @@ public class Result<T> {
     public long time;
     public T result;
     public int relaxed;
+    public long[] path; // vertex ids from source to target, only filled by route queries
 
     public Result(long time, int relaxed, T result) {
         this.time = time;
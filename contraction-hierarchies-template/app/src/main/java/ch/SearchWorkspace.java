@@ -0,0 +1,111 @@
+package ch;
+
+import java.util.Arrays;
+
+/**
+ * Reusable per-thread state for point-to-point searches: forward/backward
+ * distances, parent arcs and heaps over dense vertex indices.
+ * A distance entry is only valid if its stamp equals the current generation,
+ * so {@link #reset()} bumps the generation instead of refilling the arrays
+ * and queries in steady state allocate nothing.
+ */
+public final class SearchWorkspace {
+    static final int INF = Integer.MAX_VALUE;
+
+    private static final ThreadLocal<SearchWorkspace> POOL = new ThreadLocal<>();
+
+    int[] forwardDist;
+    int[] backwardDist;
+    int[] forwardParent;  // arc index the vertex was reached through, -1 for the search root
+    int[] backwardParent;
+    private int[] forwardStamp;
+    private int[] backwardStamp;
+    private int generation;
+
+    final IndexedMinHeap forwardHeap;
+    final IndexedMinHeap backwardHeap;
+
+    /** Arcs relaxed by the last search run on this workspace. */
+    int relaxed;
+
+    /** Vertex where the last bidirectional search found its best path, -1 if none. */
+    int meeting = -1;
+
+    public SearchWorkspace(int vertexCount) {
+        int n = Math.max(1, vertexCount);
+        this.forwardDist = new int[n];
+        this.backwardDist = new int[n];
+        this.forwardParent = new int[n];
+        this.backwardParent = new int[n];
+        this.forwardStamp = new int[n];
+        this.backwardStamp = new int[n];
+        this.generation = 1;
+        this.forwardHeap = new IndexedMinHeap(n);
+        this.backwardHeap = new IndexedMinHeap(n);
+    }
+
+    /**
+     * Returns this thread's workspace, created or grown to hold vertexCount vertices.
+     */
+    public static SearchWorkspace forThread(int vertexCount) {
+        SearchWorkspace ws = POOL.get();
+        if (ws == null || ws.capacity() < vertexCount) {
+            ws = new SearchWorkspace(vertexCount);
+            POOL.set(ws);
+        }
+        return ws;
+    }
+
+    public int capacity() {
+        return forwardDist.length;
+    }
+
+    /**
+     * Forgets all distances and empties both heaps.
+     */
+    public void reset() {
+        forwardHeap.clear();
+        backwardHeap.clear();
+        relaxed = 0;
+        meeting = -1;
+        generation++;
+        if (generation == 0) {
+            // Stamps wrapped around after 2^32 searches; clear them once so stale stamps cannot match.
+            Arrays.fill(forwardStamp, 0);
+            Arrays.fill(backwardStamp, 0);
+            generation = 1;
+        }
+    }
+
+    int forward(int v) {
+        return forwardStamp[v] == generation ? forwardDist[v] : INF;
+    }
+
+    int backward(int v) {
+        return backwardStamp[v] == generation ? backwardDist[v] : INF;
+    }
+
+    void setForward(int v, int dist, int parentArc) {
+        forwardStamp[v] = generation;
+        forwardDist[v] = dist;
+        forwardParent[v] = parentArc;
+    }
+
+    void setBackward(int v, int dist, int parentArc) {
+        backwardStamp[v] = generation;
+        backwardDist[v] = dist;
+        backwardParent[v] = parentArc;
+    }
+
+    int distance(boolean forward, int v) {
+        return forward ? forward(v) : backward(v);
+    }
+
+    void set(boolean forward, int v, int dist, int parentArc) {
+        if (forward) {
+            setForward(v, dist, parentArc);
+        } else {
+            setBackward(v, dist, parentArc);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package ch;
+
+import java.util.Arrays;
+
+/**
+ * Shortcuts found during preprocessing in parallel primitive arrays: dense indices for the
+ * endpoints and the vertex id of the contracted vertex, one entry per (from, to) pair. An
+ * open-addressing table on the pair finds the stored entry, and a lighter shortcut for it
+ * overwrites that entry in place. Contraction often improves a pair it already recorded,
+ * and the exported graph, checkpoints and upward graph need one arc per pair, so
+ * deduplicating on insert keeps the buffer as small as the result.
+ */
+final class ShortcutBuffer {
+    private final VertexIndex index;
+    int[] from = new int[16];
+    int[] to = new int[16];
+    int[] weight = new int[16];
+    long[] via = new long[16]; // vertex id, not dense index
+    int count;
+    private int[] table = new int[32]; // entry + 1, 0 = empty; the length is a power of two
+
+    ShortcutBuffer(VertexIndex index) {
+        this.index = index;
+    }
+
+    /**
+     * Records from -> to over via, or lowers the weight of the stored shortcut for the pair.
+     */
+    void add(int tail, int head, int arcWeight, long middle) {
+        int mask = table.length - 1;
+        int slot = hash(tail, head) & mask;
+        while (table[slot] != 0) {
+            int entry = table[slot] - 1;
+            if (from[entry] == tail && to[entry] == head) {
+                if (arcWeight < weight[entry]) {
+                    weight[entry] = arcWeight;
+                    via[entry] = middle;
+                }
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if (count == from.length) {
+            int grown = count * 2;
+            from = Arrays.copyOf(from, grown);
+            to = Arrays.copyOf(to, grown);
+            weight = Arrays.copyOf(weight, grown);
+            via = Arrays.copyOf(via, grown);
+        }
+        from[count] = tail;
+        to[count] = head;
+        weight[count] = arcWeight;
+        via[count] = middle;
+        table[slot] = ++count;
+        if (count * 2 > table.length) {
+            rehash(table.length * 2);
+        }
+    }
+
+    private void rehash(int length) {
+        table = new int[length];
+        int mask = length - 1;
+        for (int entry = 0; entry < count; entry++) {
+            int slot = hash(from[entry], to[entry]) & mask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = entry + 1;
+        }
+    }
+
+    private static int hash(int tail, int head) {
+        long key = ((long) tail << 32) | (head & 0xFFFFFFFFL);
+        key *= 0x9E3779B97F4A7C15L;
+        return (int) (key >>> 32);
+    }
+
+    Graph.Shortcut get(int entry) {
+        return new Graph.Shortcut(index.idOf(from[entry]), index.idOf(to[entry]), weight[entry], via[entry]);
+    }
+
+    int size() {
+        return count;
+    }
+}
@@ -0,0 +1,108 @@
+package ch;
+
+import java.util.Arrays;
+
+/**
+ * Translates external (OSM) vertex ids to dense indices 0..n-1 in the order they were added.
+ * Lookups use an open-addressing table with linear probing that stores index+1 per slot,
+ * so the only per-vertex cost is the id itself plus a few bytes of table.
+ */
+public final class VertexIndex {
+    private long[] ids;   // dense index -> external id
+    private int[] table;  // hash slot -> dense index + 1, 0 marks an empty slot
+    private int size;
+
+    public VertexIndex() {
+        this(16);
+    }
+
+    public VertexIndex(int expectedSize) {
+        this.ids = new long[Math.max(4, expectedSize)];
+        this.table = new int[tableSizeFor(ids.length)];
+    }
+
+    /**
+     * Returns the dense index of id, assigning the next free one if the id is new.
+     */
+    public int add(long id) {
+        int slot = slotOf(id);
+        if (table[slot] != 0) {
+            return table[slot] - 1;
+        }
+        if (size == ids.length) {
+            ids = Arrays.copyOf(ids, ids.length * 2);
+        }
+        int index = size++;
+        ids[index] = id;
+        table[slot] = index + 1;
+        if (size * 2 > table.length) {
+            rehash(table.length * 2);
+        }
+        return index;
+    }
+
+    /**
+     * Returns the dense index of id, or -1 if the id has not been added.
+     */
+    public int indexOf(long id) {
+        int entry = table[slotOf(id)];
+        return entry - 1;
+    }
+
+    public boolean contains(long id) {
+        return indexOf(id) >= 0;
+    }
+
+    public long idOf(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("No vertex with dense index " + index);
+        }
+        return ids[index];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * External ids in dense order; the array is a copy.
+     */
+    public long[] ids() {
+        return Arrays.copyOf(ids, size);
+    }
+
+    // Linear probing: returns the slot holding id, or the empty slot where it would go.
+    private int slotOf(long id) {
+        int mask = table.length - 1;
+        int slot = hash(id) & mask;
+        while (true) {
+            int entry = table[slot];
+            if (entry == 0 || ids[entry - 1] == id) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private void rehash(int capacity) {
+        table = new int[capacity];
+        int mask = capacity - 1;
+        for (int index = 0; index < size; index++) {
+            int slot = hash(ids[index]) & mask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = index + 1;
+        }
+    }
+
+    private static int hash(long id) {
+        long h = id * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private static int tableSizeFor(int entries) {
+        int capacity = Integer.highestOneBit(Math.max(2, entries) - 1) << 2;
+        return Math.max(16, capacity);
+    }
+}
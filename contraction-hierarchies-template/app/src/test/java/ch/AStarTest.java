@@ -0,0 +1,101 @@
+package ch;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class AStarTest {
+    private static final int SIDE = 9;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Graph g;
+    private CsrGraph csr;
+
+    @Before
+    public void setUp() {
+        g = TestGraphs.onewayGrid(SIDE, 31, 10);
+        csr = CsrGraph.fromGraph(g);
+    }
+
+    private interface Search {
+        Result<Integer> run(long s, long t);
+    }
+
+    private void assertMatchesDijkstra(String name, Search search) {
+        long[] ids = {0, 4, 13, 40, 44, 62, 80, 1000};
+        for (long s : ids) {
+            for (long t : ids) {
+                assertEquals(name + " " + s + " -> " + t,
+                        Dijkstra.shortestPath(g, s, t).result, search.run(s, t).result);
+            }
+        }
+        assertEquals(name + " unknown source", Integer.valueOf(-1), search.run(4242, 0).result);
+        assertEquals(name + " unknown target", Integer.valueOf(-1), search.run(0, 4242).result);
+    }
+
+    @Test
+    public void testGeoBoundIsCalibratedToTheLightestArc() {
+        GeoBound bound = GeoBound.calibrate(csr);
+        assertTrue("Scale at most 1 per unit", bound.scale() <= 1.0);
+        assertTrue("Scale close to 1 per unit", bound.scale() > 0.99);
+        assertEquals("Bound across the grid", 79, bound.lowerBound(csr.indexOf(0), csr.indexOf(8)));
+    }
+
+    @Test
+    public void testAStarMatchesDijkstra() {
+        GeoBound bound = GeoBound.calibrate(csr);
+        assertMatchesDijkstra("A*", (s, t) -> AStar.shortestPath(csr, s, t, bound));
+        assertMatchesDijkstra("Bidirectional A*", (s, t) -> AStar.bidirectional(csr, s, t, bound));
+    }
+
+    @Test
+    public void testAltMatchesDijkstra() {
+        for (Landmarks.Selection selection : Landmarks.Selection.values()) {
+            Landmarks landmarks = Landmarks.select(csr, 6, selection, 2, 7);
+            assertEquals(selection + " landmark count", 6, landmarks.count());
+            assertMatchesDijkstra("ALT " + selection, (s, t) -> AStar.shortestPath(csr, s, t, landmarks));
+            assertMatchesDijkstra("Bidirectional ALT " + selection,
+                    (s, t) -> AStar.bidirectional(csr, s, t, landmarks));
+        }
+    }
+
+    @Test
+    public void testAltRelaxesFewerArcsThanDijkstra() {
+        Landmarks landmarks = Landmarks.select(csr, 6, Landmarks.Selection.AVOID, 1, 7);
+        long dijkstra = 0;
+        long alt = 0;
+        for (long s = 0; s < SIDE * SIDE; s += 7) {
+            long t = SIDE * SIDE - 1 - s;
+            dijkstra += Dijkstra.shortestPath(csr, s, t).relaxed;
+            alt += AStar.bidirectional(csr, s, t, landmarks).relaxed;
+        }
+        assertTrue("ALT relaxed " + alt + " vs Dijkstra " + dijkstra, alt < dijkstra);
+    }
+
+    @Test
+    public void testLandmarkSidecarRoundTrip() throws IOException {
+        Landmarks landmarks = Landmarks.select(csr, 4, Landmarks.Selection.FARTHEST, 1, 3);
+        Path path = folder.newFile("grid.landmarks").toPath();
+        landmarks.write(path);
+
+        Landmarks read = Landmarks.read(path, csr);
+        assertArrayEquals("Landmark ids", landmarks.landmarkIds(), read.landmarkIds());
+        for (int u = 0; u < csr.vertexCount(); u += 5) {
+            for (int v = 0; v < csr.vertexCount(); v += 3) {
+                assertEquals("Bound " + u + " -> " + v, landmarks.lowerBound(u, v), read.lowerBound(u, v));
+            }
+        }
+
+        g.addVertex(2000, new Graph.Vertex(0, 0));
+        CsrGraph other = CsrGraph.fromGraph(g);
+        assertThrows(IOException.class, () -> Landmarks.read(path, other));
+    }
+}
@@ -0,0 +1,80 @@
+package ch;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class BatchQueryTest {
+    private CsrGraph csr;
+
+    @Before
+    public void setUp() {
+        Graph g = new Graph();
+        g.addVertex(10, new Graph.Vertex(0, 0));
+        g.addVertex(20, new Graph.Vertex(1, 1));
+        g.addVertex(30, new Graph.Vertex(2, 2));
+        g.addVertex(40, new Graph.Vertex(3, 3));
+        g.addUndirectedEdge(10, 20, 4);
+        g.addUndirectedEdge(20, 30, 1);
+        g.addUndirectedEdge(10, 40, 8);
+        g.addUndirectedEdge(30, 40, 2);
+        csr = CsrGraph.fromGraph(g);
+    }
+
+    // Replaces the measured time with 0 so rows can be compared
+    private static String[] rowsWithoutTime(String csv) {
+        String[] lines = csv.split("\r\n");
+        for (int i = 1; i < lines.length; i++) {
+            String[] cells = lines[i].split(",");
+            cells[3] = "0";
+            lines[i] = String.join(",", cells);
+        }
+        return lines;
+    }
+
+    @Test
+    public void testWritesCsvInInputOrder() throws IOException {
+        StringWriter out = new StringWriter();
+        long answered = new BatchQuery((s, t) -> Dijkstra.shortestPath(csr, s, t), 1)
+                .run(new BufferedReader(new StringReader("source,target\n10 30\n\n# comment\n40,20\n")), out);
+
+        assertEquals("Two pairs should be answered", 2, answered);
+        assertTrue("Rows should end with CRLF like Python's csv module", out.toString().endsWith("\r\n"));
+        String[] lines = rowsWithoutTime(out.toString());
+        assertEquals("Header", BatchQuery.HEADER, lines[0]);
+        assertEquals("First pair", "10,30,5,0," + Dijkstra.shortestPath(csr, 10, 30).relaxed, lines[1]);
+        assertEquals("Second pair", "40,20,3,0," + Dijkstra.shortestPath(csr, 40, 20).relaxed, lines[2]);
+    }
+
+    @Test
+    public void testParallelRunMatchesSequential() throws IOException {
+        StringBuilder pairs = new StringBuilder();
+        long[] ids = {10, 20, 30, 40, 99};
+        for (int i = 0; i < 10_000; i++) {
+            pairs.append(ids[i % ids.length]).append(' ').append(ids[(i / ids.length) % ids.length]).append('\n');
+        }
+        StringWriter sequential = new StringWriter();
+        StringWriter parallel = new StringWriter();
+        BatchQuery.PairQuery query = (s, t) -> BidirectionalDijkstra.shortestPath(csr, s, t);
+        new BatchQuery(query, 1).run(new BufferedReader(new StringReader(pairs.toString())), sequential);
+        new BatchQuery(query, 4).run(new BufferedReader(new StringReader(pairs.toString())), parallel);
+
+        assertArrayEquals("Parallel rows should match sequential rows",
+                rowsWithoutTime(sequential.toString()), rowsWithoutTime(parallel.toString()));
+    }
+
+    @Test
+    public void testRejectsMalformedPairs() {
+        BatchQuery batch = new BatchQuery((s, t) -> Dijkstra.shortestPath(csr, s, t), 1);
+        assertThrows(IllegalStateException.class,
+                () -> batch.run(new BufferedReader(new StringReader("10 20\n30\n")), new StringWriter()));
+        assertThrows(IllegalStateException.class,
+                () -> batch.run(new BufferedReader(new StringReader("10 20\n30 x\n")), new StringWriter()));
+    }
+}
@@ -0,0 +1,118 @@
+package ch;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class CchTest {
+    private static final int SIDE = 9;
+
+    private CsrGraph csr;
+
+    @Before
+    public void setUp() {
+        csr = CsrGraph.fromGraph(TestGraphs.onewayGrid(SIDE, 41));
+    }
+
+    // The input graph with other arc weights; closed arcs are left out.
+    private CsrGraph withWeights(int[] weights) {
+        CsrGraph.Builder builder = new CsrGraph.Builder(csr.vertexCount(), csr.arcCount());
+        for (int v = 0; v < csr.vertexCount(); v++) {
+            builder.addVertex(csr.idOf(v), csr.xs[v], csr.ys[v]);
+        }
+        for (int v = 0; v < csr.vertexCount(); v++) {
+            for (int a = csr.outOffsets[v]; a < csr.outOffsets[v + 1]; a++) {
+                if (weights[a] != Cch.CLOSED) {
+                    builder.addArc(v, csr.outTargets[a], weights[a], -1);
+                }
+            }
+        }
+        return builder.build();
+    }
+
+    private void assertMatchesDijkstra(String name, CsrGraph expected, ChGraph ch) {
+        for (int s = 0; s < csr.vertexCount(); s += 4) {
+            for (int t = 0; t < csr.vertexCount(); t++) {
+                long source = csr.idOf(s);
+                long target = csr.idOf(t);
+                assertEquals(name + " " + source + " -> " + target,
+                        Dijkstra.shortestPath(expected, source, target).result,
+                        ChQuery.shortestPath(ch, source, target).result);
+            }
+        }
+    }
+
+    @Test
+    public void testOrderIsPermutation() {
+        int[] rank = NestedDissection.order(csr, 2);
+        boolean[] seen = new boolean[rank.length];
+        for (int r : rank) {
+            assertFalse("Rank " + r + " assigned twice", seen[r]);
+            seen[r] = true;
+        }
+        assertArrayEquals("Order does not depend on the thread count", rank, NestedDissection.order(csr, 1));
+    }
+
+    @Test
+    public void testCustomizedGraphMatchesDijkstra() {
+        Cch cch = Cch.build(csr, 1);
+        assertTrue("Levels", cch.levelCount() > 1);
+        ChGraph ch = cch.customize(csr.outWeights.clone(), 1);
+        assertMatchesDijkstra("Original weights", csr, ch);
+        assertEquals("Unreachable", Integer.valueOf(-1), ChQuery.shortestPath(ch, 0, 1000).result);
+    }
+
+    @Test
+    public void testRecustomizationWithNewWeightsAndClosures() {
+        Cch cch = Cch.build(csr, 2);
+        Random random = new Random(5);
+        for (int round = 0; round < 3; round++) {
+            int[] weights = csr.outWeights.clone();
+            for (int a = 0; a < weights.length; a++) {
+                int draw = random.nextInt(10);
+                if (draw == 0) {
+                    weights[a] = Cch.CLOSED;
+                } else if (draw < 4) {
+                    weights[a] = 1 + random.nextInt(200);
+                }
+            }
+            ChGraph sequential = cch.customize(weights, 1);
+            ChGraph parallel = cch.customize(weights, 3);
+            assertMatchesDijkstra("Round " + round, withWeights(weights), sequential);
+            assertMatchesDijkstra("Round " + round + " in parallel", withWeights(weights), parallel);
+        }
+    }
+
+    @Test
+    public void testRoutesUnpackThroughTriangles() {
+        ChGraph ch = Cch.build(csr, 1).customize(csr.outWeights.clone(), 1);
+        PathUnpacker unpacker = new PathUnpacker(ch);
+        Result<Integer> route = ChQuery.route(ch, 0, SIDE * SIDE - 1, unpacker);
+        assertEquals("Route distance", Dijkstra.shortestPath(csr, 0, SIDE * SIDE - 1).result, route.result);
+        int length = 0;
+        for (int i = 0; i + 1 < route.path.length; i++) {
+            int u = csr.indexOf(route.path[i]);
+            int best = Integer.MAX_VALUE;
+            for (int a = csr.outOffsets[u]; a < csr.outOffsets[u + 1]; a++) {
+                if (csr.outTargets[a] == csr.indexOf(route.path[i + 1])) {
+                    best = Math.min(best, csr.outWeights[a]);
+                }
+            }
+            assertNotEquals("Arc " + route.path[i] + " -> " + route.path[i + 1], Integer.MAX_VALUE, best);
+            length += best;
+        }
+        assertEquals("Unpacked length", route.result.intValue(), length);
+    }
+
+    @Test
+    public void testRejectsWrongWeights() {
+        Cch cch = Cch.build(csr, 1);
+        assertThrows(IllegalArgumentException.class, () -> cch.customize(new int[3], 1));
+        int[] negative = csr.outWeights.clone();
+        negative[0] = -5;
+        assertThrows(IllegalArgumentException.class, () -> cch.customize(negative, 1));
+    }
+}
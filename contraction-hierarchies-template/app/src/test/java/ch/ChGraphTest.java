@@ -0,0 +1,133 @@
+package ch;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ChGraphTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Graph g;
+
+    @Before
+    public void setUp() {
+        // 6x6 grid with random weights, large enough for the hierarchy to add shortcuts.
+        g = new Graph();
+        Random random = new Random(17);
+        int side = 6;
+        for (int y = 0; y < side; y++) {
+            for (int x = 0; x < side; x++) {
+                g.addVertex(100 + y * side + x, new Graph.Vertex(x, y));
+            }
+        }
+        for (int y = 0; y < side; y++) {
+            for (int x = 0; x < side; x++) {
+                long id = 100 + y * side + x;
+                if (x + 1 < side) {
+                    g.addUndirectedEdge(id, id + 1, 1 + random.nextInt(20));
+                }
+                if (y + 1 < side) {
+                    g.addUndirectedEdge(id, id + side, 1 + random.nextInt(20));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testSearchGraphOnlyKeepsUpwardArcs() {
+        ChGraph ch = new ContractionHierachy(g).toSearchGraph();
+
+        assertEquals("Every vertex should be present", 36, ch.vertexCount());
+        for (int u = 0; u < ch.vertexCount(); u++) {
+            for (int a = ch.forwardOffsets.get(u); a < ch.forwardOffsets.get(u + 1); a++) {
+                assertTrue("Forward arcs should lead to a higher rank", ch.rank(ch.forwardHeads.get(a)) > ch.rank(u));
+            }
+            for (int a = ch.backwardOffsets.get(u); a < ch.backwardOffsets.get(u + 1); a++) {
+                assertTrue("Backward arcs should lead to a higher rank", ch.rank(ch.backwardHeads.get(a)) > ch.rank(u));
+            }
+        }
+    }
+
+    @Test
+    public void testVerticesAreNumberedByRank() {
+        ChGraph ch = new ContractionHierachy(g).toSearchGraph();
+
+        for (int v = 1; v < ch.vertexCount(); v++) {
+            assertTrue("Ranks should increase with the vertex number", ch.rank(v) > ch.rank(v - 1));
+        }
+        for (int u = 0; u < ch.vertexCount(); u++) {
+            for (int a = ch.forwardOffsets.get(u); a < ch.forwardOffsets.get(u + 1); a++) {
+                int via = ch.forwardVia.get(a);
+                if (via >= 0) {
+                    assertTrue("A shortcut's middle vertex should be ranked below its tail", ch.rank(via) < ch.rank(u));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testMappedBinaryMatchesDijkstra() throws IOException {
+        ContractionHierachy hierarchy = new ContractionHierachy(g);
+        Path file = folder.getRoot().toPath().resolve("grid.bin");
+        hierarchy.storeBinary(file);
+
+        assertTrue("Stored file should be recognised as binary", ChGraph.isBinary(file));
+        ChGraph mapped = ChGraph.map(file);
+        ChGraph onHeap = hierarchy.toSearchGraph();
+        assertEquals("Mapped graph should keep all forward arcs", onHeap.forwardArcCount(), mapped.forwardArcCount());
+        assertEquals("Mapped graph should keep all backward arcs", onHeap.backwardArcCount(), mapped.backwardArcCount());
+
+        for (long s = 100; s < 136; s += 5) {
+            for (long t = 100; t < 136; t += 3) {
+                int expected = Dijkstra.shortestPath(g, s, t).result;
+                assertEquals("CH distance " + s + " -> " + t + " should match Dijkstra",
+                        expected, (int) ChQuery.shortestPath(mapped, s, t).result);
+            }
+        }
+    }
+
+    @Test
+    public void testStallOnDemandKeepsDistancesAndRelaxesLess() {
+        ChGraph ch = new ContractionHierachy(g).toSearchGraph();
+        SearchWorkspace ws = new SearchWorkspace(ch.vertexCount());
+        long relaxedWithStalling = 0;
+        long relaxedWithout = 0;
+        for (long s = 100; s < 136; s++) {
+            for (long t = 100; t < 136; t += 7) {
+                int expected = Dijkstra.shortestPath(g, s, t).result;
+                Result<Integer> stalled = ChQuery.shortestPath(ch, s, t, ws, true);
+                relaxedWithStalling += stalled.relaxed;
+                assertEquals("Stalled query " + s + " -> " + t, expected, (int) stalled.result);
+                Result<Integer> plain = ChQuery.shortestPath(ch, s, t, ws, false);
+                relaxedWithout += plain.relaxed;
+                assertEquals("Plain query " + s + " -> " + t, expected, (int) plain.result);
+            }
+        }
+        assertTrue("Stalling should never relax more arcs", relaxedWithStalling <= relaxedWithout);
+    }
+
+    @Test
+    public void testMapRejectsTextGraph() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("text.graph");
+        Files.writeString(file, "1 0\n1 0.0 0.0 0\n".repeat(4));
+
+        assertFalse("Text graph should not be detected as binary", ChGraph.isBinary(file));
+        assertThrows(IOException.class, () -> ChGraph.map(file));
+    }
+
+    @Test
+    public void testUnknownVerticesHaveNoPath() {
+        ChGraph ch = new ContractionHierachy(g).toSearchGraph();
+        assertEquals("Unknown vertices should give -1", -1, (int) ChQuery.shortestPath(ch, 100, 999).result);
+        assertEquals("Source equals target should give 0", 0, (int) ChQuery.shortestPath(ch, 107, 107).result);
+    }
+}
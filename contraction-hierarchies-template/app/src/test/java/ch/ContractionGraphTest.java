@@ -0,0 +1,367 @@
+package ch;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Scanner;
+
+import org.junit.Test;
+
+public class ContractionGraphTest {
+
+    // Weights of all arcs from -> to in adjacency order.
+    private static List<Integer> arcWeights(ContractionGraph cg, long from, long to) {
+        VertexIndex index = cg.vertexIndex();
+        int[][] arcs = cg.outArcs();
+        int u = index.indexOf(from);
+        List<Integer> weights = new ArrayList<>();
+        for (int a = arcs[0][u]; a < arcs[0][u + 1]; a++) {
+            if (arcs[1][a] == index.indexOf(to)) {
+                weights.add(arcs[2][a]);
+            }
+        }
+        return weights;
+    }
+
+    // The vertices not contracted yet with their remaining arcs.
+    private static Graph remaining(ContractionGraph cg) {
+        VertexIndex index = cg.vertexIndex();
+        int[][] arcs = cg.outArcs();
+        Graph g = new Graph();
+        for (int v : cg.presentVertices()) {
+            g.addVertex(index.idOf(v), new Graph.Vertex(0, 0));
+        }
+        for (int v : cg.presentVertices()) {
+            for (int a = arcs[0][v]; a < arcs[0][v + 1]; a++) {
+                g.addEdge(index.idOf(v), index.idOf(arcs[1][a]), -1, arcs[2][a]);
+            }
+        }
+        return g;
+    }
+
+    private static void ensureVertex(Graph g, long id) {
+        if (!g.containsVertex(id)) {
+            g.addVertex(id, new Graph.Vertex(0, 0));
+        }
+    }
+
+    // source - contracted - target of weight 4, and a zero-weight witness of the given length in arcs.
+    private static ContractionGraph witnessChain(int witnessArcs) {
+        Graph g = new Graph();
+        ensureVertex(g, 1);
+        ensureVertex(g, 50);
+        ensureVertex(g, 200);
+        g.addUndirectedEdge(1, 50, 2);
+        g.addUndirectedEdge(50, 200, 2);
+        long previous = 1;
+        for (int i = 0; i < witnessArcs - 1; i++) {
+            long intermediate = 1_000L + i;
+            ensureVertex(g, intermediate);
+            g.addUndirectedEdge(previous, intermediate, 0);
+            previous = intermediate;
+        }
+        g.addUndirectedEdge(previous, 200, 4);
+        return new ContractionGraph(g);
+    }
+
+    private static boolean hasWitnessPath(ContractionGraph cg, long source, long target, long forbidden, int limit) throws Exception {
+        VertexIndex index = cg.vertexIndex();
+        Method search = ContractionGraph.class.getDeclaredMethod("search",
+                int.class, int.class, int.class, int.class, ContractionGraph.WitnessWorkspace.class, boolean[].class);
+        search.setAccessible(true);
+        return (boolean) search.invoke(cg, index.indexOf(source), index.indexOf(target), index.indexOf(forbidden), limit,
+                new ContractionGraph.WitnessWorkspace(), null);
+    }
+
+    @Test
+    public void testContractAddsShortcutsAndRemovesVertex() {
+        Graph g = new Graph();
+        g.addVertex(1, new Graph.Vertex(0, 0));
+        g.addVertex(2, new Graph.Vertex(1, 1));
+        g.addVertex(3, new Graph.Vertex(2, 2));
+        g.addUndirectedEdge(1, 2, 1);
+        g.addUndirectedEdge(2, 3, 2);
+        ContractionGraph cg = new ContractionGraph(g);
+        VertexIndex index = cg.vertexIndex();
+        ShortcutBuffer buffer = new ShortcutBuffer(index);
+
+        assertEquals("Contracting vertex should add two directed shortcuts", 2, cg.contract(index.indexOf(2), buffer));
+        assertEquals("Shortcut buffer should contain the directed arcs that were added", 2, buffer.size());
+        assertEquals("Vertex count should decrease after contraction", 2, cg.presentCount());
+        assertFalse("Contracted vertex should be removed", cg.isPresent(index.indexOf(2)));
+        assertEquals("Contracted vertex should lose its arcs", 0, cg.outDegree(index.indexOf(2)));
+        assertEquals("Only the shortcut should remain from vertex 1", Arrays.asList(3), arcWeights(cg, 1, 3));
+        assertEquals("Only the reverse shortcut should remain from vertex 3", Arrays.asList(3), arcWeights(cg, 3, 1));
+        assertEquals("Vertex 1 should have no other arcs", 1, cg.outDegree(index.indexOf(1)));
+        for (int entry = 0; entry < buffer.count; entry++) {
+            assertEquals("Shortcut should record the contracted vertex id", 2L, buffer.get(entry).via);
+        }
+    }
+
+    @Test
+    public void testEdgeDifferenceReflectsShortcutNeeds() {
+        Graph g = new Graph();
+        for (long id = 1; id <= 4; id++) {
+            g.addVertex(id, new Graph.Vertex(id, id));
+        }
+        g.addUndirectedEdge(2, 1, 2);
+        g.addUndirectedEdge(2, 3, 3);
+        g.addUndirectedEdge(2, 4, 4);
+        assertEquals("Balanced neighborhood should result in equal shortcuts and removals",
+                0, new ContractionGraph(g).getEdgeDifference(g.indexOf(2)));
+
+        g.addUndirectedEdge(1, 3, 1);
+        assertEquals("Existing better edges should reduce the edge difference",
+                -1, new ContractionGraph(g).getEdgeDifference(g.indexOf(2)));
+    }
+
+    @Test
+    public void testContractPreservesShortestPathsForTestGraph() throws Exception {
+        Graph g = loadTestGraph();
+        long contracted = 6L;
+        ContractionGraph cg = new ContractionGraph(g);
+        cg.contract(g.indexOf(contracted), null);
+        Graph after = remaining(cg);
+
+        for (long from : after.getVertexIds()) {
+            for (long to : after.getVertexIds()) {
+                assertEquals("Contracting vertex " + contracted + " should preserve distance for " + from + "->" + to,
+                        Dijkstra.shortestPath(g, from, to).result, BidirectionalDijkstra.shortestPath(after, from, to).result);
+            }
+        }
+    }
+
+    @Test
+    public void testContractionInIndexOrderPreservesDistances() {
+        Graph graph = TestGraphs.onewayGrid(8, 11);
+        ContractionGraph cg = new ContractionGraph(graph);
+        VertexIndex index = cg.vertexIndex();
+        ShortcutBuffer buffer = new ShortcutBuffer(index);
+        for (int vi = 0; vi < index.size(); vi++) {
+            cg.contract(vi, buffer);
+        }
+        assertEquals("Every vertex should be contracted", 0, cg.presentCount());
+        assertEquals("The caller's graph must stay intact", 8 * 8 + 1, graph.getVertexIds().size());
+
+        // Ranks follow the index, so the builder's indices are the ranks
+        CsrGraph.Builder builder = new CsrGraph.Builder(index.size(), 0);
+        int[] ranks = new int[index.size()];
+        for (int vi = 0; vi < index.size(); vi++) {
+            Graph.Vertex vertex = graph.getVertex(index.idOf(vi));
+            ranks[builder.addVertex(index.idOf(vi), vertex.x, vertex.y)] = vi;
+        }
+        graph.forEachArc((from, to, weight) -> builder.addEdge(from, to, weight, -1));
+        for (int entry = 0; entry < buffer.count; entry++) {
+            Graph.Shortcut shortcut = buffer.get(entry);
+            builder.addEdge(shortcut.from, shortcut.to, shortcut.weight, shortcut.via);
+        }
+        ChGraph ch = ChGraph.fromAugmented(builder.build(), ranks);
+        for (long s = 0; s < 64; s += 5) {
+            for (long t = 0; t < 64; t++) {
+                assertEquals("Distance " + s + " -> " + t,
+                        Dijkstra.shortestPath(graph, s, t).result, ChQuery.shortestPath(ch, s, t).result);
+            }
+        }
+    }
+
+    @Test
+    public void testShortcutCreatedWhenWitnessPathTooDeep() {
+        ContractionGraph cg = witnessChain(ContractionGraph.MAX_WITNESS_HOPS + 1);
+        assertEquals("Contracting should introduce shortcuts when witness exceeds hop cap",
+                2, cg.contract(cg.vertexIndex().indexOf(50), null));
+        assertEquals("Shortcut from source to target should exist", Arrays.asList(4), arcWeights(cg, 1, 200));
+    }
+
+    @Test
+    public void testShortcutSkippedWhenWitnessWithinHopCap() {
+        ContractionGraph cg = witnessChain(ContractionGraph.MAX_WITNESS_HOPS - 1);
+        assertEquals("Witness within hop cap should block shortcuts", 0, cg.contract(cg.vertexIndex().indexOf(50), null));
+        assertTrue("No direct shortcut from source to target expected", arcWeights(cg, 1, 200).isEmpty());
+    }
+
+    @Test
+    public void testRaisedHopLimitFindsLongerWitness() {
+        ContractionGraph cg = witnessChain(ContractionGraph.MAX_WITNESS_HOPS + 1);
+        cg.setWitnessLimits(ContractionGraph.MAX_WITNESS_HOPS + 1, Integer.MAX_VALUE);
+        assertEquals("A hop limit above the witness length should avoid both shortcuts",
+                0, cg.contract(cg.vertexIndex().indexOf(50), null));
+        assertThrows(IllegalArgumentException.class, () -> cg.setWitnessLimits(0, 10));
+    }
+
+    @Test
+    public void testContractRemovesReferencesToContractedVertex() {
+        Graph g = new Graph();
+        g.addVertex(1, new Graph.Vertex(0, 0));
+        g.addVertex(2, new Graph.Vertex(0, 1));
+        g.addVertex(3, new Graph.Vertex(0, 2));
+        g.addUndirectedEdge(1, 2, 3);
+        g.addUndirectedEdge(2, 3, 4);
+        ContractionGraph cg = new ContractionGraph(g);
+
+        cg.contract(g.indexOf(2), null);
+        for (long id : new long[] {1, 3}) {
+            assertTrue("Arcs of " + id + " should no longer reference vertex 2", arcWeights(cg, id, 2).isEmpty());
+            int v = g.indexOf(id);
+            for (int i = 0; i < cg.inDegree(v); i++) {
+                assertNotEquals("In-arcs of " + id + " should no longer reference vertex 2", g.indexOf(2), cg.inTail(v, i));
+            }
+        }
+    }
+
+    @Test
+    public void testImprovedShortcutUpdatesExistingEdge() {
+        Graph g = new Graph();
+        g.addVertex(1, new Graph.Vertex(0, 0));
+        g.addVertex(2, new Graph.Vertex(1, 1));
+        g.addVertex(3, new Graph.Vertex(2, 2));
+        g.addUndirectedEdge(1, 2, 5);
+        g.addUndirectedEdge(2, 3, 5);
+        g.addEdge(1, 3, -1, 20);
+        g.addEdge(3, 1, -1, 20);
+        ContractionGraph cg = new ContractionGraph(g);
+
+        assertEquals("Updating dominated shortcuts should not increase edge count", 0, cg.contract(g.indexOf(2), null));
+        assertEquals("Shortcut weight should be improved in place", Arrays.asList(10), arcWeights(cg, 1, 3));
+    }
+
+    @Test
+    public void testWitnessSearchSkipsForbiddenVertex() throws Exception {
+        Graph g = new Graph();
+        for (long id = 1; id <= 3; id++) {
+            g.addVertex(id, new Graph.Vertex(id, 0));
+        }
+        g.addEdge(1, 2, -1, 1);
+        g.addEdge(2, 3, -1, 1);
+        assertFalse("Forbidden vertex should prevent reaching the target", hasWitnessPath(new ContractionGraph(g), 1, 3, 2, 10));
+        assertTrue("Without it the target is reached", hasWitnessPath(new ContractionGraph(g), 1, 3, 1000, 10));
+    }
+
+    @Test
+    public void testWitnessSearchSkipsPathsOverLimit() throws Exception {
+        Graph g = new Graph();
+        for (long id = 10; id <= 30; id += 10) {
+            g.addVertex(id, new Graph.Vertex(id, 0));
+        }
+        g.addEdge(10, 20, -1, 10);
+        g.addEdge(20, 30, -1, 1);
+        assertFalse("Paths exceeding the weight limit should be ignored", hasWitnessPath(new ContractionGraph(g), 10, 30, 1000, 5));
+    }
+
+    @Test
+    public void testWitnessSearchSkipsWhenHopCapExceeded() throws Exception {
+        Graph g = new Graph();
+        g.addVertex(100, new Graph.Vertex(0, 0));
+        for (int i = 1; i <= 6; i++) {
+            g.addVertex(100 + i, new Graph.Vertex(i, 0));
+            g.addEdge(100 + i - 1, 100 + i, -1, 1);
+        }
+        assertFalse("Paths requiring more hops than allowed should be ignored",
+                hasWitnessPath(new ContractionGraph(g), 100, 106, 1000, 100));
+    }
+
+    private static Graph loadTestGraph() throws IOException {
+        Path path = Paths.get("test.graph");
+        if (!Files.exists(path)) {
+            path = Paths.get("..", "test.graph");
+        }
+        try (Scanner sc = new Scanner(Files.newInputStream(path))) {
+            int n = sc.nextInt();
+            int m = sc.nextInt();
+            Graph g = new Graph();
+            for (int i = 0; i < n; i++) {
+                g.addVertex(sc.nextLong(), new Graph.Vertex(sc.nextFloat(), sc.nextFloat()));
+            }
+            for (int i = 0; i < m; i++) {
+                g.addUndirectedEdge(sc.nextLong(), sc.nextLong(), sc.nextInt());
+            }
+            return g;
+        }
+    }
+
+    @Test
+    public void testFullBlocksAreRelocated() {
+        // 0 -> 1 -> {2..41}: contracting 1 adds 40 arcs to the single-arc block of vertex 0.
+        Graph g = new Graph();
+        for (long id = 0; id <= 41; id++) {
+            g.addVertex(id, new Graph.Vertex(0, 0));
+        }
+        g.addEdge(0, 1, -1, 1);
+        for (long id = 2; id <= 41; id++) {
+            g.addEdge(1, id, -1, (int) id);
+        }
+        ContractionGraph cg = new ContractionGraph(g);
+        VertexIndex index = cg.vertexIndex();
+        ShortcutBuffer buffer = new ShortcutBuffer(index);
+
+        assertEquals("Every pair needs a shortcut", 40, cg.contract(index.indexOf(1), buffer));
+        int tail = index.indexOf(0);
+        assertEquals("The grown block should hold all shortcuts", 40, cg.outDegree(tail));
+        for (int i = 0; i < cg.outDegree(tail); i++) {
+            int head = cg.outHead(tail, i);
+            assertEquals("In-arc mirror of " + index.idOf(head), 1, cg.inDegree(head));
+            assertEquals("In-arc mirror of " + index.idOf(head), tail, cg.inTail(head, 0));
+        }
+        for (int entry = 0; entry < buffer.count; entry++) {
+            Graph.Shortcut shortcut = buffer.get(entry);
+            assertEquals("Shortcut weight to " + shortcut.to, 1 + shortcut.to, shortcut.weight);
+            assertEquals("Shortcut via", 1L, shortcut.via);
+        }
+    }
+
+    @Test
+    public void testShortcutBufferKeepsLightestPerPair() {
+        Graph g = TestGraphs.onewayGrid(3, 1);
+        ShortcutBuffer buffer = new ShortcutBuffer(g.vertexIndex());
+        for (int i = 0; i < 100; i++) {
+            buffer.add(i % 9, (i + 1) % 9, 100 - i, i % 9);
+        }
+        buffer.add(0, 1, 1000, 4);
+
+        assertEquals("One entry per (from, to) pair", 9, buffer.size());
+        for (int entry = 0; entry < buffer.count; entry++) {
+            int from = buffer.from[entry];
+            assertEquals("Lightest weight for pair starting at " + from, 100 - (from == 0 ? 99 : 90 + from), buffer.weight[entry]);
+        }
+    }
+
+    @Test
+    public void testSimulationIsReusedUntilItsSearchSpaceChanges() {
+        // Path 1 - 2 - 3 with a detour 1 - 4 - 3 that is one too long, plus a far-away arc 8 - 9.
+        Graph g = new Graph();
+        for (long id = 1; id <= 9; id++) {
+            g.addVertex(id, new Graph.Vertex(0, 0));
+        }
+        g.addUndirectedEdge(1, 2, 2);
+        g.addUndirectedEdge(2, 3, 2);
+        g.addUndirectedEdge(1, 4, 2);
+        g.addUndirectedEdge(4, 3, 3);
+        g.addUndirectedEdge(8, 9, 1);
+        ContractionGraph cg = new ContractionGraph(g);
+        VertexIndex index = cg.vertexIndex();
+        ShortcutBuffer buffer = new ShortcutBuffer(index);
+
+        ContractionGraph.WitnessWorkspace ws = new ContractionGraph.WitnessWorkspace();
+        ContractionGraph.Simulation simulation = cg.simulateContraction(index.indexOf(2), ws, null);
+        assertEquals("Both directions of 1 - 3 need a shortcut", 2, simulation.shortcuts.size);
+        assertEquals("Two shortcuts replace four arcs", -2, simulation.edgeDifference());
+        assertTrue("Nothing changed yet", cg.isCurrent(simulation));
+
+        cg.contract(index.indexOf(9), buffer);
+        assertTrue("Changes outside the search space keep the simulation", cg.isCurrent(simulation));
+
+        cg.contract(index.indexOf(4), buffer);
+        assertFalse("Removing the detour invalidates the simulation", cg.isCurrent(simulation));
+
+        assertEquals("A stale simulation is recomputed before it is applied", 2,
+                cg.contract(index.indexOf(2), simulation, ws, buffer));
+        assertFalse("Contracted vertex should be removed", cg.isPresent(index.indexOf(2)));
+        assertEquals("Only the three contracted vertices are gone", 6, cg.presentCount());
+    }
+}
@@ -3,18 +3,19 @@ package ch;
 import static org.junit.Assert.*;
 
 import java.lang.reflect.Field;
-import java.lang.reflect.Method;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 public class ContractionHierachyTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
 
     private Graph buildCycleGraph() {
         Graph g = new Graph();
@@ -63,14 +64,14 @@ public class ContractionHierachyTest {
         Graph g = buildCycleGraph();
         ContractionHierachy ch = new ContractionHierachy(g);
 
-        Graph replay = g.copy();
+        ContractionGraph replay = new ContractionGraph(g);
         for (long vertex : ch.getContractionOrder()) {
             Integer recordedDiff = ch.getPriorityAtContraction(vertex);
             assertNotNull("Priority at contraction should be recorded", recordedDiff);
 
-            int currentDiff = replay.getEdgeDifference(vertex);
+            int currentDiff = replay.getEdgeDifference(g.indexOf(vertex));
             assertEquals("Edge difference should be recomputed lazily before contraction", recordedDiff.intValue(), currentDiff);
-            replay.contract(vertex);
+            replay.contract(g.indexOf(vertex), null);
         }
     }
 
@@ -117,27 +118,140 @@ public class ContractionHierachyTest {
     }
 
     @Test
-    public void testRecordShortcutsKeepsLightestEntry() throws Exception {
+    public void testRecordedShortcutsKeepLightestEntry() throws Exception {
         Graph g = new Graph();
         g.addVertex(1, new Graph.Vertex(0, 0));
         g.addVertex(2, new Graph.Vertex(1, 0));
 
         ContractionHierachy ch = new ContractionHierachy(g);
 
-        List<Graph.Shortcut> duplicates = Arrays.asList(
-                new Graph.Shortcut(1, 2, 12, 5),
-                new Graph.Shortcut(1, 2, 4, 6));
-
-        Method record = ContractionHierachy.class.getDeclaredMethod("recordShortcuts", List.class);
-        record.setAccessible(true);
-        record.invoke(ch, duplicates);
-
         Field mapField = ContractionHierachy.class.getDeclaredField("shortcuts");
         mapField.setAccessible(true);
-        @SuppressWarnings("unchecked")
-        Map<?, Graph.Shortcut> shortcutMap = (Map<?, Graph.Shortcut>) mapField.get(ch);
+        ShortcutBuffer shortcutMap = (ShortcutBuffer) mapField.get(ch);
+        shortcutMap.add(g.indexOf(1), g.indexOf(2), 12, 5);
+        shortcutMap.add(g.indexOf(1), g.indexOf(2), 4, 6);
         assertEquals("Only one shortcut per pair should be stored", 1, shortcutMap.size());
-        Graph.Shortcut entry = shortcutMap.values().iterator().next();
-        assertEquals("Stored weight should be the lightest one", 4, entry.weight);
+        assertEquals("Stored weight should be the lightest one", 4, shortcutMap.weight[0]);
+        assertEquals("Stored via should belong to the lightest one", 6L, shortcutMap.via[0]);
+    }
+
+    @Test
+    public void testParallelContractionMatchesDijkstra() {
+        Graph g = TestGraphs.onewayGrid(9, 5);
+        ContractionHierachy ch = new ContractionHierachy(g, new PreprocessOptions().threads(4));
+
+        List<Long> order = ch.getContractionOrder();
+        assertEquals("Parallel order should be a permutation of the vertex set", g.getVertexIds(), new HashSet<>(order));
+        for (int i = 0; i < order.size(); i++) {
+            assertEquals("Rank should match position in contraction order", Integer.valueOf(i), ch.getRank(order.get(i)));
+        }
+
+        ChGraph search = ch.toSearchGraph();
+        for (long s = 0; s < 81; s += 4) {
+            for (long t = 0; t < 81; t += 5) {
+                assertEquals("Parallel CH distance " + s + " -> " + t + " should match Dijkstra",
+                        Dijkstra.shortestPath(g, s, t).result, ChQuery.shortestPath(search, s, t).result);
+            }
+        }
+    }
+
+    @Test
+    public void testParallelContractionIsIndependentOfThreadCount() {
+        Graph g = TestGraphs.onewayGrid(8, 11);
+        ContractionHierachy two = new ContractionHierachy(g, new PreprocessOptions().threads(2));
+        ContractionHierachy eight = new ContractionHierachy(g, new PreprocessOptions().threads(8));
+
+        assertEquals("Contraction order should not depend on the thread count", two.getContractionOrder(), eight.getContractionOrder());
+        assertEquals("Shortcut count should not depend on the thread count",
+                two.getShortcutCountForTesting(), eight.getShortcutCountForTesting());
+    }
+
+    @Test
+    public void testWeightedPriorityMatchesDijkstraWithFewerShortcuts() {
+        Graph g = TestGraphs.onewayGrid(10, 23);
+        ContractionHierachy legacy = new ContractionHierachy(g);
+        ContractionHierachy weighted = new ContractionHierachy(g, new PreprocessOptions().priority(NodePriority.DEFAULT));
+
+        assertTrue("Witness-searched priorities should not add more shortcuts than the legacy edge difference",
+                weighted.getShortcutCountForTesting() <= legacy.getShortcutCountForTesting());
+        ChGraph search = weighted.toSearchGraph();
+        for (long s = 0; s < 100; s += 7) {
+            for (long t = 0; t < 100; t += 3) {
+                assertEquals("Weighted CH distance " + s + " -> " + t + " should match Dijkstra",
+                        Dijkstra.shortestPath(g, s, t).result, ChQuery.shortestPath(search, s, t).result);
+            }
+        }
+    }
+
+    @Test
+    public void testPriorityWeightsParseFromCommandLine() {
+        PreprocessOptions options = PreprocessOptions.parse(new String[] {"preprocess", "out.graph", "--priority", "3, 2,1,0"}, 2);
+        assertEquals("Weights should be read in order", "3,2,1,0", options.priority().toString());
+        assertSame("'default' should select the default weights", NodePriority.DEFAULT, NodePriority.parse("default"));
+        assertThrows(IllegalArgumentException.class, () -> NodePriority.parse("1,2,3"));
+    }
+
+    @Test
+    public void testParallelContractionRejectsPriorityUpdateOptions() {
+        for (String option : new String[] {"--update", "--full-update", "--update-threads"}) {
+            String value = option.equals("--update") ? "both" : "2";
+            assertThrows(option + " should be rejected after --threads", IllegalArgumentException.class,
+                    () -> PreprocessOptions.parse(new String[] {"--threads", "2", option, value}, 0));
+            assertThrows(option + " should be rejected before --threads", IllegalArgumentException.class,
+                    () -> PreprocessOptions.parse(new String[] {option, value, "--threads", "2"}, 0));
+            assertEquals("One thread keeps the update options", 1,
+                    PreprocessOptions.parse(new String[] {"--threads", "1", option, value}, 0).threads());
+        }
+    }
+
+    @Test
+    public void testEagerNeighbourUpdatesMatchDijkstraAndAreCounted() {
+        Graph g = TestGraphs.onewayGrid(9, 31);
+        PreprocessOptions options = new PreprocessOptions()
+                .priorityUpdates(PreprocessOptions.PriorityUpdate.NEIGHBOURS, 20, 2);
+        ContractionHierachy ch = new ContractionHierachy(g, options);
+
+        ContractionHierachy.UpdateCounters counters = ch.getUpdateCounters();
+        assertEquals("Every vertex is evaluated once up front", 82, counters.initial);
+        assertEquals("Eager updates should not re-check the queue top", 0, counters.lazy);
+        assertTrue("Neighbours of contracted vertices should be re-evaluated", counters.neighbours > 0);
+        assertEquals("A full pass should run after every 20 contractions while vertices remain", 4, counters.fullPasses);
+
+        ChGraph search = ch.toSearchGraph();
+        for (long s = 0; s < 81; s += 5) {
+            for (long t = 0; t < 81; t += 4) {
+                assertEquals("CH distance " + s + " -> " + t + " should match Dijkstra",
+                        Dijkstra.shortestPath(g, s, t).result, ChQuery.shortestPath(search, s, t).result);
+            }
+        }
+    }
+
+    @Test
+    public void testResumeFromCheckpointContinuesTheRun() throws Exception {
+        Graph g = TestGraphs.onewayGrid(9, 41);
+        Path checkpoint = folder.getRoot().toPath().resolve("grid.ckpt");
+        PreprocessOptions options = new PreprocessOptions().priority(NodePriority.DEFAULT).checkpoints(checkpoint, 30);
+        ContractionHierachy full = new ContractionHierachy(g, options);
+
+        PreprocessOptions resume = new PreprocessOptions().priority(NodePriority.DEFAULT).resumeFrom(checkpoint);
+        ContractionHierachy resumed = new ContractionHierachy(g, resume);
+        int restored = PreprocessCheckpoint.read(checkpoint).contracted();
+        assertTrue("The last checkpoint should be taken mid-run", restored > 0 && restored < 82);
+        assertEquals("The checkpointed prefix of the order should be kept",
+                full.getContractionOrder().subList(0, restored), resumed.getContractionOrder().subList(0, restored));
+        assertEquals("Every vertex should be ranked after resuming", 82, resumed.getContractionOrder().size());
+        assertEquals("Ranks should be a permutation", 82, new HashSet<>(resumed.getContractionOrder()).size());
+
+        ChGraph search = resumed.toSearchGraph();
+        for (long s = 0; s < 81; s += 5) {
+            for (long t = 0; t < 81; t += 4) {
+                assertEquals("CH distance " + s + " -> " + t + " should match Dijkstra",
+                        Dijkstra.shortestPath(g, s, t).result, ChQuery.shortestPath(search, s, t).result);
+            }
+        }
+
+        Graph other = TestGraphs.onewayGrid(8, 41);
+        assertThrows("A checkpoint of another graph must be rejected", IllegalArgumentException.class,
+                () -> new ContractionHierachy(other, resume));
     }
 }
@@ -0,0 +1,73 @@
+package ch;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class CoreAltTest {
+    private static final int SIDE = 8;
+    private static final int CORE = 10;
+
+    private Graph g;
+
+    @Before
+    public void setUp() {
+        g = TestGraphs.onewayGrid(SIDE, 37);
+    }
+
+    private void assertCoreRanks(ContractionHierachy hierarchy, ChGraph ch) {
+        int n = SIDE * SIDE + 1;
+        assertEquals("Contracted vertices", n - CORE, hierarchy.getContractionOrder().size());
+        assertEquals("Core start", n - CORE, ch.coreStart());
+        for (int v = ch.coreStart(); v < n; v++) {
+            assertEquals("Core vertices share the top rank", n - CORE, ch.rank(v));
+        }
+        assertEquals("Core graph", CORE, ch.core().vertexCount());
+    }
+
+    private void assertMatchesDijkstra(ChGraph ch) {
+        CoreAlt query = CoreAlt.withLandmarks(ch, 3, 1);
+        for (long s = 0; s < SIDE * SIDE; s += 3) {
+            for (long t = 0; t < SIDE * SIDE; t++) {
+                Integer expected = Dijkstra.shortestPath(g, s, t).result;
+                assertEquals("Core-ALT " + s + " -> " + t, expected, query.shortestPath(s, t).result);
+                assertEquals("CH query " + s + " -> " + t, expected, ChQuery.shortestPath(ch, s, t).result);
+            }
+        }
+        assertEquals("Unreachable", Integer.valueOf(-1), query.shortestPath(0, 1000).result);
+        assertEquals("Unknown id", Integer.valueOf(-1), query.shortestPath(0, 4242).result);
+    }
+
+    @Test
+    public void testCoreAltMatchesDijkstra() {
+        ContractionHierachy hierarchy = new ContractionHierachy(g, new PreprocessOptions().core(CORE));
+        ChGraph ch = hierarchy.toSearchGraph();
+        assertCoreRanks(hierarchy, ch);
+        assertMatchesDijkstra(ch);
+    }
+
+    @Test
+    public void testParallelContractionStopsAtTheCore() {
+        ContractionHierachy hierarchy = new ContractionHierachy(g, new PreprocessOptions().threads(2).core(CORE));
+        ChGraph ch = hierarchy.toSearchGraph();
+        assertCoreRanks(hierarchy, ch);
+        assertMatchesDijkstra(ch);
+    }
+
+    @Test
+    public void testFullHierarchyHasSingleVertexCore() {
+        ChGraph ch = new ContractionHierachy(g).toSearchGraph();
+        assertEquals("Core start", ch.vertexCount() - 1, ch.coreStart());
+        assertMatchesDijkstra(ch);
+    }
+
+    @Test
+    public void testCoreSizeOptions() {
+        assertEquals("Absolute", 7, new PreprocessOptions().core(7).coreSize(100));
+        assertEquals("Percentage rounds up", 3, PreprocessOptions.parse(new String[] {"--core", "2.5%"}, 0).coreSize(101));
+        assertEquals("Capped at the vertex count", 5, new PreprocessOptions().core(7).coreSize(5));
+        assertEquals("Full contraction by default", 0, new PreprocessOptions().coreSize(100));
+        assertThrows(IllegalArgumentException.class, () -> new PreprocessOptions().corePercent(150));
+    }
+}
@@ -0,0 +1,87 @@
+package ch;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class CsrGraphTest {
+    private Graph g;
+
+    @Before
+    public void setUp() {
+        g = new Graph();
+        g.addVertex(10, new Graph.Vertex(0, 0));
+        g.addVertex(20, new Graph.Vertex(1, 1));
+        g.addVertex(30, new Graph.Vertex(2, 2));
+        g.addVertex(40, new Graph.Vertex(3, 3));
+
+        // Same shape as the Dijkstra fixtures:
+        // 10 --(4)-- 20 --(1)-- 30
+        //   \                  /
+        //    (8)            (2)
+        //      \            /
+        //            40
+        g.addUndirectedEdge(10, 20, 4);
+        g.addUndirectedEdge(20, 30, 1);
+        g.addUndirectedEdge(10, 40, 8);
+        g.addUndirectedEdge(30, 40, 2);
+    }
+
+    @Test
+    public void testFromGraphKeepsEveryArcInBothDirections() {
+        CsrGraph csr = CsrGraph.fromGraph(g);
+
+        assertEquals("Every vertex should get a dense index", 4, csr.vertexCount());
+        assertEquals("Every directed arc should be stored once", 8, csr.arcCount());
+        for (long id : new long[] {10, 20, 30, 40}) {
+            int v = csr.indexOf(id);
+            assertTrue("Known vertex should be translated", v >= 0);
+            assertEquals("Dense index should translate back to the external id", id, csr.idOf(v));
+            assertEquals("Out-degree should match the adjacency list", g.getNeighbours(id).size(), csr.outDegree(v));
+            assertEquals("In-degree should match the incoming list", g.getIncoming(id).size(), csr.inDegree(v));
+        }
+        assertEquals("Unknown vertices should translate to -1", -1, csr.indexOf(99));
+    }
+
+    @Test
+    public void testBuilderStoresViaAsDenseIndex() {
+        CsrGraph.Builder builder = new CsrGraph.Builder(3, 2);
+        builder.addVertex(7, 0, 0);
+        builder.addVertex(5, 1, 0);
+        builder.addVertex(9, 2, 0);
+        builder.addEdge(5, 9, 3, 7);
+        builder.addEdge(9, 5, 3, -1);
+        CsrGraph csr = builder.build();
+
+        int from = csr.indexOf(5);
+        int arc = csr.outOffsets[from];
+        assertEquals("Shortcut should point at vertex 9", 9, csr.idOf(csr.outTargets[arc]));
+        assertEquals("Shortcut should remember its contracted vertex", 7, csr.idOf(csr.outVia[arc]));
+        assertEquals("Original arcs should have no via vertex", -1, csr.outVia[csr.outOffsets[csr.indexOf(9)]]);
+        assertEquals("Coordinates should follow the vertex", 1f, csr.xs[from], 0f);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testBuilderRejectsArcsToUnknownVertices() {
+        CsrGraph.Builder builder = new CsrGraph.Builder(1, 1);
+        builder.addVertex(1, 0, 0);
+        builder.addEdge(1, 2, 5, -1);
+        builder.build();
+    }
+
+    @Test
+    public void testSearchesAgreeWithHashMapGraph() {
+        CsrGraph csr = CsrGraph.fromGraph(g);
+        long[] ids = {10, 20, 30, 40};
+        for (long s : ids) {
+            for (long t : ids) {
+                int expected = Dijkstra.shortestPath(g, s, t).result;
+                assertEquals("Dijkstra on CSR should match for " + s + "->" + t,
+                        expected, (int) Dijkstra.shortestPath(csr, s, t).result);
+                assertEquals("Bidirectional Dijkstra on CSR should match for " + s + "->" + t,
+                        expected, (int) BidirectionalDijkstra.shortestPath(csr, s, t).result);
+            }
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package ch;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class DistanceTableTest {
+    private static final int SIDE = 8;
+
+    private Graph g;
+    private ChGraph ch;
+
+    @Before
+    public void setUp() {
+        g = TestGraphs.onewayGrid(SIDE, 17);
+        ch = new ContractionHierachy(g).toSearchGraph();
+    }
+
+    @Test
+    public void testTableMatchesDijkstra() {
+        long[] sources = {0, 9, 27, 63, 1000, 5, 42};
+        long[] targets = {63, 0, 14, 1000, 36, 7, 0, 27};
+
+        for (int threads : new int[] {1, 3}) {
+            int[] table = new DistanceTable(ch, threads).compute(sources, targets);
+            assertEquals("Flat matrix size", sources.length * targets.length, table.length);
+            for (int i = 0; i < sources.length; i++) {
+                for (int j = 0; j < targets.length; j++) {
+                    assertEquals("Distance " + sources[i] + " -> " + targets[j] + " with " + threads + " threads",
+                            Dijkstra.shortestPath(g, sources[i], targets[j]).result, Integer.valueOf(table[i * targets.length + j]));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testUnknownIdsAndEmptyInputs() {
+        int[] table = ChQuery.distanceTable(ch, new long[] {0, 777}, new long[] {888, 63});
+        assertEquals("Unknown target", -1, table[0]);
+        assertEquals("Known pair", (int) Dijkstra.shortestPath(g, 0, 63).result, table[1]);
+        assertEquals("Unknown source", -1, table[2]);
+        assertEquals("Unknown source", -1, table[3]);
+
+        assertEquals("No sources", 0, ChQuery.distanceTable(ch, new long[0], new long[] {1, 2}).length);
+        assertEquals("No targets", 0, ChQuery.distanceTable(ch, new long[] {1, 2}, new long[0]).length);
+        assertThrows(IllegalArgumentException.class, () -> new DistanceTable(ch, 0));
+    }
+}
@@ -0,0 +1,93 @@
+package ch;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class GraphReaderTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testParsesMixedTokens() {
+        GraphReader in = GraphReader.of("3 -2\n4872173057 11.678480 55.137427\r\n\t-7 1e3 -0.5\n");
+
+        assertEquals("Header count", 3, in.nextInt());
+        assertEquals("Negative int", -2, in.nextInt());
+        assertEquals("Long id", 4872173057L, in.nextLong());
+        assertEquals("Coordinate x", 11.678480f, in.nextFloat(), 0f);
+        assertEquals("Coordinate y", 55.137427f, in.nextFloat(), 0f);
+        assertEquals("Negative long", -7L, in.nextLong());
+        assertEquals("Exponent float", 1000f, in.nextFloat(), 0f);
+        assertEquals("Negative float", -0.5f, in.nextFloat(), 0f);
+        assertFalse("Input should be exhausted", in.hasNext());
+    }
+
+    @Test
+    public void testFloatsMatchParseFloat() {
+        StringBuilder text = new StringBuilder();
+        Random random = new Random(5);
+        float[] expected = new float[2000];
+        for (int i = 0; i < expected.length; i++) {
+            String token = String.format(Locale.US, "%f", (random.nextDouble() - 0.5) * 400);
+            expected[i] = Float.parseFloat(token);
+            text.append(token).append(' ');
+        }
+        GraphReader in = GraphReader.of(text.toString());
+        for (float value : expected) {
+            assertEquals("Parsed float should equal Float.parseFloat", value, in.nextFloat(), 0f);
+        }
+    }
+
+    @Test
+    public void testRejectsMalformedNumbers() {
+        assertThrows(IllegalStateException.class, () -> GraphReader.of("12a").nextLong());
+        assertThrows(IllegalStateException.class, () -> GraphReader.of("1.5").nextInt());
+        assertThrows(IllegalStateException.class, () -> GraphReader.of("   ").nextLong());
+        assertThrows(IllegalStateException.class, () -> GraphReader.of("3000000000").nextInt());
+    }
+
+    @Test
+    public void testReadsTokensAcrossChunksAndGzip() throws IOException {
+        // More than one 1 MiB chunk, so tokens straddle refills.
+        int count = 300_000;
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            text.append(1_000_000_000L + i).append(i % 7 == 0 ? "\n" : " ");
+        }
+        byte[] bytes = text.toString().getBytes(StandardCharsets.US_ASCII);
+
+        Path gz = folder.getRoot().toPath().resolve("ids.gz");
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(gz))) {
+            out.write(bytes);
+        }
+        Path plain = folder.getRoot().toPath().resolve("ids.graph");
+        Files.write(plain, bytes);
+
+        try (GraphReader fromStream = GraphReader.of(new ByteArrayInputStream(bytes));
+             GraphReader fromFile = GraphReader.open(plain);
+             GraphReader fromGzip = GraphReader.open(gz)) {
+            for (int i = 0; i < count; i++) {
+                long expected = 1_000_000_000L + i;
+                assertEquals("Stream token " + i, expected, fromStream.nextLong());
+                assertEquals("File token " + i, expected, fromFile.nextLong());
+                assertEquals("Gzip token " + i, expected, fromGzip.nextLong());
+            }
+            assertFalse("Stream should be exhausted", fromStream.hasNext());
+            assertFalse("File should be exhausted", fromFile.hasNext());
+            assertFalse("Gzip should be exhausted", fromGzip.hasNext());
+        }
+    }
+}
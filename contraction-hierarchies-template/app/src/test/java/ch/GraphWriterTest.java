@@ -0,0 +1,101 @@
+package ch;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class GraphWriterTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testFixedMatchesStringFormat() throws IOException {
+        Random random = new Random(11);
+        float[] values = new float[5000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (float) ((random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(8) - 2));
+        }
+        values[0] = 0f;
+        values[1] = -0f;
+        values[2] = 0.0078125f; // exact tie at the seventh decimal
+        values[3] = -1e-8f;
+        values[4] = 123456.789f;
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        StringBuilder expected = new StringBuilder();
+        try (GraphWriter writer = GraphWriter.of(bytes)) {
+            for (float value : values) {
+                writer.writeFixed(value).newline();
+                expected.append(String.format(Locale.US, "%f", value)).append('\n');
+            }
+        }
+        assertEquals("Fixed formatting should match %f", expected.toString(),
+                new String(bytes.toByteArray(), StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    public void testFixedMatchesStringFormatForRandomBits() throws IOException {
+        Random random = new Random(7);
+        float[] values = new float[200_000];
+        for (int i = 0; i < values.length; i += 4) {
+            values[i] = Float.intBitsToFloat(random.nextInt());
+            // Ties at the seventh decimal (odd multiples of 1/128) and their neighbours
+            float tie = (random.nextInt(1 << 16) * 128 + 2 * random.nextInt(64) + 1) / 128f;
+            values[i + 1] = tie;
+            values[i + 2] = Math.nextUp(tie);
+            values[i + 3] = -Math.nextDown(tie);
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        StringBuilder expected = new StringBuilder();
+        try (GraphWriter writer = GraphWriter.of(bytes)) {
+            for (float value : values) {
+                writer.writeFixed(value).newline();
+                expected.append(String.format(Locale.US, "%f", value)).append('\n');
+            }
+        }
+        assertEquals("Fixed formatting should match %f for any float", expected.toString(),
+                new String(bytes.toByteArray(), StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    public void testLongsMatchToString() throws IOException {
+        long[] values = {0, 7, -7, 4872173057L, Long.MAX_VALUE, Long.MIN_VALUE, Integer.MIN_VALUE};
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        StringBuilder expected = new StringBuilder();
+        try (GraphWriter writer = GraphWriter.of(bytes)) {
+            for (long value : values) {
+                writer.writeLong(value).space();
+                expected.append(value).append(' ');
+            }
+        }
+        assertEquals("Longs should be written in decimal", expected.toString(),
+                new String(bytes.toByteArray(), StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    public void testGzipRoundTripThroughReader() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("numbers.graph.gz");
+        try (GraphWriter writer = GraphWriter.open(file)) {
+            for (int i = 0; i < 200_000; i++) {
+                writer.writeLong(i * 31L).space().writeFixed(i / 8f).newline();
+            }
+        }
+        try (GraphReader in = GraphReader.open(file)) {
+            for (int i = 0; i < 200_000; i++) {
+                assertEquals("Long " + i, i * 31L, in.nextLong());
+                assertEquals("Float " + i, i / 8f, in.nextFloat(), 0f);
+            }
+            assertFalse("Reader should be exhausted", in.hasNext());
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package ch;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class IndexedMinHeapTest {
+
+    @Test
+    public void testPollReturnsKeysInAscendingOrderForBothArities() {
+        for (int arity : new int[] {IndexedMinHeap.BINARY, IndexedMinHeap.QUATERNARY}) {
+            IndexedMinHeap heap = new IndexedMinHeap(1000, arity);
+            Random random = new Random(arity);
+            int[] keys = new int[1000];
+            for (int id = 0; id < keys.length; id++) {
+                keys[id] = random.nextInt(10_000);
+                heap.push(id, keys[id]);
+            }
+            int[] sorted = keys.clone();
+            Arrays.sort(sorted);
+            for (int expected : sorted) {
+                assertEquals("Arity " + arity + " should poll the smallest key first", expected, heap.peekKey());
+                int id = heap.poll();
+                assertEquals("Polled id should carry the polled key", expected, keys[id]);
+                assertFalse("Polled id should leave the heap", heap.contains(id));
+            }
+            assertTrue(heap.isEmpty());
+        }
+    }
+
+    @Test
+    public void testPushMovesContainedIdInsteadOfDuplicating() {
+        IndexedMinHeap heap = new IndexedMinHeap(4, IndexedMinHeap.BINARY);
+        heap.push(0, 10);
+        heap.push(1, 20);
+        heap.push(2, 30);
+
+        heap.push(2, 5);
+        assertEquals("Decrease-key should not add a second entry", 3, heap.size());
+        assertEquals("Decreased id should move to the top", 2, heap.peek());
+
+        heap.push(2, 40);
+        assertEquals("Increase-key should sink the id again", 0, heap.peek());
+        assertEquals(40, heap.key(2));
+    }
+
+    @Test
+    public void testDecreaseKeyIgnoresLargerKeys() {
+        IndexedMinHeap heap = new IndexedMinHeap(2);
+        assertTrue("Absent ids should be inserted", heap.decreaseKey(1, 7));
+        assertFalse("A larger key should not replace a smaller one", heap.decreaseKey(1, 9));
+        assertEquals(7, heap.key(1));
+        assertTrue(heap.decreaseKey(1, 3));
+        assertEquals(3, heap.key(1));
+    }
+
+    @Test
+    public void testRemoveAndClear() {
+        IndexedMinHeap heap = new IndexedMinHeap(8);
+        for (int id = 0; id < 8; id++) {
+            heap.push(id, 8 - id);
+        }
+        heap.remove(7);
+        assertFalse(heap.contains(7));
+        assertEquals("Next smallest key should surface after removal", 6, heap.peek());
+
+        heap.clear();
+        assertTrue("Clear should empty the heap", heap.isEmpty());
+        for (int id = 0; id < 8; id++) {
+            assertFalse("Clear should forget every id", heap.contains(id));
+        }
+        heap.push(3, 1);
+        assertEquals("Heap should be reusable after clear", 3, heap.poll());
+    }
+
+    @Test
+    public void testEnsureCapacityKeepsEntries() {
+        IndexedMinHeap heap = new IndexedMinHeap(2);
+        heap.push(1, 4);
+        heap.ensureCapacity(100);
+        heap.push(99, 2);
+        assertEquals(99, heap.poll());
+        assertEquals(1, heap.poll());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsArityThatIsNotAPowerOfTwo() {
+        new IndexedMinHeap(4, 3);
+    }
+}
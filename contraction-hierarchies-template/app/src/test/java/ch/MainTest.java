@@ -4,7 +4,6 @@ import static org.junit.Assert.assertThrows;
 
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.util.Scanner;
 
 import org.junit.Test;
 
@@ -22,11 +21,11 @@ public class MainTest {
     }
 
     private static Graph invokeReadGraph(String data) throws Exception {
-        Method method = Main.class.getDeclaredMethod("readOriginalGraph", Scanner.class);
+        Method method = Main.class.getDeclaredMethod("readOriginalGraph", GraphReader.class);
         method.setAccessible(true);
-        try (Scanner sc = new Scanner(data)) {
+        try (GraphReader in = GraphReader.of(data)) {
             try {
-                return (Graph) method.invoke(null, sc);
+                return (Graph) method.invoke(null, in);
             } catch (InvocationTargetException ex) {
                 Throwable cause = ex.getCause();
                 if (cause instanceof RuntimeException) {
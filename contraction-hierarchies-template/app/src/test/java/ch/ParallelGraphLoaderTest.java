@@ -0,0 +1,114 @@
+package ch;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ParallelGraphLoaderTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path writeGraph(int n, int m, long seed) throws IOException {
+        Random random = new Random(seed);
+        StringBuilder text = new StringBuilder().append(n).append(' ').append(m).append('\n');
+        for (int i = 0; i < n; i++) {
+            text.append(1000 + 7L * i).append(' ')
+                    .append(String.format(Locale.US, "%f %f", random.nextFloat() * 10, 50 + random.nextFloat()))
+                    .append('\n');
+        }
+        for (int e = 0; e < m; e++) {
+            text.append(1000 + 7L * random.nextInt(n)).append(' ')
+                    .append(1000 + 7L * random.nextInt(n)).append(' ')
+                    .append(1 + random.nextInt(500)).append('\n');
+        }
+        Path file = folder.newFile().toPath();
+        Files.writeString(file, text);
+        return file;
+    }
+
+    @Test
+    public void testCsrMatchesSequentialBuilder() throws IOException {
+        Path file = writeGraph(20_000, 50_000, 1);
+        CsrGraph parallel = ParallelGraphLoader.read(file).toCsr();
+
+        CsrGraph.Builder builder = new CsrGraph.Builder(0, 0);
+        try (GraphReader in = GraphReader.open(file)) {
+            int n = in.nextInt();
+            int m = in.nextInt();
+            for (int i = 0; i < n; i++) {
+                builder.addVertex(in.nextLong(), in.nextFloat(), in.nextFloat());
+            }
+            for (int e = 0; e < m; e++) {
+                builder.addUndirectedEdge(in.nextLong(), in.nextLong(), in.nextInt());
+            }
+        }
+        CsrGraph sequential = builder.build();
+
+        assertEquals("Vertex count", sequential.vertexCount(), parallel.vertexCount());
+        for (int v = 0; v < sequential.vertexCount(); v++) {
+            assertEquals("Dense indices should follow file order", sequential.idOf(v), parallel.idOf(v));
+            assertEquals("x of " + v, sequential.xs[v], parallel.xs[v], 0f);
+            assertEquals("y of " + v, sequential.ys[v], parallel.ys[v], 0f);
+        }
+        assertArrayEquals("Out offsets", sequential.outOffsets, parallel.outOffsets);
+        assertArrayEquals("Out targets", sequential.outTargets, parallel.outTargets);
+        assertArrayEquals("Out weights", sequential.outWeights, parallel.outWeights);
+        assertArrayEquals("In offsets", sequential.inOffsets, parallel.inOffsets);
+        assertArrayEquals("In sources", sequential.inSources, parallel.inSources);
+        assertArrayEquals("In weights", sequential.inWeights, parallel.inWeights);
+    }
+
+    @Test
+    public void testToGraphMatchesSequentialReader() throws IOException {
+        Path file = writeGraph(300, 900, 2);
+        Graph parallel = ParallelGraphLoader.read(file).toGraph();
+
+        Graph sequential = new Graph();
+        try (GraphReader in = GraphReader.open(file)) {
+            int n = in.nextInt();
+            int m = in.nextInt();
+            for (int i = 0; i < n; i++) {
+                sequential.addVertex(in.nextLong(), new Graph.Vertex(in.nextFloat(), in.nextFloat()));
+            }
+            for (int e = 0; e < m; e++) {
+                sequential.addUndirectedEdge(in.nextLong(), in.nextLong(), in.nextInt());
+            }
+        }
+
+        assertEquals("Every vertex should be loaded", sequential.getVertexIds(), parallel.getVertexIds());
+        for (long id : sequential.getVertexIds()) {
+            assertEquals("Degree of " + id, degree(sequential, id), degree(parallel, id));
+        }
+    }
+
+    private static int degree(Graph g, long id) {
+        List<Graph.Edge> neighbours = g.getNeighbours(id);
+        return neighbours == null ? 0 : neighbours.size();
+    }
+
+    @Test
+    public void testMissingEdgesKeepSequentialMessage() throws IOException {
+        Path file = folder.newFile().toPath();
+        Files.writeString(file, "2 2\n1 0 0\n2 1 1\n1 2 5\n");
+
+        IllegalStateException ex = assertThrows(IllegalStateException.class, () -> ParallelGraphLoader.read(file));
+        assertEquals("Input declared 2 edges but only 1 were read", ex.getMessage());
+    }
+
+    @Test
+    public void testMissingVerticesAreReported() throws IOException {
+        Path file = folder.newFile().toPath();
+        Files.writeString(file, "3 0\n1 0 0\n2 1 1\n");
+
+        assertThrows(IllegalStateException.class, () -> ParallelGraphLoader.read(file));
+    }
+}
@@ -0,0 +1,92 @@
+package ch;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class PathUnpackerTest {
+    private Graph g;
+    private ChGraph ch;
+
+    @Before
+    public void setUp() {
+        g = new Graph();
+        Random random = new Random(23);
+        int side = 7;
+        for (int y = 0; y < side; y++) {
+            for (int x = 0; x < side; x++) {
+                g.addVertex(500 + y * side + x, new Graph.Vertex(x, y));
+            }
+        }
+        for (int y = 0; y < side; y++) {
+            for (int x = 0; x < side; x++) {
+                long id = 500 + y * side + x;
+                if (x + 1 < side) {
+                    g.addUndirectedEdge(id, id + 1, 1 + random.nextInt(30));
+                }
+                if (y + 1 < side) {
+                    g.addUndirectedEdge(id, id + side, 1 + random.nextInt(30));
+                }
+            }
+        }
+        ch = new ContractionHierachy(g).toSearchGraph();
+    }
+
+    // Weight of the path over original edges, or -1 if two consecutive vertices are not adjacent
+    private int pathWeight(long[] path) {
+        int total = 0;
+        for (int i = 0; i + 1 < path.length; i++) {
+            int best = -1;
+            List<Graph.Edge> neighbours = g.getNeighbours(path[i]);
+            for (Graph.Edge edge : neighbours) {
+                if (edge.to == path[i + 1] && (best < 0 || edge.weight < best)) {
+                    best = edge.weight;
+                }
+            }
+            if (best < 0) {
+                return -1;
+            }
+            total += best;
+        }
+        return total;
+    }
+
+    @Test
+    public void testRoutesFollowOriginalEdges() {
+        PathUnpacker unpacker = new PathUnpacker(ch);
+        for (long s = 500; s < 549; s += 3) {
+            for (long t = 500; t < 549; t += 5) {
+                Result<Integer> result = ChQuery.route(ch, s, t, unpacker);
+                assertNotNull("Connected pair should have a path", result.path);
+                assertEquals("Path should start at the source", s, result.path[0]);
+                assertEquals("Path should end at the target", t, result.path[result.path.length - 1]);
+                assertEquals("Path weight should equal the distance " + s + " -> " + t,
+                        (int) result.result, pathWeight(result.path));
+            }
+        }
+    }
+
+    @Test
+    public void testCacheGivesTheSameRoutes() {
+        PathUnpacker plain = new PathUnpacker(ch);
+        PathUnpacker cached = new PathUnpacker(ch, 10_000);
+        assertTrue("Budget should allow some shortcuts to be cached", cached.cachedShortcuts() > 0);
+        assertTrue("Cache should respect its budget", cached.cachedVertices() <= 10_000);
+        for (long s = 500; s < 549; s += 2) {
+            long t = 548 - (s - 500);
+            assertArrayEquals("Cached unpacking " + s + " -> " + t,
+                    ChQuery.route(ch, s, t, plain).path, ChQuery.route(ch, s, t, cached).path);
+        }
+    }
+
+    @Test
+    public void testTrivialAndMissingRoutes() {
+        PathUnpacker unpacker = new PathUnpacker(ch);
+        assertArrayEquals("Source equals target", new long[] {510}, ChQuery.route(ch, 510, 510, unpacker).path);
+        assertNull("Unknown vertex has no path", ChQuery.route(ch, 510, 9999, unpacker).path);
+    }
+}
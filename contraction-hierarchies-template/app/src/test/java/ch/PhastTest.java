@@ -0,0 +1,55 @@
+package ch;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class PhastTest {
+    private static final int SIDE = 8;
+
+    private Graph g;
+    private ChGraph ch;
+
+    @Before
+    public void setUp() {
+        g = TestGraphs.onewayGrid(SIDE, 29);
+        ch = new ContractionHierachy(g).toSearchGraph();
+    }
+
+    private void assertMatchesDijkstra(long source, int[] dist) {
+        assertEquals("One distance per vertex", ch.vertexCount(), dist.length);
+        for (int v = 0; v < dist.length; v++) {
+            long target = ch.idOf(v);
+            assertEquals("Distance " + source + " -> " + target,
+                    Dijkstra.shortestPath(g, source, target).result, Integer.valueOf(dist[v]));
+        }
+    }
+
+    @Test
+    public void testOneToAllMatchesDijkstra() {
+        Phast phast = new Phast(ch);
+        for (long source : new long[] {0, 27, 63, 1000}) {
+            assertMatchesDijkstra(source, phast.distances(source));
+        }
+        assertNull("Unknown source", phast.distances(4242));
+    }
+
+    @Test
+    public void testBatchedSourcesMatchDijkstra() {
+        // 21 sources: a full batch of 16 and a partial one, plus an unknown id in between
+        long[] sources = new long[22];
+        for (int i = 0; i < 21; i++) {
+            sources[i < 10 ? i : i + 1] = (i * 3) % (SIDE * SIDE);
+        }
+        sources[10] = 4242;
+        int[][] all = new Phast(ch).distances(sources);
+        assertEquals("One array per source", sources.length, all.length);
+        assertNull("Unknown source", all[10]);
+        for (int i = 0; i < sources.length; i++) {
+            if (i != 10) {
+                assertMatchesDijkstra(sources[i], all[i]);
+            }
+        }
+    }
+}
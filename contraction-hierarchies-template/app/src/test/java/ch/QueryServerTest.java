@@ -0,0 +1,87 @@
+package ch;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class QueryServerTest {
+    private Graph g;
+    private ChGraph ch;
+
+    @Before
+    public void setUp() {
+        g = new Graph();
+        for (int i = 0; i < 5; i++) {
+            g.addVertex(i + 1, new Graph.Vertex(i, 0));
+        }
+        // 1 -(3)- 2 -(4)- 3 -(2)- 4 -(6)- 5, plus a detour 1 -(20)- 5
+        g.addUndirectedEdge(1, 2, 3);
+        g.addUndirectedEdge(2, 3, 4);
+        g.addUndirectedEdge(3, 4, 2);
+        g.addUndirectedEdge(4, 5, 6);
+        g.addUndirectedEdge(1, 5, 20);
+        ch = new ContractionHierachy(g).toSearchGraph();
+    }
+
+    @Test
+    public void testAnswerReportsDistance() throws IOException {
+        try (QueryServer server = new QueryServer(ch, 1)) {
+            assertTrue("Should answer with the shortest distance", server.answer("1 4").startsWith("distance=9 "));
+            assertTrue("Should answer with the detour when shorter", server.answer(" 5  1 ").startsWith("distance=15 "));
+        }
+    }
+
+    @Test
+    public void testAnswerRejectsBadRequests() throws IOException {
+        try (QueryServer server = new QueryServer(ch, 1)) {
+            assertEquals("Wrong arity", "error=expected '<source> <target>'", server.answer("1"));
+            assertEquals("Non-numeric ids", "error=vertex ids must be integers", server.answer("a b"));
+            assertTrue("Unknown vertex answers like the query command", server.answer("1 99").startsWith("distance=-1 relaxed=0 "));
+        }
+    }
+
+    @Test
+    public void testSessionStopsAtQuit() throws IOException {
+        StringWriter out = new StringWriter();
+        try (QueryServer server = new QueryServer(ch, 1)) {
+            server.serve(new BufferedReader(new StringReader("1 2\n\n2 3\nquit\n3 4\n")), out);
+        }
+        String[] lines = out.toString().split("\n");
+        assertEquals("One reply per request before quit", 2, lines.length);
+        assertTrue("First reply", lines[0].startsWith("distance=3 "));
+        assertTrue("Second reply", lines[1].startsWith("distance=4 "));
+    }
+
+    @Test
+    public void testTcpClientsAreServedConcurrently() throws Exception {
+        try (QueryServer server = new QueryServer(ch, 1)) {
+            int port = server.start(0);
+            try (Socket first = new Socket(InetAddress.getLoopbackAddress(), port);
+                 Socket second = new Socket(InetAddress.getLoopbackAddress(), port)) {
+                // The first connection stays open while the second is answered by the only worker.
+                assertTrue("Second client", ask(second, "2 5").startsWith("distance=12 "));
+                assertTrue("First client", ask(first, "1 3").startsWith("distance=7 "));
+            }
+        }
+    }
+
+    private static String ask(Socket socket, String request) throws IOException {
+        Writer out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.US_ASCII);
+        out.write(request + "\n");
+        out.flush();
+        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+        return in.readLine();
+    }
+}
@@ -0,0 +1,91 @@
+package ch;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import org.junit.Test;
+
+public class SearchWorkspaceTest {
+
+    private static CsrGraph buildGraph() {
+        // 1 --(4)-- 2 --(1)-- 3 --(2)-- 4, plus 1 --(8)-- 4 and an isolated vertex 5
+        CsrGraph.Builder builder = new CsrGraph.Builder(5, 10);
+        for (long id = 1; id <= 5; id++) {
+            builder.addVertex(id, id, 0);
+        }
+        builder.addUndirectedEdge(1, 2, 4);
+        builder.addUndirectedEdge(2, 3, 1);
+        builder.addUndirectedEdge(3, 4, 2);
+        builder.addUndirectedEdge(1, 4, 8);
+        return builder.build();
+    }
+
+    @Test
+    public void testResetForgetsPreviousDistances() {
+        SearchWorkspace ws = new SearchWorkspace(3);
+        ws.setForward(1, 5, -1);
+        ws.setBackward(2, 7, -1);
+        assertEquals(5, ws.forward(1));
+
+        ws.reset();
+        assertEquals("Forward distances should be stale after reset", SearchWorkspace.INF, ws.forward(1));
+        assertEquals("Backward distances should be stale after reset", SearchWorkspace.INF, ws.backward(2));
+    }
+
+    @Test
+    public void testReusedWorkspaceGivesSameAnswersAsFreshOne() {
+        CsrGraph g = buildGraph();
+        SearchWorkspace shared = new SearchWorkspace(g.vertexCount());
+        for (long s = 1; s <= 5; s++) {
+            for (long t = 1; t <= 5; t++) {
+                int fresh = Dijkstra.shortestPath(g, s, t, new SearchWorkspace(g.vertexCount())).result;
+                assertEquals("Dijkstra should not see distances of earlier queries",
+                        fresh, (int) Dijkstra.shortestPath(g, s, t, shared).result);
+                assertEquals("Bidirectional search should not see distances of earlier queries",
+                        fresh, (int) BidirectionalDijkstra.shortestPath(g, s, t, null, shared).result);
+            }
+        }
+        assertEquals("Unreachable vertex should give -1", -1, (int) Dijkstra.shortestPath(g, 1, 5, shared).result);
+    }
+
+    @Test
+    public void testForThreadReusesAndGrowsWorkspace() {
+        SearchWorkspace small = SearchWorkspace.forThread(4);
+        assertSame("Same thread should get the pooled workspace", small, SearchWorkspace.forThread(2));
+        SearchWorkspace large = SearchWorkspace.forThread(small.capacity() + 1);
+        assertTrue("Pool should grow for larger graphs", large.capacity() > small.capacity());
+    }
+
+    @Test
+    public void testSteadyStateSearchesDoNotAllocate() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue("JVM cannot count allocated bytes per thread",
+                bean instanceof com.sun.management.ThreadMXBean
+                        && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported());
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+
+        CsrGraph g = buildGraph();
+        SearchWorkspace ws = new SearchWorkspace(g.vertexCount());
+        int s = g.indexOf(1);
+        int t = g.indexOf(4);
+        for (int i = 0; i < 1_000; i++) {
+            Dijkstra.distance(g, s, t, ws);
+            BidirectionalDijkstra.distance(g, s, t, null, ws);
+        }
+
+        long id = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(id);
+        int checksum = 0;
+        for (int i = 0; i < 1_000; i++) {
+            checksum += Dijkstra.distance(g, s, t, ws);
+            checksum += BidirectionalDijkstra.distance(g, s, t, null, ws);
+        }
+        long allocated = threads.getThreadAllocatedBytes(id) - before;
+        assertEquals(2_000 * 7, checksum);
+        // Allow for the bookkeeping of the measurement call itself.
+        assertTrue("Searches on a warm workspace should not allocate, saw " + allocated + " bytes", allocated < 1_024);
+    }
+}
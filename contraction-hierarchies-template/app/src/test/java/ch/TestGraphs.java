@@ -0,0 +1,50 @@
+package ch;
+
+import java.util.Random;
+
+/**
+ * Shared graph fixtures for the search tests.
+ */
+final class TestGraphs {
+    /** Id of the isolated vertex every grid gets. */
+    static final long UNREACHABLE = 1000;
+
+    private TestGraphs() {
+    }
+
+    static Graph onewayGrid(int side, long seed) {
+        return onewayGrid(side, seed, 1);
+    }
+
+    /**
+     * side x side grid with id y * side + x at (x * scale, y * scale) and random arc weights
+     * of scale * [1, 30]. Horizontal arcs go both ways; vertical arcs only downward in even
+     * columns, so distances are not symmetric. Vertex {@link #UNREACHABLE} has no arcs.
+     */
+    static Graph onewayGrid(int side, long seed, int scale) {
+        Graph g = new Graph();
+        Random random = new Random(seed);
+        for (int y = 0; y < side; y++) {
+            for (int x = 0; x < side; x++) {
+                g.addVertex(y * side + x, new Graph.Vertex(x * scale, y * scale));
+            }
+        }
+        for (int y = 0; y < side; y++) {
+            for (int x = 0; x < side; x++) {
+                long id = y * side + x;
+                if (x + 1 < side) {
+                    g.addUndirectedEdge(id, id + 1, scale * (1 + random.nextInt(30)));
+                }
+                if (y + 1 < side) {
+                    if (x % 2 == 0) {
+                        g.addEdge(id, id + side, -1, scale * (1 + random.nextInt(30)));
+                    } else {
+                        g.addUndirectedEdge(id, id + side, scale * (1 + random.nextInt(30)));
+                    }
+                }
+            }
+        }
+        g.addVertex(UNREACHABLE, new Graph.Vertex(50 * scale, 50 * scale));
+        return g;
+    }
+}
@@ -0,0 +1,54 @@
+package ch;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class VertexIndexTest {
+
+    @Test
+    public void testIndicesAreDenseInInsertionOrder() {
+        VertexIndex index = new VertexIndex();
+        long[] ids = {3941233038L, 115724L, 5423454068L, 7L};
+        for (int i = 0; i < ids.length; i++) {
+            assertEquals("New ids should get the next dense index", i, index.add(ids[i]));
+        }
+        assertEquals("Size should count distinct ids", ids.length, index.size());
+        for (int i = 0; i < ids.length; i++) {
+            assertEquals("Lookup should return the assigned index", i, index.indexOf(ids[i]));
+            assertEquals("Reverse lookup should return the external id", ids[i], index.idOf(i));
+        }
+    }
+
+    @Test
+    public void testAddingKnownIdReturnsExistingIndex() {
+        VertexIndex index = new VertexIndex();
+        index.add(42L);
+        index.add(43L);
+        assertEquals("Re-adding an id should not assign a new index", 0, index.add(42L));
+        assertEquals("Re-adding an id should not grow the index", 2, index.size());
+    }
+
+    @Test
+    public void testUnknownIdIsMinusOne() {
+        VertexIndex index = new VertexIndex();
+        index.add(1L);
+        assertEquals("Unknown ids should translate to -1", -1, index.indexOf(2L));
+        assertFalse("Unknown ids should not be contained", index.contains(2L));
+    }
+
+    @Test
+    public void testGrowsPastInitialCapacity() {
+        VertexIndex index = new VertexIndex(4);
+        int count = 100_000;
+        for (int i = 0; i < count; i++) {
+            index.add(115724L + 37L * i);
+        }
+        assertEquals(count, index.size());
+        for (int i = 0; i < count; i += 997) {
+            assertEquals("Lookups should survive rehashing", i, index.indexOf(115724L + 37L * i));
+        }
+        assertArrayEquals("ids() should list external ids in dense order",
+                new long[] {115724L, 115761L}, java.util.Arrays.copyOf(index.ids(), 2));
+    }
+}